@@ -0,0 +1,34 @@
+package hello.jdbc.config;
+
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.MemberRepositoryV5;
+import hello.jdbc.repository.mvstore.MvStoreMemberRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+/**
+ * member.repository.engine 으로 MemberRepository 구현 선택
+ * - jdbc: MemberRepositoryV5 (H2 서버, JdbcTemplate)
+ * - mvstore: MvStoreMemberRepository (member.repository.mvstore.file, 비어있으면 메모리), 스프링 트랜잭션과 함께 커밋/롤백
+ * 지정하지 않으면 등록하지 않는다. (테스트의 @TestConfiguration 이 직접 등록)
+ */
+@Configuration
+public class MemberRepositoryConfig {
+    public static final String ENGINE = "member.repository.engine";
+
+    @Bean
+    @ConditionalOnProperty(name = ENGINE, havingValue = "jdbc")
+    public MemberRepository jdbcMemberRepository(DataSource dataSource) {
+        return new MemberRepositoryV5(dataSource);
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = ENGINE, havingValue = "mvstore")
+    public MemberRepository mvStoreMemberRepository(@Value("${member.repository.mvstore.file:}") String fileName) {
+        return new MvStoreMemberRepository(fileName.isEmpty() ? null : fileName);
+    }
+}
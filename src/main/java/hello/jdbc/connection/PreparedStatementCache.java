@@ -0,0 +1,239 @@
+package hello.jdbc.connection;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 물리 커넥션별 PreparedStatement 캐시 (LRU)
+ * 커넥션 풀링: HikariProxyConnection(Proxy) -> JdbcConnection(Target)
+ * 프록시는 커넥션 반납시 자신이 만든 statement 를 모두 닫으므로, unwrap 한 물리 커넥션에서 statement 를 만든다.
+ * -> Hikari 의 statement 추적(반납시 정리)을 거치지 않으므로 저장소에 명시적으로 넘겨줄 때만 사용한다.
+ *    (저장소 기본 생성자는 disabled() - con.prepareStatement 후 매번 닫음)
+ * 트랜잭션 동기화로 받은 커넥션도 물리 커넥션은 같으므로 트랜잭션 안에서 그대로 재사용된다.
+ * 커넥션 하나는 한번에 한 쓰레드만 사용한다는 전제 (커넥션 풀, 트랜잭션 동기화 모두 보장)
+ *
+ * Hikari 가 물리 커넥션을 닫을 때(퇴출, maxLifetime, 풀 종료) 항목을 바로 지우려면
+ * hikariDataSource.setDataSource(cache.trackConnectionClose(물리 DataSource)) 로 커넥션을 만들게 한다.
+ * 추적하지 않는 커넥션은 miss 일 때 닫힌 커넥션의 항목을 정리한다.
+ */
+@Slf4j
+public class PreparedStatementCache {
+    public static final int DEFAULT_MAX_STATEMENTS = 32;
+
+    private static final PreparedStatementCache DISABLED = new PreparedStatementCache(DEFAULT_MAX_STATEMENTS, false);
+
+    private final int maxStatementsPerConnection;
+    private final boolean enabled;
+    private final Map<Connection, StatementLru> statementsByConnection = new ConcurrentHashMap<>();
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    public PreparedStatementCache() {
+        this(DEFAULT_MAX_STATEMENTS);
+    }
+
+    public PreparedStatementCache(int maxStatementsPerConnection) {
+        this(maxStatementsPerConnection, true);
+    }
+
+    private PreparedStatementCache(int maxStatementsPerConnection, boolean enabled) {
+        if (maxStatementsPerConnection < 1) {
+            throw new IllegalArgumentException("maxStatementsPerConnection must be positive");
+        }
+        this.maxStatementsPerConnection = maxStatementsPerConnection;
+        this.enabled = enabled;
+    }
+
+    /**
+     * 캐시하지 않음 - 받은 커넥션(프록시)에서 prepareStatement, release 에서 닫는다.
+     */
+    public static PreparedStatementCache disabled() {
+        return DISABLED;
+    }
+
+    /**
+     * 이 DataSource 가 만든 커넥션이 닫히면 그 커넥션의 캐시 항목을 지운다. (Hikari 의 setDataSource 에 넘긴다)
+     */
+    public DataSource trackConnectionClose(DataSource physicalDataSource) {
+        return new DelegatingDataSource(physicalDataSource) {
+            @Override
+            public Connection getConnection() throws SQLException {
+                return track(super.getConnection());
+            }
+
+            @Override
+            public Connection getConnection(String username, String password) throws SQLException {
+                return track(super.getConnection(username, password));
+            }
+        };
+    }
+
+    public PreparedStatement prepareStatement(Connection con, String sql) throws SQLException {
+        return prepareStatement(con, sql, ResultSet.TYPE_FORWARD_ONLY);
+    }
+
+    public PreparedStatement prepareStatement(Connection con, String sql, int resultSetType) throws SQLException {
+        if (!enabled) {
+            return con.prepareStatement(sql, resultSetType, ResultSet.CONCUR_READ_ONLY);
+        }
+        Connection physicalCon = con.unwrap(Connection.class);
+        StatementKey key = new StatementKey(sql, resultSetType);
+
+        StatementLru statements = statementsByConnection.get(physicalCon);
+        if (statements != null) {
+            PreparedStatement pstmt = statements.find(key);
+            if (pstmt != null && !pstmt.isClosed()) {
+                hitCount.increment();
+                return pstmt;
+            }
+        }
+
+        missCount.increment();
+        purgeClosedConnections();
+        PreparedStatement pstmt = physicalCon.prepareStatement(sql, resultSetType, ResultSet.CONCUR_READ_ONLY);
+        statementsByConnection.computeIfAbsent(physicalCon, c -> new StatementLru()).store(key, pstmt);
+        return pstmt;
+    }
+
+    /**
+     * statement 를 닫지 않고 파라미터만 비워서 캐시에 남겨둔다.
+     */
+    public void release(PreparedStatement pstmt) {
+        if (pstmt == null) {
+            return;
+        }
+        if (!enabled) {
+            JdbcUtils.closeStatement(pstmt);
+            return;
+        }
+        try {
+            if (!pstmt.isClosed()) {
+                pstmt.clearParameters();
+                pstmt.clearBatch();
+            }
+        } catch (SQLException e) {
+            log.info("pstmt release", e);
+            JdbcUtils.closeStatement(pstmt);
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * statement 를 캐시하고 있는 물리 커넥션 수
+     */
+    public int getCachedConnectionCount() {
+        return statementsByConnection.size();
+    }
+
+    private Connection track(Connection physicalCon) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        //캐시 키로 쓰므로 프록시 자신으로 비교
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "unwrap":
+                            if (args[0] == Connection.class) {
+                                return proxy;
+                            }
+                            break;
+                        case "close":
+                            evict((Connection) proxy);
+                            break;
+                        default:
+                    }
+                    try {
+                        return method.invoke(physicalCon, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getTargetException();
+                    }
+                });
+    }
+
+    private void evict(Connection con) {
+        StatementLru statements = statementsByConnection.remove(con);
+        if (statements != null) {
+            statements.closeAll();
+            log.debug("statement cache evicted closed connection statements={}", statements.size());
+        }
+    }
+
+    /**
+     * trackConnectionClose 로 추적하지 않는 커넥션용 - 닫힌 커넥션의 항목 제거 (miss 일 때)
+     */
+    private void purgeClosedConnections() {
+        Iterator<Connection> iterator = statementsByConnection.keySet().iterator();
+        while (iterator.hasNext()) {
+            Connection con = iterator.next();
+            try {
+                if (con.isClosed()) {
+                    iterator.remove();
+                }
+            } catch (SQLException e) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private record StatementKey(String sql, int resultSetType) {
+    }
+
+    private class StatementLru extends LinkedHashMap<StatementKey, PreparedStatement> {
+        StatementLru() {
+            super(16, 0.75f, true);
+        }
+
+        synchronized PreparedStatement find(StatementKey key) {
+            return get(key);
+        }
+
+        synchronized void store(StatementKey key, PreparedStatement pstmt) {
+            PreparedStatement old = put(key, pstmt);
+            if (old != null && old != pstmt) {
+                JdbcUtils.closeStatement(old);
+            }
+        }
+
+        synchronized void closeAll() {
+            values().forEach(JdbcUtils::closeStatement);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<StatementKey, PreparedStatement> eldest) {
+            if (size() <= maxStatementsPerConnection) {
+                return false;
+            }
+            evictionCount.increment();
+            JdbcUtils.closeStatement(eldest.getValue());
+            return true;
+        }
+    }
+}
@@ -6,6 +6,8 @@ import lombok.Data;
 public class Member {
     private String memberId;
     private int money;
+    //낙관적 락 - 조회 시점의 version, update(memberId, money, expectedVersion) 에 넘긴다.
+    private long version;
 
     public Member() {
     }
@@ -14,4 +16,10 @@ public class Member {
         this.memberId = memberId;
         this.money = money;
     }
+
+    public Member(String memberId, int money, long version) {
+        this.memberId = memberId;
+        this.money = money;
+        this.version = version;
+    }
 }
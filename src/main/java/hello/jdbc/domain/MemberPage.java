@@ -0,0 +1,26 @@
+package hello.jdbc.domain;
+
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * keyset 페이징 결과
+ * nextCursor 를 다음 조회의 afterMemberId 로 넘긴다. (null 이면 마지막 페이지)
+ */
+@Getter
+@ToString
+public class MemberPage {
+    private final List<Member> members;
+    private final String nextCursor;
+
+    public MemberPage(List<Member> members, String nextCursor) {
+        this.members = members;
+        this.nextCursor = nextCursor;
+    }
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+}
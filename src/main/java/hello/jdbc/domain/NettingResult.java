@@ -0,0 +1,14 @@
+package hello.jdbc.domain;
+
+import lombok.Value;
+
+/**
+ * 상계 이체 결과
+ * batchId 로 transfer_audit 의 원래 이체 내역을 찾는다.
+ */
+@Value
+public class NettingResult {
+    String batchId;
+    int transferCount;
+    int updatedMemberCount;
+}
@@ -0,0 +1,13 @@
+package hello.jdbc.domain;
+
+import lombok.Value;
+
+/**
+ * 이체 요청 한 건
+ */
+@Value
+public class Transfer {
+    String fromId;
+    String toId;
+    int amount;
+}
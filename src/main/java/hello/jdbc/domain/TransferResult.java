@@ -0,0 +1,21 @@
+package hello.jdbc.domain;
+
+import lombok.Value;
+
+/**
+ * 대량 이체의 건별 결과
+ */
+@Value
+public class TransferResult {
+    Transfer transfer;
+    boolean success;
+    String failureReason;
+
+    public static TransferResult success(Transfer transfer) {
+        return new TransferResult(transfer, true, null);
+    }
+
+    public static TransferResult failure(Transfer transfer, String failureReason) {
+        return new TransferResult(transfer, false, failureReason);
+    }
+}
@@ -0,0 +1,50 @@
+package hello.jdbc.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * where member_id in (...) 조회용 파라미터 분할
+ * 파라미터 개수가 매번 다르면 SQL 문자열도 매번 달라져서 PreparedStatement 캐시가 넘친다.
+ * 그래서 개수를 CHUNK_SIZES 중 하나로 맞추고, 남는 자리는 마지막 id 를 반복해서 채운다.
+ */
+public abstract class InListChunks {
+    static final int[] CHUNK_SIZES = {1, 4, 16, 64, 256};
+    static final int MAX_CHUNK_SIZE = CHUNK_SIZES[CHUNK_SIZES.length - 1];
+
+    public static List<List<String>> chunk(Collection<String> ids) {
+        List<String> distinctIds = new ArrayList<>(new LinkedHashSet<>(ids));
+        List<List<String>> chunks = new ArrayList<>();
+        for (int from = 0; from < distinctIds.size(); from += MAX_CHUNK_SIZE) {
+            int to = Math.min(from + MAX_CHUNK_SIZE, distinctIds.size());
+            chunks.add(pad(distinctIds.subList(from, to)));
+        }
+        return chunks;
+    }
+
+    public static String sql(String prefix, int size) {
+        return prefix + "(" + String.join(", ", Collections.nCopies(size, "?")) + ")";
+    }
+
+    private static List<String> pad(List<String> ids) {
+        int size = chunkSize(ids.size());
+        List<String> padded = new ArrayList<>(size);
+        padded.addAll(ids);
+        while (padded.size() < size) {
+            padded.add(ids.get(ids.size() - 1));
+        }
+        return padded;
+    }
+
+    private static int chunkSize(int count) {
+        for (int size : CHUNK_SIZES) {
+            if (count <= size) {
+                return size;
+            }
+        }
+        return MAX_CHUNK_SIZE;
+    }
+}
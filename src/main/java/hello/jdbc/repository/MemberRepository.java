@@ -1,10 +1,78 @@
 package hello.jdbc.repository;
 
 import hello.jdbc.domain.Member;
+import hello.jdbc.domain.Transfer;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
 public interface MemberRepository {
+    int DEFAULT_BATCH_SIZE = 1000;
+
     Member save(Member saveMember);
+
+    /**
+     * 없을 때만 insert (merge into ... when not matched), insert 했으면 true
+     * 이미 있으면 예외 없이 false -> 중복 키 예외 생성, 변환, 스택 트레이스 비용이 없다.
+     */
+    boolean insertIfAbsent(Member member);
+
+    /**
+     * 없으면 insert, 있으면 money 변경 (version + 1) - insert 했으면 true
+     * insertIfAbsent + update 두 번이 아니라 한 번에 -> 사이에 삭제되어 아무것도 저장하지 않는 경우가 없다.
+     */
+    boolean saveOrUpdate(Member member);
+
     Member findById(String memberId);
     void update(String memberId, int money);
+
+    /**
+     * 낙관적 락 - version 이 expectedVersion 일 때만 변경 (version + 1)
+     * 그 사이 다른 트랜잭션이 변경했으면 OptimisticLockConflictException
+     */
+    void update(String memberId, int money, long expectedVersion);
     void delete(String memberId);
+
+    /**
+     * 커넥션 하나로 batchSize 건씩 묶어서 insert (addBatch/executeBatch)
+     */
+    List<Member> saveAll(Collection<Member> members, int batchSize);
+
+    default List<Member> saveAll(Collection<Member> members) {
+        return saveAll(members, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * where member_id in (...) 로 묶어서 조회, 요청한 id 순서대로 담아서 반환
+     * 없는 id 는 결과에서 빠진다. (findById 와 달리 예외를 던지지 않는다)
+     */
+    Map<String, Member> findAllByIds(Collection<String> memberIds);
+
+    /**
+     * select ... for update - 정렬된 member_id 순서로 행 락을 건다.
+     * 모든 트랜잭션이 같은 순서로 락을 잡으므로 서로 반대 순서로 기다리는 교착상태가 생기지 않는다.
+     */
+    Map<String, Member> findByIdsForUpdate(Collection<String> memberIds);
+
+    /**
+     * update member set money = money + ? - 읽지 않고 한 문장으로 증감, 변경된 행 수 반환
+     */
+    int addMoney(String memberId, int delta);
+
+    /**
+     * money >= amount 일 때만 차감, 잔액 부족이거나 회원이 없으면 0 반환
+     */
+    int withdrawIfSufficient(String memberId, int amount);
+
+    /**
+     * 차감과 입금을 한번에 실행, 이체했으면 2
+     * 잔액이 부족하거나 회원이 없거나 같은 회원이면 아무것도 바꾸지 않고 0 (호출한 쪽 롤백에 의존하지 않는다)
+     */
+    int transfer(String fromId, String toId, int amount);
+
+    /**
+     * transfer 를 JDBC batch 로 한번에 실행, 건별 결과는 transfer 와 같다. (2 또는 0)
+     */
+    int[] transferAll(List<Transfer> transfers);
 }
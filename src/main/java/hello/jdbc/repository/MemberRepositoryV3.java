@@ -1,7 +1,7 @@
 package hello.jdbc.repository;
 
+import hello.jdbc.connection.PreparedStatementCache;
 import hello.jdbc.domain.Member;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.jdbc.datasource.DataSourceUtils;
 import org.springframework.jdbc.support.JdbcUtils;
@@ -19,10 +19,19 @@ import java.util.NoSuchElementException;
  * DataSourceUtils.releaseConnection()
  */
 @Slf4j
-@RequiredArgsConstructor
 public class MemberRepositoryV3 {
 
     private final DataSource dataSource;
+    private final PreparedStatementCache statementCache;
+
+    public MemberRepositoryV3(DataSource dataSource) {
+        this(dataSource, PreparedStatementCache.disabled());
+    }
+
+    public MemberRepositoryV3(DataSource dataSource, PreparedStatementCache statementCache) {
+        this.dataSource = dataSource;
+        this.statementCache = statementCache;
+    }
 
     public Member save(Member member) {
         String sql = "insert into member (member_id, money) values (?, ?)";
@@ -31,7 +40,7 @@ public class MemberRepositoryV3 {
 
         try {
             con = getConnection();
-            pstmt = con.prepareStatement(sql);
+            pstmt = statementCache.prepareStatement(con, sql);
             pstmt.setString(1, member.getMemberId());
             pstmt.setInt(2, member.getMoney());
             int i = pstmt.executeUpdate();
@@ -50,7 +59,7 @@ public class MemberRepositoryV3 {
         ResultSet rs = null;
         try {
             con = getConnection();
-            pstmt = con.prepareStatement(sql);
+            pstmt = statementCache.prepareStatement(con, sql);
             pstmt.setString(1, memberId);
             rs = pstmt.executeQuery();
             if (rs.next()) {
@@ -74,7 +83,7 @@ public class MemberRepositoryV3 {
         PreparedStatement pstmt = null;
         try {
             con = getConnection();
-            pstmt = con.prepareStatement(sql);
+            pstmt = statementCache.prepareStatement(con, sql);
             pstmt.setInt(1, money);
             pstmt.setString(2, memberId);
             int resultSize = pstmt.executeUpdate();
@@ -93,7 +102,7 @@ public class MemberRepositoryV3 {
         PreparedStatement pstmt = null;
         try {
             con = getConnection();
-            pstmt = con.prepareStatement(sql);
+            pstmt = statementCache.prepareStatement(con, sql);
             pstmt.setString(1, memberId);
             int resultSize = pstmt.executeUpdate();
             log.info("resultSize = {}", resultSize);
@@ -107,7 +116,7 @@ public class MemberRepositoryV3 {
 
     private void close(Connection con, PreparedStatement pstmt, ResultSet rs) {
         JdbcUtils.closeResultSet(rs);
-        JdbcUtils.closeStatement(pstmt);
+        statementCache.release(pstmt);
         //주의! 트랜잭션 동기화를 사용하려면 DataSourceUtils를 사용해야 한다.
         DataSourceUtils.releaseConnection(con, dataSource);
     }
@@ -1,31 +1,60 @@
 package hello.jdbc.repository;
 
+import hello.jdbc.connection.PreparedStatementCache;
 import hello.jdbc.domain.Member;
+import hello.jdbc.domain.Transfer;
+import hello.jdbc.repository.ex.OptimisticLockConflictException;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.jdbc.datasource.DataSourceUtils;
 import org.springframework.jdbc.support.JdbcUtils;
 import org.springframework.jdbc.support.SQLErrorCodeSQLExceptionTranslator;
 import org.springframework.jdbc.support.SQLExceptionTranslator;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.sql.DataSource;
+import java.sql.BatchUpdateException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.TreeSet;
 
 /**
  * SQLExceptionTranslator 추가
  */
 @Slf4j
 public class MemberRepositoryV4_2 implements MemberRepository {
+    private static final String INSERT_IF_ABSENT_SQL =
+            "merge into member m using (values (?, ?)) s(member_id, money) on m.member_id=s.member_id" +
+                    " when not matched then insert (member_id, money) values (s.member_id, s.money)";
+    private static final String SAVE_OR_UPDATE_SQL =
+            "select version from final table (merge into member m using (values (?, ?)) s(member_id, money) on m.member_id=s.member_id" +
+                    " when matched then update set money=s.money, version=m.version+1" +
+                    " when not matched then insert (member_id, money) values (s.member_id, s.money))";
 
     private final DataSource dataSource;
     private final SQLExceptionTranslator exTranslator;
+    private final PreparedStatementCache statementCache;
+    private final TransactionTemplate txTemplate;
 
     public MemberRepositoryV4_2(DataSource dataSource) {
+        this(dataSource, PreparedStatementCache.disabled());
+    }
+
+    public MemberRepositoryV4_2(DataSource dataSource, PreparedStatementCache statementCache) {
         this.dataSource = dataSource;
         this.exTranslator = new SQLErrorCodeSQLExceptionTranslator(dataSource);
+        this.statementCache = statementCache;
+        this.txTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
     }
 
     @Override
@@ -36,7 +65,7 @@ public class MemberRepositoryV4_2 implements MemberRepository {
 
         try {
             con = getConnection();
-            pstmt = con.prepareStatement(sql);
+            pstmt = statementCache.prepareStatement(con, sql);
             pstmt.setString(1, member.getMemberId());
             pstmt.setInt(2, member.getMoney());
             int i = pstmt.executeUpdate();
@@ -48,6 +77,100 @@ public class MemberRepositoryV4_2 implements MemberRepository {
         }
     }
 
+    @Override
+    public boolean insertIfAbsent(Member member) {
+        String sql = INSERT_IF_ABSENT_SQL;
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        try {
+            con = getConnection();
+            pstmt = statementCache.prepareStatement(con, sql);
+            pstmt.setString(1, member.getMemberId());
+            pstmt.setInt(2, member.getMoney());
+            int resultSize = pstmt.executeUpdate();
+            log.info("resultSize = {}", resultSize);
+            return resultSize == 1;
+        } catch (SQLException e) {
+            DataAccessException ex = this.exTranslator.translate("insertIfAbsent", sql, e);
+            //동시에 같은 id 로 insert 해서 다른 트랜잭션이 먼저 넣은 경우 (드문 경우만 예외 비용)
+            if (ex instanceof DuplicateKeyException) {
+                log.info("insertIfAbsent lost race memberId={}", member.getMemberId());
+                return false;
+            }
+            throw ex;
+        } finally {
+            close(con, pstmt, null);
+        }
+    }
+
+    /**
+     * merge 한 문장 - 바뀐 행의 version 이 0 이면 insert
+     */
+    @Override
+    public boolean saveOrUpdate(Member member) {
+        try {
+            return mergeMember(member) == 0;
+        } catch (DuplicateKeyException e) {
+            //동시에 같은 id 로 insert 해서 다른 트랜잭션이 먼저 넣은 경우 -> 이제 있으므로 update
+            log.info("saveOrUpdate lost race memberId={}", member.getMemberId());
+            return mergeMember(member) == 0;
+        }
+    }
+
+    private long mergeMember(Member member) {
+        String sql = SAVE_OR_UPDATE_SQL;
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        try {
+            con = getConnection();
+            pstmt = statementCache.prepareStatement(con, sql);
+            pstmt.setString(1, member.getMemberId());
+            pstmt.setInt(2, member.getMoney());
+            rs = pstmt.executeQuery();
+            rs.next();
+            return rs.getLong("version");
+        } catch (SQLException e) {
+            throw this.exTranslator.translate("saveOrUpdate", sql, e);
+        } finally {
+            close(con, pstmt, rs);
+        }
+    }
+
+    @Override
+    public List<Member> saveAll(Collection<Member> members, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive. batchSize=" + batchSize);
+        }
+        String sql = "insert into member (member_id, money) values (?, ?)";
+        List<Member> saveMembers = new ArrayList<>(members);
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        int batchStart = 0;
+
+        try {
+            con = getConnection();
+            pstmt = statementCache.prepareStatement(con, sql);
+            for (int i = 0; i < saveMembers.size(); i++) {
+                pstmt.setString(1, saveMembers.get(i).getMemberId());
+                pstmt.setInt(2, saveMembers.get(i).getMoney());
+                pstmt.addBatch();
+                if (i + 1 - batchStart == batchSize || i + 1 == saveMembers.size()) {
+                    pstmt.executeBatch();
+                    batchStart = i + 1;
+                }
+            }
+            return saveMembers;
+        } catch (BatchUpdateException e) {
+            String message = MemberRows.failedMessage(saveMembers, batchStart, e);
+            throw this.exTranslator.translate(message, sql, e);
+        } catch (SQLException e) {
+            throw this.exTranslator.translate("saveAll", sql, e);
+        } finally {
+            close(con, pstmt, null);
+        }
+    }
+
     @Override
     public Member findById(String memberId) {
         String sql = "select * from member where member_id = ?";
@@ -56,13 +179,14 @@ public class MemberRepositoryV4_2 implements MemberRepository {
         ResultSet rs = null;
         try {
             con = getConnection();
-            pstmt = con.prepareStatement(sql);
+            pstmt = statementCache.prepareStatement(con, sql);
             pstmt.setString(1, memberId);
             rs = pstmt.executeQuery();
             if (rs.next()) {
                 return new Member(
                         rs.getString("member_id"),
-                        rs.getInt("money")
+                        rs.getInt("money"),
+                        rs.getLong("version")
                 );
             }
             throw new NoSuchElementException("member not found memberId=" + memberId);
@@ -73,17 +197,53 @@ public class MemberRepositoryV4_2 implements MemberRepository {
         }
     }
 
+    @Override
+    public Map<String, Member> findAllByIds(Collection<String> memberIds) {
+        return MemberRows.inRequestOrder(memberIds, findByIds("findAllByIds", memberIds, ""));
+    }
+
+    @Override
+    public Map<String, Member> findByIdsForUpdate(Collection<String> memberIds) {
+        //in (...) 를 여러 번 나눠 실행해도 청크 순서 = 정렬 순서
+        Map<String, Member> lockedMembers =
+                findByIds("findByIdsForUpdate", new TreeSet<>(memberIds), " order by member_id for update");
+        return MemberRows.inRequestOrder(memberIds, lockedMembers);
+    }
+
     public void update(String memberId, int money) {
-        String sql = "update member set money=? where member_id=?";
+        String sql = "update member set money=?, version=version+1 where member_id=?";
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        try {
+            con = getConnection();
+            pstmt = statementCache.prepareStatement(con, sql);
+            pstmt.setInt(1, money);
+            pstmt.setString(2, memberId);
+            int resultSize = pstmt.executeUpdate();
+            log.info("resultSize = {}", resultSize);
+        } catch (SQLException e) {
+            throw this.exTranslator.translate("update", sql, e);
+        } finally {
+            close(con, pstmt, null);
+        }
+    }
+
+    @Override
+    public void update(String memberId, int money, long expectedVersion) {
+        String sql = "update member set money=?, version=version+1 where member_id=? and version=?";
         Connection con = null;
         PreparedStatement pstmt = null;
         try {
             con = getConnection();
-            pstmt = con.prepareStatement(sql);
+            pstmt = statementCache.prepareStatement(con, sql);
             pstmt.setInt(1, money);
             pstmt.setString(2, memberId);
+            pstmt.setLong(3, expectedVersion);
             int resultSize = pstmt.executeUpdate();
             log.info("resultSize = {}", resultSize);
+            if (resultSize == 0) {
+                throw new OptimisticLockConflictException("member changed or deleted memberId=" + memberId + ", expectedVersion=" + expectedVersion);
+            }
         } catch (SQLException e) {
             throw this.exTranslator.translate("update", sql, e);
         } finally {
@@ -91,13 +251,108 @@ public class MemberRepositoryV4_2 implements MemberRepository {
         }
     }
 
+    @Override
+    public int addMoney(String memberId, int delta) {
+        String sql = "update member set money=money+?, version=version+1 where member_id=?";
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        try {
+            con = getConnection();
+            pstmt = statementCache.prepareStatement(con, sql);
+            pstmt.setInt(1, delta);
+            pstmt.setString(2, memberId);
+            int resultSize = pstmt.executeUpdate();
+            log.info("resultSize = {}", resultSize);
+            return resultSize;
+        } catch (SQLException e) {
+            throw this.exTranslator.translate("addMoney", sql, e);
+        } finally {
+            close(con, pstmt, null);
+        }
+    }
+
+    @Override
+    public int withdrawIfSufficient(String memberId, int amount) {
+        String sql = "update member set money=money-?, version=version+1 where member_id=? and money>=?";
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        try {
+            con = getConnection();
+            pstmt = statementCache.prepareStatement(con, sql);
+            pstmt.setInt(1, amount);
+            pstmt.setString(2, memberId);
+            pstmt.setInt(3, amount);
+            int resultSize = pstmt.executeUpdate();
+            log.info("resultSize = {}", resultSize);
+            return resultSize;
+        } catch (SQLException e) {
+            throw this.exTranslator.translate("withdrawIfSufficient", sql, e);
+        } finally {
+            close(con, pstmt, null);
+        }
+    }
+
+    @Override
+    public int transfer(String fromId, String toId, int amount) {
+        return MemberRows.inTransaction(txTemplate, () -> transferInTransaction(fromId, toId, amount));
+    }
+
+    @Override
+    public int[] transferAll(List<Transfer> transfers) {
+        return MemberRows.inTransaction(txTemplate, () -> transferAllInTransaction(transfers));
+    }
+
+    private int transferInTransaction(String fromId, String toId, int amount) {
+        String sql = MemberRows.TRANSFER_SQL;
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        try {
+            con = getConnection();
+            pstmt = statementCache.prepareStatement(con, sql);
+            MemberRows.bindTransfer(pstmt, fromId, toId, amount);
+            int resultSize = pstmt.executeUpdate();
+            log.info("resultSize = {}", resultSize);
+            return resultSize == 1 ? MemberRows.undoPartialTransfer(con, fromId, toId, amount) : resultSize;
+        } catch (SQLException e) {
+            throw this.exTranslator.translate("transfer", sql, e);
+        } finally {
+            close(con, pstmt, null);
+        }
+    }
+
+    private int[] transferAllInTransaction(List<Transfer> transfers) {
+        String sql = MemberRows.TRANSFER_SQL;
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        try {
+            con = getConnection();
+            pstmt = statementCache.prepareStatement(con, sql);
+            for (Transfer transfer : transfers) {
+                MemberRows.bindTransfer(pstmt, transfer.getFromId(), transfer.getToId(), transfer.getAmount());
+                pstmt.addBatch();
+            }
+            int[] resultSizes = pstmt.executeBatch();
+            for (int i = 0; i < resultSizes.length; i++) {
+                if (resultSizes[i] == 1) {
+                    Transfer t = transfers.get(i);
+                    resultSizes[i] = MemberRows.undoPartialTransfer(con, t.getFromId(), t.getToId(), t.getAmount());
+                }
+            }
+            return resultSizes;
+        } catch (SQLException e) {
+            throw this.exTranslator.translate("transferAll", sql, e);
+        } finally {
+            close(con, pstmt, null);
+        }
+    }
+
     public void delete(String memberId) {
         String sql = "delete from member where member_id=?";
         Connection con = null;
         PreparedStatement pstmt = null;
         try {
             con = getConnection();
-            pstmt = con.prepareStatement(sql);
+            pstmt = statementCache.prepareStatement(con, sql);
             pstmt.setString(1, memberId);
             int resultSize = pstmt.executeUpdate();
             log.info("resultSize = {}", resultSize);
@@ -108,9 +363,46 @@ public class MemberRepositoryV4_2 implements MemberRepository {
         }
     }
 
+    private Map<String, Member> findByIds(String task, Collection<String> memberIds, String sqlSuffix) {
+        Map<String, Member> foundMembers = new HashMap<>();
+        if (memberIds.isEmpty()) {
+            return foundMembers;
+        }
+        String sql = null;
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        try {
+            con = getConnection();
+            for (List<String> chunk : InListChunks.chunk(memberIds)) {
+                sql = InListChunks.sql("select * from member where member_id in ", chunk.size()) + sqlSuffix;
+                pstmt = statementCache.prepareStatement(con, sql);
+                for (int i = 0; i < chunk.size(); i++) {
+                    pstmt.setString(i + 1, chunk.get(i));
+                }
+                rs = pstmt.executeQuery();
+                while (rs.next()) {
+                    Member member = new Member(
+                            rs.getString("member_id"),
+                            rs.getInt("money"),
+                            rs.getLong("version")
+                    );
+                    foundMembers.put(member.getMemberId(), member);
+                }
+                JdbcUtils.closeResultSet(rs);
+                statementCache.release(pstmt);
+            }
+            return foundMembers;
+        } catch (SQLException e) {
+            throw this.exTranslator.translate(task, sql, e);
+        } finally {
+            close(con, pstmt, rs);
+        }
+    }
+
     private void close(Connection con, PreparedStatement pstmt, ResultSet rs) {
         JdbcUtils.closeResultSet(rs);
-        JdbcUtils.closeStatement(pstmt);
+        statementCache.release(pstmt);
         //주의! 트랜잭션 동기화를 사용하려면 DataSourceUtils를 사용해야 한다.
         DataSourceUtils.releaseConnection(con, dataSource);
     }
@@ -130,7 +422,7 @@ public class MemberRepositoryV4_2 implements MemberRepository {
 
         try {
             con = getConnection();
-            pstmt = con.prepareStatement(sql);
+            pstmt = statementCache.prepareStatement(con, sql);
             rs = pstmt.executeQuery();
             return new Member(rs.getString(1), rs.getInt(2));
         } catch (SQLException e) {
@@ -1,26 +1,55 @@
 package hello.jdbc.repository;
 
 import hello.jdbc.domain.Member;
+import hello.jdbc.domain.MemberPage;
+import hello.jdbc.domain.Transfer;
+import hello.jdbc.repository.ex.OptimisticLockConflictException;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCallback;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.jdbc.support.SQLErrorCodeSQLExceptionTranslator;
 import org.springframework.jdbc.support.SQLExceptionTranslator;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.sql.DataSource;
+import java.sql.BatchUpdateException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.Consumer;
 
 /**
  * JdbcTemplate 사용
  */
 @Slf4j
 public class MemberRepositoryV5 implements MemberRepository {
+    private static final int DEFAULT_FETCH_SIZE = 1000;
+    private static final String INSERT_IF_ABSENT_SQL =
+            "merge into member m using (values (?, ?)) s(member_id, money) on m.member_id=s.member_id" +
+                    " when not matched then insert (member_id, money) values (s.member_id, s.money)";
+    private static final String SAVE_OR_UPDATE_SQL =
+            "select version from final table (merge into member m using (values (?, ?)) s(member_id, money) on m.member_id=s.member_id" +
+                    " when matched then update set money=s.money, version=m.version+1" +
+                    " when not matched then insert (member_id, money) values (s.member_id, s.money))";
+
     private final JdbcTemplate template;
+    private final TransactionTemplate txTemplate;
 
     public MemberRepositoryV5(DataSource dataSource) {
         this.template = new JdbcTemplate(dataSource);
+        this.txTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
     }
 
-
     @Override
     public Member save(Member member) {
         String sql = "insert into member (member_id, money) values (?, ?)";
@@ -28,27 +57,209 @@ public class MemberRepositoryV5 implements MemberRepository {
         return member;
     }
 
+    @Override
+    public boolean insertIfAbsent(Member member) {
+        try {
+            return template.update(INSERT_IF_ABSENT_SQL, member.getMemberId(), member.getMoney()) == 1;
+        } catch (DuplicateKeyException e) {
+            //동시에 같은 id 로 insert 해서 다른 트랜잭션이 먼저 넣은 경우 (드문 경우만 예외 비용)
+            log.info("insertIfAbsent lost race memberId={}", member.getMemberId());
+            return false;
+        }
+    }
+
+    /**
+     * merge 한 문장 - 바뀐 행의 version 이 0 이면 insert
+     */
+    @Override
+    public boolean saveOrUpdate(Member member) {
+        try {
+            return mergeMember(member) == 0;
+        } catch (DuplicateKeyException e) {
+            //동시에 같은 id 로 insert 해서 다른 트랜잭션이 먼저 넣은 경우 -> 이제 있으므로 update
+            log.info("saveOrUpdate lost race memberId={}", member.getMemberId());
+            return mergeMember(member) == 0;
+        }
+    }
+
+    private long mergeMember(Member member) {
+        return template.queryForObject(SAVE_OR_UPDATE_SQL, Long.class, member.getMemberId(), member.getMoney());
+    }
+
+    @Override
+    public List<Member> saveAll(Collection<Member> members, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive. batchSize=" + batchSize);
+        }
+        String sql = "insert into member (member_id, money) values (?, ?)";
+        List<Member> saveMembers = new ArrayList<>(members);
+        //batchUpdate(sql, batchArgs, batchSize, ...) 는 실패한 행을 알려주지 않으므로 직접 addBatch 한다.
+        return template.execute(sql, (PreparedStatementCallback<List<Member>>) pstmt -> {
+            int batchStart = 0;
+            try {
+                for (int i = 0; i < saveMembers.size(); i++) {
+                    pstmt.setString(1, saveMembers.get(i).getMemberId());
+                    pstmt.setInt(2, saveMembers.get(i).getMoney());
+                    pstmt.addBatch();
+                    if (i + 1 - batchStart == batchSize || i + 1 == saveMembers.size()) {
+                        pstmt.executeBatch();
+                        batchStart = i + 1;
+                    }
+                }
+                return saveMembers;
+            } catch (BatchUpdateException e) {
+                String message = MemberRows.failedMessage(saveMembers, batchStart, e);
+                throw template.getExceptionTranslator().translate(message, sql, e);
+            }
+        });
+    }
+
     @Override
     public Member findById(String memberId) {
         String sql = "select * from member where member_id = ?";
         return template.queryForObject(sql, memberRowMapper(), memberId);
     }
 
+    @Override
+    public Map<String, Member> findAllByIds(Collection<String> memberIds) {
+        return MemberRows.inRequestOrder(memberIds, findByIds(memberIds, ""));
+    }
+
+    @Override
+    public Map<String, Member> findByIdsForUpdate(Collection<String> memberIds) {
+        //in (...) 를 여러 번 나눠 실행해도 청크 순서 = 정렬 순서
+        Map<String, Member> lockedMembers = findByIds(new TreeSet<>(memberIds), " order by member_id for update");
+        return MemberRows.inRequestOrder(memberIds, lockedMembers);
+    }
+
+    public void scan(Consumer<Member> consumer) {
+        scan(DEFAULT_FETCH_SIZE, consumer);
+    }
+
+    /**
+     * 전체 회원을 List 로 모으지 않고 한 건씩 consumer 에 넘긴다.
+     * forward-only, read-only ResultSet 을 fetchSize 건씩 가져오므로 메모리 사용량이 테이블 크기와 무관하다.
+     * ResultSet, PreparedStatement, 커넥션 반납은 JdbcTemplate 이 처리한다.
+     */
+    public void scan(int fetchSize, Consumer<Member> consumer) {
+        String sql = "select * from member";
+        RowMapper<Member> rowMapper = memberRowMapper();
+        template.query(con -> {
+            PreparedStatement pstmt = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            pstmt.setFetchSize(fetchSize);
+            return pstmt;
+        }, (RowCallbackHandler) rs -> consumer.accept(rowMapper.mapRow(rs, rs.getRow())));
+    }
+
+    public MemberPage findPage(String afterMemberId, int limit) {
+        return findPage(afterMemberId, limit, false);
+    }
+
+    /**
+     * keyset(seek) 페이징 - member_id(PK) 인덱스에서 afterMemberId 다음 위치부터 limit 건
+     * OFFSET 과 달리 앞 페이지 행을 읽고 버리지 않으므로 뒤쪽 페이지도 조회 비용이 같다.
+     * afterMemberId 가 null 이면 첫 페이지, descending 이면 member_id 역순
+     */
+    public MemberPage findPage(String afterMemberId, int limit, boolean descending) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit must be positive. limit=" + limit);
+        }
+        String order = descending ? "desc" : "asc";
+        List<Member> members;
+        //다음 페이지 존재 여부를 알기 위해 한 건 더 조회
+        if (afterMemberId == null) {
+            String sql = "select * from member order by member_id " + order + " limit ?";
+            members = template.query(sql, memberRowMapper(), limit + 1);
+        } else {
+            String seek = descending ? "<" : ">";
+            String sql = "select * from member where member_id " + seek + " ? order by member_id " + order + " limit ?";
+            members = template.query(sql, memberRowMapper(), afterMemberId, limit + 1);
+        }
+
+        if (members.size() <= limit) {
+            return new MemberPage(members, null);
+        }
+        List<Member> pageMembers = new ArrayList<>(members.subList(0, limit));
+        return new MemberPage(pageMembers, pageMembers.get(limit - 1).getMemberId());
+    }
+
     public void update(String memberId, int money) {
-        String sql = "update member set money=? where member_id=?";
+        String sql = "update member set money=?, version=version+1 where member_id=?";
         template.update(sql, money, memberId);
     }
 
+    @Override
+    public void update(String memberId, int money, long expectedVersion) {
+        String sql = "update member set money=?, version=version+1 where member_id=? and version=?";
+        if (template.update(sql, money, memberId, expectedVersion) == 0) {
+            throw new OptimisticLockConflictException("member changed or deleted memberId=" + memberId + ", expectedVersion=" + expectedVersion);
+        }
+    }
+
+    @Override
+    public int addMoney(String memberId, int delta) {
+        String sql = "update member set money=money+?, version=version+1 where member_id=?";
+        return template.update(sql, delta, memberId);
+    }
+
+    @Override
+    public int withdrawIfSufficient(String memberId, int amount) {
+        String sql = "update member set money=money-?, version=version+1 where member_id=? and money>=?";
+        return template.update(sql, amount, memberId, amount);
+    }
+
+    @Override
+    public int transfer(String fromId, String toId, int amount) {
+        return MemberRows.inTransaction(txTemplate, () -> {
+            int resultSize = template.update(MemberRows.TRANSFER_SQL, MemberRows.transferArgs(fromId, toId, amount));
+            return resultSize == 1 ? undoPartialTransfer(fromId, toId, amount) : resultSize;
+        });
+    }
+
+    @Override
+    public int[] transferAll(List<Transfer> transfers) {
+        List<Object[]> batchArgs = new ArrayList<>(transfers.size());
+        for (Transfer t : transfers) {
+            batchArgs.add(MemberRows.transferArgs(t.getFromId(), t.getToId(), t.getAmount()));
+        }
+        return MemberRows.inTransaction(txTemplate, () -> {
+            int[] resultSizes = template.batchUpdate(MemberRows.TRANSFER_SQL, batchArgs);
+            for (int i = 0; i < resultSizes.length; i++) {
+                if (resultSizes[i] == 1) {
+                    Transfer t = transfers.get(i);
+                    resultSizes[i] = undoPartialTransfer(t.getFromId(), t.getToId(), t.getAmount());
+                }
+            }
+            return resultSizes;
+        });
+    }
+
+    private int undoPartialTransfer(String fromId, String toId, int amount) {
+        return template.execute((ConnectionCallback<Integer>) con -> MemberRows.undoPartialTransfer(con, fromId, toId, amount));
+    }
+
     public void delete(String memberId) {
         String sql = "delete from member where member_id=?";
         template.update(sql, memberId);
     }
 
+    private Map<String, Member> findByIds(Collection<String> memberIds, String sqlSuffix) {
+        Map<String, Member> foundMembers = new HashMap<>();
+        for (List<String> chunk : InListChunks.chunk(memberIds)) {
+            String sql = InListChunks.sql("select * from member where member_id in ", chunk.size()) + sqlSuffix;
+            for (Member member : template.query(sql, memberRowMapper(), chunk.toArray())) {
+                foundMembers.put(member.getMemberId(), member);
+            }
+        }
+        return foundMembers;
+    }
+
     private RowMapper<Member> memberRowMapper() {
         return (rs, rowNum) -> {
             Member member = new Member();
             member.setMemberId(rs.getString("member_id"));
             member.setMoney(rs.getInt("money"));
+            member.setVersion(rs.getLong("version"));
             return member;
         };
     }
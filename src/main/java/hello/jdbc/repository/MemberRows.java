@@ -0,0 +1,123 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * MemberRepositoryV4_1, V4_2, V5 공통 - 다건 조회 결과 정렬, batch 실패 행 찾기, 이체 문장
+ */
+@Slf4j
+abstract class MemberRows {
+    /**
+     * 출금 회원 잔액이 충분하고 입금 회원이 따로 있을 때만 두 행을 같이 변경 -> 2 또는 0
+     * exists 조건은 문장 시작 시점 값으로 판단하므로 동시 변경이 있으면 1행만 바뀔 수 있다. (undoPartialTransfer)
+     */
+    static final String TRANSFER_SQL =
+            "update member set money=case when member_id=? then money-? else money+? end, version=version+1" +
+                    " where member_id in (?, ?) and (member_id<>? or money>=?)" +
+                    " and exists (select 1 from member f where f.member_id=? and f.money>=?)" +
+                    " and exists (select 1 from member t where t.member_id=? and t.member_id<>?)";
+
+    static Object[] transferArgs(String fromId, String toId, int amount) {
+        return new Object[]{fromId, amount, amount, fromId, toId, fromId, amount, fromId, amount, toId, fromId};
+    }
+
+    static void bindTransfer(PreparedStatement pstmt, String fromId, String toId, int amount) throws SQLException {
+        Object[] args = transferArgs(fromId, toId, amount);
+        for (int i = 0; i < args.length; i++) {
+            pstmt.setObject(i + 1, args[i]);
+        }
+    }
+
+    /**
+     * 트랜잭션 밖에서 호출되면 새 트랜잭션으로 (undoPartialTransfer 가 같은 트랜잭션에서 되돌리도록)
+     * 진행 중인 트랜잭션이 있으면 그대로 실행 -> 예외가 나도 호출한 쪽 트랜잭션을 rollback-only 로 만들지 않는다.
+     */
+    static <T> T inTransaction(TransactionTemplate txTemplate, Supplier<T> work) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return work.get();
+        }
+        return txTemplate.execute(status -> work.get());
+    }
+
+    /**
+     * TRANSFER_SQL 이 1행만 바꿨을 때 (exists 확인 뒤 락을 기다리는 사이 다른 트랜잭션이 출금 잔액을 줄이거나 입금 회원을 삭제)
+     * 바뀐 행을 같은 트랜잭션에서 되돌리고 0 - 그 행의 락을 잡고 있으므로 다른 트랜잭션에는 보이지 않는다.
+     * 입금 회원이 있으면 입금만 반영된 것, 없으면 출금만 반영된 것
+     */
+    static int undoPartialTransfer(Connection con, String fromId, String toId, int amount) throws SQLException {
+        boolean credited;
+        try (PreparedStatement pstmt = con.prepareStatement("select count(*) from member where member_id=?")) {
+            pstmt.setString(1, toId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                rs.next();
+                credited = rs.getInt(1) == 1;
+            }
+        }
+        try (PreparedStatement pstmt = con.prepareStatement("update member set money=money+?, version=version-1 where member_id=?")) {
+            pstmt.setInt(1, credited ? -amount : amount);
+            pstmt.setString(2, credited ? toId : fromId);
+            pstmt.executeUpdate();
+        }
+        log.info("partial transfer undone fromId={}, toId={}, credited={}", fromId, toId, credited);
+        return 0;
+    }
+
+    /**
+     * 요청한 id 순서로, 없는 id 는 빠진다.
+     */
+    static Map<String, Member> inRequestOrder(Collection<String> memberIds, Map<String, Member> foundMembers) {
+        Map<String, Member> result = new LinkedHashMap<>();
+        List<String> missingIds = new ArrayList<>();
+        for (String memberId : memberIds) {
+            Member member = foundMembers.get(memberId);
+            if (member != null) {
+                result.put(memberId, member);
+            } else {
+                missingIds.add(memberId);
+            }
+        }
+        if (!missingIds.isEmpty()) {
+            log.info("member not found memberIds={}", missingIds);
+        }
+        return result;
+    }
+
+    /**
+     * 실패한 batch(members 의 batchStart 부터)에서 실패한 행의 memberId
+     * 드라이버에 따라 실패 이후를 계속 실행(EXECUTE_FAILED 표시, 실패 행 전부)하거나 실패 지점에서 멈춘다.(첫 실패 행만)
+     */
+    static List<String> failedMemberIds(List<Member> members, int batchStart, BatchUpdateException e) {
+        int[] updateCounts = e.getUpdateCounts();
+        List<String> failedIds = new ArrayList<>();
+        for (int i = 0; i < updateCounts.length && batchStart + i < members.size(); i++) {
+            if (updateCounts[i] == Statement.EXECUTE_FAILED) {
+                failedIds.add(members.get(batchStart + i).getMemberId());
+            }
+        }
+        if (failedIds.isEmpty()) {
+            int stoppedRow = Math.min(batchStart + updateCounts.length, members.size() - 1);
+            failedIds.add(members.get(stoppedRow).getMemberId());
+        }
+        return failedIds;
+    }
+
+    static String failedMessage(List<Member> members, int batchStart, BatchUpdateException e) {
+        return "saveAll failed memberId=" + String.join(", ", failedMemberIds(members, batchStart, e));
+    }
+}
@@ -0,0 +1,49 @@
+package hello.jdbc.repository;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 백그라운드 주기 작업 - 데몬 스레드 하나에서 이전 실행이 끝난 뒤 interval 마다 실행 (fixed delay)
+ * 작업이 던진 예외는 로그만 남기고 다음 주기에 다시 실행한다. (ScheduledExecutorService 는 예외가 나간 작업을 다시 실행하지 않는다)
+ */
+@Slf4j
+public class PeriodicTasks implements AutoCloseable {
+    private final ScheduledExecutorService executor;
+
+    public PeriodicTasks(String threadName) {
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @param name 실패 로그에 남길 작업 이름
+     */
+    public void schedule(String name, Duration interval, Runnable task) {
+        long intervalMillis = interval.toMillis();
+        executor.scheduleWithFixedDelay(() -> runSafely(name, task), intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 실행 중인 작업은 interrupt, 기다리지 않는다.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private static void runSafely(String name, Runnable task) {
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            log.error("{} failed", name, e);
+        }
+    }
+}
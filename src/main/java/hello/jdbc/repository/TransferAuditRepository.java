@@ -0,0 +1,45 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.domain.Transfer;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * transfer_audit 테이블 (schema.sql)
+ * 상계해서 회원별 한 번만 update 하더라도 원래 이체 내역은 건별로 남긴다.
+ * JdbcTemplate -> DataSourceUtils 이므로 진행 중인 트랜잭션에 참여한다. (롤백되면 내역도 남지 않음)
+ */
+public class TransferAuditRepository {
+
+    private final JdbcTemplate template;
+
+    public TransferAuditRepository(DataSource dataSource) {
+        this.template = new JdbcTemplate(dataSource);
+    }
+
+    public void saveAll(String batchId, List<Transfer> transfers) {
+        String sql = "insert into transfer_audit (batch_id, from_id, to_id, amount) values (?, ?, ?, ?)";
+        List<Object[]> batchArgs = new ArrayList<>(transfers.size());
+        for (Transfer transfer : transfers) {
+            batchArgs.add(new Object[]{batchId, transfer.getFromId(), transfer.getToId(), transfer.getAmount()});
+        }
+        template.batchUpdate(sql, batchArgs);
+    }
+
+    public List<Transfer> findByBatchId(String batchId) {
+        String sql = "select from_id, to_id, amount from transfer_audit where batch_id=? order by seq";
+        return template.query(sql, (rs, rowNum) -> new Transfer(
+                rs.getString("from_id"),
+                rs.getString("to_id"),
+                rs.getInt("amount")
+        ), batchId);
+    }
+
+    public void deleteByBatchId(String batchId) {
+        String sql = "delete from transfer_audit where batch_id=?";
+        template.update(sql, batchId);
+    }
+}
@@ -0,0 +1,256 @@
+package hello.jdbc.repository.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import hello.jdbc.domain.Member;
+import hello.jdbc.domain.Transfer;
+import hello.jdbc.repository.MemberRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * findById read-through 캐시 - MemberRepository 데코레이터
+ * Caffeine: 크기 제한 + 빈도 기반 admission/eviction (W-TinyLFU), 선택적 TTL
+ *
+ * 트랜잭션 안에서는
+ * - 캐시를 채우지 않는다. (롤백될 수 있는 값이 캐시에 남지 않도록)
+ * - 변경(update/delete/addMoney/withdrawIfSufficient)한 id 는 캐시를 건너뛰고 target 에서 읽는다.
+ * - 변경한 id 는 트랜잭션 종료(커밋/롤백) 후 한번 더 무효화한다.
+ *
+ * changeLog 를 지정하면 update/delete 를 같은 트랜잭션에서 member_change_log 에 기록한다.
+ * 다른 노드는 MemberChangeLogPoller 로 읽어서 자신의 캐시를 무효화한다.
+ */
+@Slf4j
+public class CachingMemberRepository implements MemberRepository {
+
+    private final MemberRepository target;
+    private final Cache<String, Member> cache;
+    private final MemberChangeLog changeLog;
+
+    public CachingMemberRepository(MemberRepository target, long maximumSize) {
+        this(target, maximumSize, null);
+    }
+
+    public CachingMemberRepository(MemberRepository target, long maximumSize, Duration expireAfterWrite) {
+        this(target, maximumSize, expireAfterWrite, null);
+    }
+
+    public CachingMemberRepository(MemberRepository target, long maximumSize, Duration expireAfterWrite,
+                                   MemberChangeLog changeLog) {
+        this.target = target;
+        this.changeLog = changeLog;
+        Caffeine<Object, Object> builder = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats();
+        if (expireAfterWrite != null) {
+            builder.expireAfterWrite(expireAfterWrite);
+        }
+        this.cache = builder.build();
+    }
+
+    @Override
+    public Member save(Member member) {
+        return target.save(member);
+    }
+
+    @Override
+    public boolean insertIfAbsent(Member member) {
+        return target.insertIfAbsent(member);
+    }
+
+    @Override
+    public boolean saveOrUpdate(Member member) {
+        boolean created = target.saveOrUpdate(member);
+        evict(member.getMemberId());
+        return created;
+    }
+
+    @Override
+    public List<Member> saveAll(Collection<Member> members, int batchSize) {
+        return target.saveAll(members, batchSize);
+    }
+
+    @Override
+    public Member findById(String memberId) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            Member cached = isDirty(memberId) ? null : cache.getIfPresent(memberId);
+            return cached != null ? copy(cached) : target.findById(memberId);
+        }
+        //로딩 중인 key 를 invalidate 하면 로딩이 끝날 때까지 기다렸다가 지운다. -> 오래된 값이 남지 않음
+        return copy(cache.get(memberId, target::findById));
+    }
+
+    /**
+     * 캐시에 있는 id 는 캐시에서, 나머지는 target.findAllByIds 한번으로 조회
+     * 일괄 조회 결과로는 캐시를 채우지 않는다. (동시에 일어난 무효화와 순서를 보장할 수 없음)
+     */
+    @Override
+    public Map<String, Member> findAllByIds(Collection<String> memberIds) {
+        boolean inTransaction = TransactionSynchronizationManager.isActualTransactionActive();
+        Map<String, Member> foundMembers = new HashMap<>();
+        List<String> missedIds = new ArrayList<>();
+        for (String memberId : memberIds) {
+            Member cached = inTransaction && isDirty(memberId) ? null : cache.getIfPresent(memberId);
+            if (cached != null) {
+                foundMembers.put(memberId, copy(cached));
+            } else {
+                missedIds.add(memberId);
+            }
+        }
+        if (!missedIds.isEmpty()) {
+            foundMembers.putAll(target.findAllByIds(missedIds));
+        }
+
+        Map<String, Member> result = new LinkedHashMap<>();
+        for (String memberId : memberIds) {
+            Member member = foundMembers.get(memberId);
+            if (member != null) {
+                result.put(memberId, member);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 락 조회는 항상 DB 에서 (캐시된 값은 락을 잡은 뒤의 값이 아닐 수 있음)
+     */
+    @Override
+    public Map<String, Member> findByIdsForUpdate(Collection<String> memberIds) {
+        return target.findByIdsForUpdate(memberIds);
+    }
+
+    @Override
+    public void update(String memberId, int money) {
+        target.update(memberId, money);
+        evict(memberId);
+    }
+
+    @Override
+    public void update(String memberId, int money, long expectedVersion) {
+        target.update(memberId, money, expectedVersion);
+        evict(memberId);
+    }
+
+    @Override
+    public int addMoney(String memberId, int delta) {
+        int resultSize = target.addMoney(memberId, delta);
+        evict(memberId);
+        return resultSize;
+    }
+
+    @Override
+    public int withdrawIfSufficient(String memberId, int amount) {
+        int resultSize = target.withdrawIfSufficient(memberId, amount);
+        if (resultSize > 0) {
+            evict(memberId);
+        }
+        return resultSize;
+    }
+
+    @Override
+    public int transfer(String fromId, String toId, int amount) {
+        int resultSize = target.transfer(fromId, toId, amount);
+        if (resultSize > 0) {
+            evict(fromId);
+            evict(toId);
+        }
+        return resultSize;
+    }
+
+    @Override
+    public int[] transferAll(List<Transfer> transfers) {
+        int[] resultSizes = target.transferAll(transfers);
+        for (int i = 0; i < resultSizes.length; i++) {
+            //SUCCESS_NO_INFO(-2) 처럼 건수를 모르는 경우도 변경된 것으로 본다.
+            if (resultSizes[i] != 0) {
+                evict(transfers.get(i).getFromId());
+                evict(transfers.get(i).getToId());
+            }
+        }
+        return resultSizes;
+    }
+
+    @Override
+    public void delete(String memberId) {
+        target.delete(memberId);
+        evict(memberId);
+    }
+
+    /**
+     * 다른 노드의 변경을 반영 (MemberChangeLogPoller)
+     */
+    public void invalidateAll(Collection<String> memberIds) {
+        cache.invalidateAll(memberIds);
+    }
+
+    /**
+     * hitRate(), evictionCount() 등
+     */
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    private void evict(String memberId) {
+        if (changeLog != null) {
+            changeLog.record(memberId);
+        }
+        cache.invalidate(memberId);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        dirtyIds().add(memberId);
+    }
+
+    private boolean isDirty(String memberId) {
+        @SuppressWarnings("unchecked")
+        Set<String> dirtyIds = (Set<String>) TransactionSynchronizationManager.getResource(this);
+        return dirtyIds != null && dirtyIds.contains(memberId);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Set<String> dirtyIds() {
+        Set<String> dirtyIds = (Set<String>) TransactionSynchronizationManager.getResource(this);
+        if (dirtyIds != null) {
+            return dirtyIds;
+        }
+        Set<String> newDirtyIds = new HashSet<>();
+        TransactionSynchronizationManager.bindResource(this, newDirtyIds);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void suspend() {
+                TransactionSynchronizationManager.unbindResourceIfPossible(CachingMemberRepository.this);
+            }
+
+            @Override
+            public void resume() {
+                TransactionSynchronizationManager.bindResource(CachingMemberRepository.this, newDirtyIds);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(CachingMemberRepository.this);
+                //커밋이든 롤백이든 트랜잭션 중에 다른 쓰레드가 채운 값은 버린다.
+                cache.invalidateAll(newDirtyIds);
+                log.debug("evict after completion status={}, memberIds={}", status, newDirtyIds);
+            }
+        });
+        return newDirtyIds;
+    }
+
+    private Member copy(Member member) {
+        //Member 는 setter 가 있으므로 캐시에 있는 객체를 그대로 내보내지 않는다.
+        return new Member(member.getMemberId(), member.getMoney(), member.getVersion());
+    }
+}
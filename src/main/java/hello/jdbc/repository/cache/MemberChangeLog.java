@@ -0,0 +1,63 @@
+package hello.jdbc.repository.cache;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * member_change_log 테이블 (schema.sql)
+ * update/delete 와 같은 트랜잭션에서 변경된 member_id 를 기록하고, 각 노드의 MemberChangeLogPoller 가 읽어간다.
+ * JdbcTemplate -> DataSourceUtils 이므로 진행 중인 트랜잭션에 참여한다. (롤백되면 로그도 남지 않음)
+ */
+public class MemberChangeLog {
+
+    private static final String SELECT_SQL =
+            "select seq, member_id, datediff('MILLISECOND', changed_at, current_timestamp) as age_millis from member_change_log";
+
+    private final JdbcTemplate template;
+
+    public MemberChangeLog(DataSource dataSource) {
+        this.template = new JdbcTemplate(dataSource);
+    }
+
+    public void record(String memberId) {
+        String sql = "insert into member_change_log (member_id) values (?)";
+        template.update(sql, memberId);
+    }
+
+    public long lastSeq() {
+        String sql = "select coalesce(max(seq), 0) from member_change_log";
+        return template.queryForObject(sql, Long.class);
+    }
+
+    public List<MemberChange> findAfter(long seq, int limit) {
+        String sql = SELECT_SQL + " where seq > ? order by seq limit ?";
+        return template.query(sql, changeRowMapper(), seq, limit);
+    }
+
+    public List<MemberChange> findBySeqs(Collection<Long> seqs) {
+        String sql = SELECT_SQL + " where seq in (" + String.join(", ", Collections.nCopies(seqs.size(), "?")) + ")";
+        return template.query(sql, changeRowMapper(), seqs.toArray());
+    }
+
+    public int deleteOlderThan(Duration retention) {
+        String sql = "delete from member_change_log where changed_at < dateadd('MILLISECOND', ?, current_timestamp)";
+        return template.update(sql, -retention.toMillis());
+    }
+
+    private RowMapper<MemberChange> changeRowMapper() {
+        return (rs, rowNum) -> new MemberChange(rs.getLong("seq"), rs.getString("member_id"), rs.getLong("age_millis"));
+    }
+
+    /**
+     * ageMillis: 변경 트랜잭션 시작 시각(changed_at, H2 의 current_timestamp 는 트랜잭션 시작 시각)부터 지금까지
+     * -> 커밋 후 대기 시간 + 변경 트랜잭션 시간, DB 시계 기준이라 노드간 시계 차이가 없다.
+     */
+    public record MemberChange(long seq, String memberId, long ageMillis) {
+    }
+}
@@ -0,0 +1,149 @@
+package hello.jdbc.repository.cache;
+
+import hello.jdbc.repository.PeriodicTasks;
+import hello.jdbc.repository.cache.MemberChangeLog.MemberChange;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 다른 노드의 update/delete 를 member_change_log 에서 읽어 로컬 캐시를 무효화한다.
+ * 캐시가 오래된 값을 보여줄 수 있는 시간(staleness) ~= pollInterval + 변경 트랜잭션 시간
+ *
+ * seq 는 insert 시점에 발급되므로 커밋 순서와 다를 수 있다. (seq 10 이 seq 11 보다 늦게 커밋)
+ * 그래서 cursor 를 지나면서 건너뛴 seq(아직 커밋 전이거나 롤백됨)를 gap 으로 기억하고,
+ * 처음 본 때부터 lookback 시간 동안 매번 다시 읽는다.
+ * -> lookback 보다 오래 걸린 트랜잭션의 변경은 놓칠 수 있으므로 캐시에 expireAfterWrite 를 같이 둔다.
+ */
+@Slf4j
+public class MemberChangeLogPoller implements AutoCloseable {
+    public static final Duration DEFAULT_LOOKBACK = Duration.ofMinutes(1);
+    private static final int MAX_NEW_CHANGES_PER_POLL = 1000;
+    private static final int MAX_GAPS_PER_POLL = 256;
+    private static final int MAX_TRACKED_GAPS = 10_000;
+
+    private final MemberChangeLog changeLog;
+    private final CachingMemberRepository repository;
+    private final Duration pollInterval;
+    private final Duration retention;
+    private final Duration lookback;
+    private final PeriodicTasks tasks = new PeriodicTasks("member-change-log-poller");
+
+    //gap seq -> 처음 본 시각 (nanoTime)
+    private final NavigableMap<Long, Long> gaps = new TreeMap<>();
+    private long cursor;
+
+    private final LongAdder invalidationCount = new LongAdder();
+    private final LongAdder expiredGapCount = new LongAdder();
+    private final AtomicLong lastChangeAgeMillis = new AtomicLong();
+    private final AtomicLong maxChangeAgeMillis = new AtomicLong();
+
+    public MemberChangeLogPoller(MemberChangeLog changeLog, CachingMemberRepository repository,
+                                 Duration pollInterval, Duration retention) {
+        this(changeLog, repository, pollInterval, retention, DEFAULT_LOOKBACK);
+    }
+
+    public MemberChangeLogPoller(MemberChangeLog changeLog, CachingMemberRepository repository,
+                                 Duration pollInterval, Duration retention, Duration lookback) {
+        this.changeLog = changeLog;
+        this.repository = repository;
+        this.pollInterval = pollInterval;
+        this.retention = retention;
+        this.lookback = lookback;
+    }
+
+    /**
+     * 시작 시점 이전 변경은 볼 필요가 없다. (아직 캐시가 비어있음)
+     */
+    public void start() {
+        synchronized (this) {
+            cursor = changeLog.lastSeq();
+        }
+        tasks.schedule("member change log poll", pollInterval, this::poll);
+        tasks.schedule("member change log purge", retention, this::purge);
+        log.info("member change log poller started cursor={}, pollInterval={}", cursor, pollInterval);
+    }
+
+    synchronized void poll() {
+        long now = System.nanoTime();
+        expireGaps(now);
+
+        List<MemberChange> changes = new ArrayList<>();
+        if (!gaps.isEmpty()) {
+            List<Long> gapSeqs = new ArrayList<>(gaps.keySet()).subList(0, Math.min(gaps.size(), MAX_GAPS_PER_POLL));
+            for (MemberChange change : changeLog.findBySeqs(gapSeqs)) {
+                gaps.remove(change.seq());
+                changes.add(change);
+            }
+        }
+        for (MemberChange change : changeLog.findAfter(cursor, MAX_NEW_CHANGES_PER_POLL)) {
+            for (long skipped = cursor + 1; skipped < change.seq() && gaps.size() < MAX_TRACKED_GAPS; skipped++) {
+                gaps.put(skipped, now);
+            }
+            cursor = change.seq();
+            changes.add(change);
+        }
+
+        List<String> memberIds = new ArrayList<>();
+        for (MemberChange change : changes) {
+            memberIds.add(change.memberId());
+            lastChangeAgeMillis.set(change.ageMillis());
+            maxChangeAgeMillis.accumulateAndGet(change.ageMillis(), Math::max);
+        }
+        if (!memberIds.isEmpty()) {
+            repository.invalidateAll(memberIds);
+            invalidationCount.add(memberIds.size());
+            log.debug("invalidate memberIds={}, cursor={}, gaps={}", memberIds, cursor, gaps.size());
+        }
+    }
+
+    public long getInvalidationCount() {
+        return invalidationCount.sum();
+    }
+
+    /**
+     * 마지막으로 반영한 변경의 나이 (변경 트랜잭션 시작부터, MemberChange.ageMillis)
+     */
+    public long getLastChangeAgeMillis() {
+        return lastChangeAgeMillis.get();
+    }
+
+    public long getMaxChangeAgeMillis() {
+        return maxChangeAgeMillis.get();
+    }
+
+    /**
+     * lookback 동안 나타나지 않아 더 보지 않는 seq 수 (대부분 롤백된 트랜잭션)
+     */
+    public long getExpiredGapCount() {
+        return expiredGapCount.sum();
+    }
+
+    @Override
+    public void close() {
+        tasks.close();
+    }
+
+    private void expireGaps(long now) {
+        long lookbackNanos = lookback.toNanos();
+        Iterator<Long> observedTimes = gaps.values().iterator();
+        while (observedTimes.hasNext()) {
+            if (now - observedTimes.next() >= lookbackNanos) {
+                observedTimes.remove();
+                expiredGapCount.increment();
+            }
+        }
+    }
+
+    private void purge() {
+        int deleted = changeLog.deleteOlderThan(retention);
+        log.debug("member change log purged={}", deleted);
+    }
+}
@@ -0,0 +1,18 @@
+package hello.jdbc.repository.ex;
+
+import org.springframework.dao.OptimisticLockingFailureException;
+
+/**
+ * update ... where version=? 가 0건 - 조회한 뒤 다른 트랜잭션이 먼저 변경(또는 삭제)했다.
+ * 스프링 ConcurrencyFailureException 계층이므로 다시 조회해서 재시도하면 성공할 수 있다.
+ */
+public class OptimisticLockConflictException extends OptimisticLockingFailureException {
+
+    public OptimisticLockConflictException(String message) {
+        super(message);
+    }
+
+    public OptimisticLockConflictException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
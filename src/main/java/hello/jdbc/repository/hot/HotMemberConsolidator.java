@@ -0,0 +1,73 @@
+package hello.jdbc.repository.hot;
+
+import hello.jdbc.repository.PeriodicTasks;
+import hello.jdbc.repository.hot.HotMemberRepository.CreditCount;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 주기적으로
+ * 1. hot_member 를 다시 읽고 (다른 노드의 승격/강등)
+ * 2. 핫 계좌의 slot 잔액을 member 행으로 모은다. (출금이 slot 을 모으느라 늦어지지 않도록)
+ * 3. 지난 주기 동안 member 행 입금이 promoteContended 번 이상 행 락을 기다린 회원은 승격,
+ *    입금이 demoteCredits 번 미만인 핫 계좌는 강등
+ */
+@Slf4j
+public class HotMemberConsolidator implements AutoCloseable {
+
+    private final HotMemberRepository repository;
+    private final Duration interval;
+    private final int slots;
+    private final long promoteContended;
+    private final long demoteCredits;
+    private final PeriodicTasks tasks = new PeriodicTasks("hot-member-consolidator");
+
+    public HotMemberConsolidator(HotMemberRepository repository, Duration interval,
+                                 long promoteContended, long demoteCredits) {
+        this(repository, interval, HotMemberRepository.DEFAULT_SLOTS, promoteContended, demoteCredits);
+    }
+
+    public HotMemberConsolidator(HotMemberRepository repository, Duration interval, int slots,
+                                 long promoteContended, long demoteCredits) {
+        this.repository = repository;
+        this.interval = interval;
+        this.slots = slots;
+        this.promoteContended = promoteContended;
+        this.demoteCredits = demoteCredits;
+    }
+
+    public void start() {
+        tasks.schedule("hot member consolidate", interval, this::run);
+        log.info("hot member consolidator started interval={}", interval);
+    }
+
+    synchronized void run() {
+        repository.refresh();
+        for (String memberId : repository.hotMemberIds()) {
+            long moved = repository.consolidate(memberId);
+            log.debug("consolidate memberId={}, moved={}", memberId, moved);
+        }
+
+        Map<String, CreditCount> counts = repository.drainCreditCounts();
+        for (Map.Entry<String, CreditCount> entry : counts.entrySet()) {
+            if (!repository.isHot(entry.getKey()) && entry.getValue().contended() >= promoteContended) {
+                repository.promote(entry.getKey(), slots);
+            }
+        }
+        for (String memberId : new ArrayList<>(repository.hotMemberIds())) {
+            CreditCount count = counts.get(memberId);
+            if (count == null || count.credits() < demoteCredits) {
+                repository.demote(memberId);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        tasks.close();
+    }
+}
@@ -0,0 +1,395 @@
+package hello.jdbc.repository.hot;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.domain.Transfer;
+import hello.jdbc.repository.InListChunks;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.ex.OptimisticLockConflictException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 핫 계좌 잔액 분산 (split counter) - MemberRepository 데코레이터
+ * hot_member 에 등록된 회원의 잔액 = member.money + sum(member_balance_slot.money)
+ * - 입금: 무작위 slot 행에 더한다. -> 입금끼리 같은 행 락을 기다리지 않음
+ * - 출금: member 행에서 조건부 차감, 부족하면 slot 을 member 행으로 모은(consolidate) 뒤 한 번 더 시도
+ * - 조회: member 행 + slot 합계를 join 한 문장으로
+ * - version = member.version + sum(slot.version) -> slot 입금도 version 을 올리므로 낙관적 락이 그대로 동작
+ *
+ * 승격/강등을 아직 모르는 노드는 member 행에 입금하거나(합계는 같음), 지워진 slot 에 입금을 시도한다. (0건 -> member 행에 입금)
+ * 승격 판단용으로 member 행 입금이 contendedCredit 이상 걸린 횟수(행 락 대기)를 회원별로 센다.
+ */
+@Slf4j
+public class HotMemberRepository implements MemberRepository {
+    public static final int DEFAULT_SLOTS = 8;
+    public static final Duration DEFAULT_CONTENDED_CREDIT = Duration.ofMillis(5);
+
+    private static final String BALANCE_SQL =
+            "select m.member_id, m.money + coalesce(sum(s.money), 0) as money, m.version + coalesce(sum(s.version), 0) as version" +
+                    " from member m left join member_balance_slot s on s.member_id = m.member_id" +
+                    " where m.member_id in ";
+    private static final String BALANCE_GROUP_BY = " group by m.member_id, m.money, m.version";
+
+    private final MemberRepository target;
+    private final JdbcTemplate template;
+    private final TransactionTemplate txTemplate;
+    private final long contendedCreditNanos;
+
+    private volatile Map<String, Integer> hotSlots = Map.of();
+    private final ConcurrentHashMap<String, CreditCounter> creditCounters = new ConcurrentHashMap<>();
+
+    public HotMemberRepository(MemberRepository target, DataSource dataSource, PlatformTransactionManager transactionManager) {
+        this(target, dataSource, transactionManager, DEFAULT_CONTENDED_CREDIT);
+    }
+
+    public HotMemberRepository(MemberRepository target, DataSource dataSource, PlatformTransactionManager transactionManager,
+                               Duration contendedCredit) {
+        this.target = target;
+        this.template = new JdbcTemplate(dataSource);
+        //진행 중인 트랜잭션이 있으면 참여, 없으면 새 트랜잭션 (PROPAGATION_REQUIRED)
+        this.txTemplate = new TransactionTemplate(transactionManager);
+        this.contendedCreditNanos = contendedCredit.toNanos();
+        refresh();
+    }
+
+    @Override
+    public Member save(Member member) {
+        return target.save(member);
+    }
+
+    @Override
+    public boolean insertIfAbsent(Member member) {
+        return target.insertIfAbsent(member);
+    }
+
+    /**
+     * 있으면 update 와 같이 slot 은 0 으로
+     */
+    @Override
+    public boolean saveOrUpdate(Member member) {
+        if (!isHot(member.getMemberId())) {
+            return target.saveOrUpdate(member);
+        }
+        return txTemplate.execute(status -> {
+            clearSlots(member.getMemberId());
+            return target.saveOrUpdate(member);
+        });
+    }
+
+    @Override
+    public List<Member> saveAll(Collection<Member> members, int batchSize) {
+        return target.saveAll(members, batchSize);
+    }
+
+    /**
+     * member 행과 slot 합계를 한 문장으로 읽는다. -> 사이에 consolidate/강등이 커밋돼도 합계가 어긋나지 않음
+     * 승격 여부를 보지 않으므로 다른 노드가 승격해 쌓은 slot 입금도 포함
+     */
+    @Override
+    public Member findById(String memberId) {
+        //없으면 EmptyResultDataAccessException (MemberRepositoryV5 와 같음)
+        return template.queryForObject(BALANCE_SQL + "(?)" + BALANCE_GROUP_BY, balanceRowMapper(), memberId);
+    }
+
+    @Override
+    public Map<String, Member> findAllByIds(Collection<String> memberIds) {
+        Map<String, Member> foundMembers = new HashMap<>();
+        for (List<String> chunk : InListChunks.chunk(memberIds)) {
+            String sql = InListChunks.sql(BALANCE_SQL, chunk.size()) + BALANCE_GROUP_BY;
+            for (Member member : template.query(sql, balanceRowMapper(), chunk.toArray())) {
+                foundMembers.put(member.getMemberId(), member);
+            }
+        }
+        Map<String, Member> result = new LinkedHashMap<>();
+        for (String memberId : memberIds) {
+            Member member = foundMembers.get(memberId);
+            if (member != null) {
+                result.put(memberId, member);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Member> findByIdsForUpdate(Collection<String> memberIds) {
+        Map<String, Member> members = target.findByIdsForUpdate(memberIds);
+        members.replaceAll((memberId, member) -> isHot(memberId) ? withSlots(member) : member);
+        return members;
+    }
+
+    /**
+     * 잔액을 지정 -> slot 은 0 으로
+     */
+    @Override
+    public void update(String memberId, int money) {
+        if (!isHot(memberId)) {
+            target.update(memberId, money);
+            return;
+        }
+        txTemplate.executeWithoutResult(status -> {
+            clearSlots(memberId);
+            target.update(memberId, money);
+        });
+    }
+
+    @Override
+    public void update(String memberId, int money, long expectedVersion) {
+        if (!isHot(memberId)) {
+            target.update(memberId, money, expectedVersion);
+            return;
+        }
+        txTemplate.executeWithoutResult(status -> {
+            Member current = findByIdsForUpdate(List.of(memberId)).get(memberId);
+            if (current == null || current.getVersion() != expectedVersion) {
+                throw new OptimisticLockConflictException("member changed or deleted memberId=" + memberId + ", expectedVersion=" + expectedVersion);
+            }
+            clearSlots(memberId);
+            target.update(memberId, money);
+        });
+    }
+
+    @Override
+    public int addMoney(String memberId, int delta) {
+        Integer slots = hotSlots.get(memberId);
+        if (delta > 0 && slots != null) {
+            String sql = "update member_balance_slot set money=money+?, version=version+1 where member_id=? and slot=?";
+            int resultSize = template.update(sql, delta, memberId, ThreadLocalRandom.current().nextInt(slots));
+            if (resultSize == 1) {
+                creditCounter(memberId).credits.increment();
+                return resultSize;
+            }
+            //다른 노드에서 강등됨
+            log.info("balance slot not found, credit member row memberId={}", memberId);
+        }
+        long start = System.nanoTime();
+        int resultSize = target.addMoney(memberId, delta);
+        if (delta > 0) {
+            CreditCounter counter = creditCounter(memberId);
+            counter.credits.increment();
+            if (System.nanoTime() - start >= contendedCreditNanos) {
+                counter.contended.increment();
+            }
+        }
+        return resultSize;
+    }
+
+    @Override
+    public int withdrawIfSufficient(String memberId, int amount) {
+        int resultSize = target.withdrawIfSufficient(memberId, amount);
+        if (resultSize == 1 || !isHot(memberId)) {
+            return resultSize;
+        }
+        //member 행만으로는 부족 -> slot 을 모은 뒤 다시 시도
+        if (consolidate(memberId) == 0) {
+            return resultSize;
+        }
+        return target.withdrawIfSufficient(memberId, amount);
+    }
+
+    @Override
+    public int transfer(String fromId, String toId, int amount) {
+        if (!isHot(fromId) && !isHot(toId)) {
+            return target.transfer(fromId, toId, amount);
+        }
+        //한 문장으로 할 수 없으므로 출금 + 입금 (호출한 쪽 트랜잭션 안에서), 입금 회원이 없으면 출금도 하지 않는다.
+        if (fromId.equals(toId) || !isHot(toId) && target.findAllByIds(List.of(toId)).isEmpty()) {
+            return 0;
+        }
+        if (withdrawIfSufficient(fromId, amount) == 0) {
+            return 0;
+        }
+        addMoney(toId, amount);
+        return 2;
+    }
+
+    @Override
+    public int[] transferAll(List<Transfer> transfers) {
+        boolean touchesHot = false;
+        for (Transfer transfer : transfers) {
+            touchesHot |= isHot(transfer.getFromId()) || isHot(transfer.getToId());
+        }
+        if (!touchesHot) {
+            return target.transferAll(transfers);
+        }
+        int[] resultSizes = new int[transfers.size()];
+        for (int i = 0; i < transfers.size(); i++) {
+            Transfer transfer = transfers.get(i);
+            resultSizes[i] = transfer(transfer.getFromId(), transfer.getToId(), transfer.getAmount());
+        }
+        return resultSizes;
+    }
+
+    @Override
+    public void delete(String memberId) {
+        if (isHot(memberId)) {
+            txTemplate.executeWithoutResult(status -> {
+                template.update("delete from member_balance_slot where member_id=?", memberId);
+                template.update("delete from hot_member where member_id=?", memberId);
+                target.delete(memberId);
+            });
+            refresh();
+            return;
+        }
+        target.delete(memberId);
+    }
+
+    /**
+     * slot 잔액을 member 행으로 옮긴다. 옮긴 금액 반환
+     */
+    public long consolidate(String memberId) {
+        return txTemplate.execute(status -> {
+            long moved = 0;
+            for (SlotBalance slot : lockSlots(memberId)) {
+                if (slot.money() == 0) {
+                    continue;
+                }
+                String sql = "update member_balance_slot set money=money-?, version=version+1 where member_id=? and slot=?";
+                template.update(sql, slot.money(), memberId, slot.slot());
+                moved += slot.money();
+            }
+            if (moved != 0) {
+                target.addMoney(memberId, Math.toIntExact(moved));
+            }
+            return moved;
+        });
+    }
+
+    /**
+     * slots 개의 slot 행을 만들고 hot_member 에 등록
+     */
+    public void promote(String memberId, int slots) {
+        if (slots < 1) {
+            throw new IllegalArgumentException("slots must be positive. slots=" + slots);
+        }
+        if (isHot(memberId)) {
+            return;
+        }
+        txTemplate.executeWithoutResult(status -> {
+            template.update("insert into hot_member (member_id, slots) values (?, ?)", memberId, slots);
+            List<Object[]> batchArgs = new ArrayList<>(slots);
+            for (int slot = 0; slot < slots; slot++) {
+                batchArgs.add(new Object[]{memberId, slot});
+            }
+            template.batchUpdate("insert into member_balance_slot (member_id, slot) values (?, ?)", batchArgs);
+        });
+        refresh();
+        log.info("promote hot member memberId={}, slots={}", memberId, slots);
+    }
+
+    /**
+     * slot 을 모두 잠근 뒤 잔액과 version 을 member 행으로 옮기고 삭제
+     * version 은 slot version 합계 + 1 을 더한다. -> 강등 전에 읽은 version 으로 다시 돌아가지 않는다. (ABA 방지)
+     * 잠근 slot 에 입금하려던 트랜잭션은 삭제 후 0건이 되어 member 행에 입금한다.
+     */
+    public void demote(String memberId) {
+        if (!isHot(memberId)) {
+            return;
+        }
+        txTemplate.executeWithoutResult(status -> {
+            long moved = 0;
+            long foldedVersion = 0;
+            for (SlotBalance slot : lockSlots(memberId)) {
+                moved += slot.money();
+                foldedVersion += slot.version();
+            }
+            template.update("delete from member_balance_slot where member_id=?", memberId);
+            template.update("delete from hot_member where member_id=?", memberId);
+            template.update("update member set money=money+?, version=version+? where member_id=?",
+                    Math.toIntExact(moved), foldedVersion + 1, memberId);
+        });
+        refresh();
+        log.info("demote hot member memberId={}", memberId);
+    }
+
+    /**
+     * hot_member 를 다시 읽는다. (다른 노드의 승격/강등 반영)
+     */
+    public void refresh() {
+        Map<String, Integer> loaded = new HashMap<>();
+        template.query("select member_id, slots from hot_member",
+                (RowCallbackHandler) rs -> loaded.put(rs.getString("member_id"), rs.getInt("slots")));
+        hotSlots = Map.copyOf(loaded);
+    }
+
+    public boolean isHot(String memberId) {
+        return hotSlots.containsKey(memberId);
+    }
+
+    public Collection<String> hotMemberIds() {
+        return hotSlots.keySet();
+    }
+
+    /**
+     * 마지막 호출 이후 회원별 입금 건수, 행 락 대기 건수를 가져오고 0 으로 되돌린다.
+     */
+    public Map<String, CreditCount> drainCreditCounts() {
+        Map<String, CreditCount> counts = new HashMap<>();
+        for (String memberId : creditCounters.keySet()) {
+            CreditCounter counter = creditCounters.remove(memberId);
+            if (counter != null) {
+                counts.put(memberId, new CreditCount(counter.credits.sum(), counter.contended.sum()));
+            }
+        }
+        return counts;
+    }
+
+    private Member withSlots(Member member) {
+        List<SlotBalance> slots = lockSlots(member.getMemberId());
+        long money = member.getMoney();
+        long version = member.getVersion();
+        for (SlotBalance slot : slots) {
+            money += slot.money();
+            version += slot.version();
+        }
+        return new Member(member.getMemberId(), Math.toIntExact(money), version);
+    }
+
+    private List<SlotBalance> lockSlots(String memberId) {
+        String sql = "select slot, money, version from member_balance_slot where member_id=? order by slot for update";
+        return template.query(sql, slotBalanceRowMapper(), memberId);
+    }
+
+    private void clearSlots(String memberId) {
+        lockSlots(memberId);
+        template.update("update member_balance_slot set money=0, version=version+1 where member_id=? and money<>0", memberId);
+    }
+
+    private CreditCounter creditCounter(String memberId) {
+        return creditCounters.computeIfAbsent(memberId, id -> new CreditCounter());
+    }
+
+    private RowMapper<Member> balanceRowMapper() {
+        return (rs, rowNum) -> new Member(rs.getString("member_id"), rs.getInt("money"), rs.getLong("version"));
+    }
+
+    private RowMapper<SlotBalance> slotBalanceRowMapper() {
+        return (rs, rowNum) -> new SlotBalance(rs.getInt("slot"), rs.getInt("money"), rs.getLong("version"));
+    }
+
+    public record CreditCount(long credits, long contended) {
+    }
+
+    private record SlotBalance(int slot, int money, long version) {
+    }
+
+    private static class CreditCounter {
+        private final LongAdder credits = new LongAdder();
+        private final LongAdder contended = new LongAdder();
+    }
+}
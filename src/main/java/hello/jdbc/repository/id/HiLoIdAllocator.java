@@ -0,0 +1,152 @@
+package hello.jdbc.repository.id;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * hi/lo id 발급
+ * 시퀀스 값(hi) 하나로 [hi * blockSize, (hi + 1) * blockSize) 구간을 예약하고, 구간 안에서는 AtomicLong 으로 발급한다.
+ * - 블록 안의 id 발급은 DB 왕복, 락 없음
+ * - 남은 id 가 prefetchThreshold 개가 되면 다음 블록을 백그라운드에서 미리 받아둔다.
+ * - 재시작하면 쓰지 않은 id 는 버려진다. (구멍은 있지만 중복은 없음)
+ * - 같은 시퀀스를 쓰는 모든 노드는 blockSize 가 같아야 한다.
+ *
+ * 시퀀스는 트랜잭션과 무관하게 증가하므로 호출한 트랜잭션이 롤백되어도 같은 블록이 다시 나가지 않는다.
+ */
+@Slf4j
+public class HiLoIdAllocator implements AutoCloseable {
+    public static final String DEFAULT_SEQUENCE = "member_id_seq";
+    public static final int DEFAULT_BLOCK_SIZE = 1000;
+
+    private final JdbcTemplate template;
+    private final String sequenceName;
+    private final int blockSize;
+    private final int prefetchThreshold;
+    private final ExecutorService prefetchExecutor;
+
+    private volatile Block current = new Block(0, 0);
+    private CompletableFuture<Block> prefetched;
+
+    private final LongAdder blockFetchCount = new LongAdder();
+    private final LongAdder prefetchMissCount = new LongAdder();
+
+    public HiLoIdAllocator(DataSource dataSource) {
+        this(dataSource, DEFAULT_SEQUENCE, DEFAULT_BLOCK_SIZE, DEFAULT_BLOCK_SIZE / 4);
+    }
+
+    public HiLoIdAllocator(DataSource dataSource, String sequenceName, int blockSize, int prefetchThreshold) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("blockSize must be positive. blockSize=" + blockSize);
+        }
+        if (prefetchThreshold < 1 || prefetchThreshold > blockSize) {
+            throw new IllegalArgumentException("prefetchThreshold must be between 1 and blockSize. prefetchThreshold=" + prefetchThreshold);
+        }
+        this.template = new JdbcTemplate(dataSource);
+        this.sequenceName = sequenceName;
+        this.blockSize = blockSize;
+        this.prefetchThreshold = prefetchThreshold;
+        this.prefetchExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "id-block-prefetch-" + sequenceName);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public long nextId() {
+        while (true) {
+            Block block = current;
+            long id = block.next.getAndIncrement();
+            if (id < block.end) {
+                //getAndIncrement 이므로 이 값을 받는 쓰레드는 하나뿐
+                if (block.end - id == prefetchThreshold) {
+                    prefetch();
+                }
+                return id;
+            }
+            nextBlock(block);
+        }
+    }
+
+    /**
+     * member_id (varchar(10)) 용 - 10자리를 넘는 id 는 발급하지 않는다.
+     */
+    public String nextMemberId() {
+        long id = nextId();
+        if (id > 9_999_999_999L) {
+            throw new IllegalStateException("member id exhausted id=" + id);
+        }
+        return Long.toString(id);
+    }
+
+    public long getBlockFetchCount() {
+        return blockFetchCount.sum();
+    }
+
+    /**
+     * 미리 받아둔 블록이 없어서 발급 쓰레드가 직접 DB 에서 블록을 받은 횟수
+     */
+    public long getPrefetchMissCount() {
+        return prefetchMissCount.sum();
+    }
+
+    @Override
+    public void close() {
+        prefetchExecutor.shutdownNow();
+    }
+
+    private synchronized void prefetch() {
+        if (prefetched == null) {
+            prefetched = CompletableFuture.supplyAsync(this::fetchBlock, prefetchExecutor);
+        }
+    }
+
+    private synchronized void nextBlock(Block exhausted) {
+        if (current != exhausted) {
+            //다른 쓰레드가 이미 교체
+            return;
+        }
+        CompletableFuture<Block> future = prefetched;
+        prefetched = null;
+        current = future != null ? awaitOrFetch(future) : fetchMissed();
+    }
+
+    private Block awaitOrFetch(CompletableFuture<Block> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            log.warn("id block prefetch failed sequence={}", sequenceName, e.getCause());
+            return fetchMissed();
+        }
+    }
+
+    private Block fetchMissed() {
+        prefetchMissCount.increment();
+        return fetchBlock();
+    }
+
+    private Block fetchBlock() {
+        String sql = "select next value for " + sequenceName;
+        long hi = template.queryForObject(sql, Long.class);
+        blockFetchCount.increment();
+        log.debug("id block fetched sequence={}, hi={}", sequenceName, hi);
+        return new Block(hi * blockSize, (hi + 1) * blockSize);
+    }
+
+    private static class Block {
+        private final AtomicLong next;
+        private final long end;
+
+        private Block(long start, long end) {
+            this.next = new AtomicLong(start);
+            this.end = end;
+        }
+    }
+}
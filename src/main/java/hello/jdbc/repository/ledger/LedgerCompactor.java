@@ -0,0 +1,61 @@
+package hello.jdbc.repository.ledger;
+
+import hello.jdbc.repository.PeriodicTasks;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 주기적으로 fold 할 원장이 있는 회원을 batchSize 명씩 찾아 member 행으로 fold
+ * 회원마다 짧은 트랜잭션 하나 -> 출금이 member 행 락을 오래 기다리지 않는다.
+ * 잔액 조회와 fold 대상 조회 모두 folded = false 인 행만 인덱스로 읽으므로
+ * 비용이 전체 원장이 아니라 interval 동안 쌓인 만큼으로 유지된다.
+ */
+@Slf4j
+public class LedgerCompactor implements AutoCloseable {
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    private final LedgerMemberRepository repository;
+    private final Duration interval;
+    private final int batchSize;
+    private final PeriodicTasks tasks = new PeriodicTasks("ledger-compactor");
+    private final LongAdder foldedEntries = new LongAdder();
+
+    public LedgerCompactor(LedgerMemberRepository repository, Duration interval) {
+        this(repository, interval, DEFAULT_BATCH_SIZE);
+    }
+
+    public LedgerCompactor(LedgerMemberRepository repository, Duration interval, int batchSize) {
+        this.repository = repository;
+        this.interval = interval;
+        this.batchSize = batchSize;
+    }
+
+    public void start() {
+        tasks.schedule("ledger compact", interval, this::run);
+        log.info("ledger compactor started interval={}, batchSize={}", interval, batchSize);
+    }
+
+    /**
+     * fold 한 원장 건수 반환
+     */
+    synchronized long run() {
+        long folded = 0;
+        for (String memberId : repository.findUnfoldedMemberIds(batchSize)) {
+            folded += repository.compact(memberId);
+        }
+        foldedEntries.add(folded);
+        log.debug("ledger folded={}", folded);
+        return folded;
+    }
+
+    public long getFoldedEntries() {
+        return foldedEntries.sum();
+    }
+
+    @Override
+    public void close() {
+        tasks.close();
+    }
+}
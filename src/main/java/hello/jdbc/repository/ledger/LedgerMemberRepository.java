@@ -0,0 +1,259 @@
+package hello.jdbc.repository.ledger;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.domain.Transfer;
+import hello.jdbc.repository.InListChunks;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.ex.OptimisticLockConflictException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 이체 원장 (event sourcing) - MemberRepository 데코레이터
+ * 잔액 변경은 transfer_ledger 에 delta 를 insert 만 한다. member 행은 마지막 fold 시점의 스냅샷
+ * - 잔액 = member.money + sum(folded = false 인 delta), version = member.version + 그 건수
+ *   (member 와 원장을 한 문장으로 읽으므로 fold 중간 상태가 보이지 않는다)
+ * - 입금: 원장 insert 한 문장 -> member 행 락 없음
+ * - 출금/이체: 출금 회원의 member 행만 잠그고 (잔액 확인) 원장 insert, 입금 쪽은 잠그지 않는다.
+ * - transferAll: 출금 회원을 한번에 잠그고 모든 delta 를 batch insert 한 번으로
+ * - LedgerCompactor 가 주기적으로 원장을 member 행으로 fold (compact)
+ *
+ * 잔액이 부족하면 transfer 는 아무것도 insert 하지 않고 0
+ */
+@Slf4j
+public class LedgerMemberRepository implements MemberRepository {
+    private static final String BALANCE_SQL =
+            "select m.member_id, m.money + coalesce(sum(l.delta), 0) as money, m.version + count(l.seq) as version" +
+                    " from member m left join transfer_ledger l on l.member_id = m.member_id and l.folded = false" +
+                    " where m.member_id in ";
+    private static final String BALANCE_GROUP_BY = " group by m.member_id, m.money, m.version";
+    private static final String APPEND_SQL = "insert into transfer_ledger (member_id, delta) values (?, ?)";
+
+    private final MemberRepository target;
+    private final JdbcTemplate template;
+    private final TransactionTemplate txTemplate;
+
+    public LedgerMemberRepository(MemberRepository target, DataSource dataSource, PlatformTransactionManager transactionManager) {
+        this.target = target;
+        this.template = new JdbcTemplate(dataSource);
+        //진행 중인 트랜잭션이 있으면 참여, 없으면 새 트랜잭션 (PROPAGATION_REQUIRED)
+        this.txTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Override
+    public Member save(Member member) {
+        return target.save(member);
+    }
+
+    @Override
+    public boolean insertIfAbsent(Member member) {
+        return target.insertIfAbsent(member);
+    }
+
+    /**
+     * 있으면 update 와 같이 차액을 원장에 추가, 없으면 member 행 insert
+     * member 행을 잠근 트랜잭션 안에서 판단하므로 그 사이 삭제될 수 없다.
+     */
+    @Override
+    public boolean saveOrUpdate(Member member) {
+        return txTemplate.execute(status -> {
+            Member current = findByIdsForUpdate(List.of(member.getMemberId())).get(member.getMemberId());
+            if (current == null) {
+                return target.saveOrUpdate(member);
+            }
+            template.update(APPEND_SQL, member.getMemberId(), member.getMoney() - current.getMoney());
+            return false;
+        });
+    }
+
+    @Override
+    public List<Member> saveAll(Collection<Member> members, int batchSize) {
+        return target.saveAll(members, batchSize);
+    }
+
+    @Override
+    public Member findById(String memberId) {
+        //없으면 EmptyResultDataAccessException (MemberRepositoryV5 와 같음)
+        return template.queryForObject(BALANCE_SQL + "(?)" + BALANCE_GROUP_BY, balanceRowMapper(), memberId);
+    }
+
+    @Override
+    public Map<String, Member> findAllByIds(Collection<String> memberIds) {
+        Map<String, Member> foundMembers = new HashMap<>();
+        for (List<String> chunk : InListChunks.chunk(memberIds)) {
+            String sql = InListChunks.sql(BALANCE_SQL, chunk.size()) + BALANCE_GROUP_BY;
+            for (Member member : template.query(sql, balanceRowMapper(), chunk.toArray())) {
+                foundMembers.put(member.getMemberId(), member);
+            }
+        }
+        Map<String, Member> result = new LinkedHashMap<>();
+        for (String memberId : memberIds) {
+            Member member = foundMembers.get(memberId);
+            if (member != null) {
+                result.put(memberId, member);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * member 행을 잠근 뒤 원장 포함 잔액 (잠근 뒤에도 다른 트랜잭션의 입금은 늘어날 수 있다)
+     */
+    @Override
+    public Map<String, Member> findByIdsForUpdate(Collection<String> memberIds) {
+        target.findByIdsForUpdate(memberIds);
+        return findAllByIds(memberIds);
+    }
+
+    /**
+     * 현재 잔액과의 차이를 원장에 기록
+     */
+    @Override
+    public void update(String memberId, int money) {
+        txTemplate.executeWithoutResult(status -> {
+            Member current = findByIdsForUpdate(List.of(memberId)).get(memberId);
+            if (current != null) {
+                template.update(APPEND_SQL, memberId, money - current.getMoney());
+            }
+        });
+    }
+
+    @Override
+    public void update(String memberId, int money, long expectedVersion) {
+        txTemplate.executeWithoutResult(status -> {
+            Member current = findByIdsForUpdate(List.of(memberId)).get(memberId);
+            if (current == null || current.getVersion() != expectedVersion) {
+                throw new OptimisticLockConflictException("member changed or deleted memberId=" + memberId + ", expectedVersion=" + expectedVersion);
+            }
+            template.update(APPEND_SQL, memberId, money - current.getMoney());
+        });
+    }
+
+    /**
+     * 원장 insert 한 문장, 회원이 없으면 0
+     */
+    @Override
+    public int addMoney(String memberId, int delta) {
+        String sql = "insert into transfer_ledger (member_id, delta) select member_id, ? from member where member_id=?";
+        return template.update(sql, delta, memberId);
+    }
+
+    @Override
+    public int withdrawIfSufficient(String memberId, int amount) {
+        return txTemplate.execute(status -> {
+            Member current = findByIdsForUpdate(List.of(memberId)).get(memberId);
+            if (current == null || current.getMoney() < amount) {
+                return 0;
+            }
+            return template.update(APPEND_SQL, memberId, -amount);
+        });
+    }
+
+    @Override
+    public int transfer(String fromId, String toId, int amount) {
+        return txTemplate.execute(status -> {
+            Member from = findByIdsForUpdate(List.of(fromId)).get(fromId);
+            if (from == null || fromId.equals(toId) || from.getMoney() < amount) {
+                return 0;
+            }
+            //입금 회원이 없으면 출금도 하지 않는다.
+            if (addMoney(toId, amount) == 0) {
+                return 0;
+            }
+            return 1 + template.update(APPEND_SQL, fromId, -amount);
+        });
+    }
+
+    @Override
+    public int[] transferAll(List<Transfer> transfers) {
+        return txTemplate.execute(status -> {
+            Set<String> fromIds = new LinkedHashSet<>();
+            Set<String> memberIds = new LinkedHashSet<>();
+            for (Transfer t : transfers) {
+                fromIds.add(t.getFromId());
+                memberIds.add(t.getFromId());
+                memberIds.add(t.getToId());
+            }
+            target.findByIdsForUpdate(fromIds);
+            Map<String, Integer> balances = new HashMap<>();
+            findAllByIds(memberIds).forEach((memberId, member) -> balances.put(memberId, member.getMoney()));
+
+            int[] resultSizes = new int[transfers.size()];
+            List<Object[]> batchArgs = new ArrayList<>();
+            for (int i = 0; i < transfers.size(); i++) {
+                Transfer t = transfers.get(i);
+                Integer fromBalance = balances.get(t.getFromId());
+                Integer toBalance = balances.get(t.getToId());
+                if (fromBalance == null || toBalance == null || t.getFromId().equals(t.getToId()) || fromBalance < t.getAmount()) {
+                    continue;
+                }
+                balances.put(t.getFromId(), fromBalance - t.getAmount());
+                balances.put(t.getToId(), toBalance + t.getAmount());
+                batchArgs.add(new Object[]{t.getFromId(), -t.getAmount()});
+                batchArgs.add(new Object[]{t.getToId(), t.getAmount()});
+                resultSizes[i] = 2;
+            }
+            if (!batchArgs.isEmpty()) {
+                template.batchUpdate(APPEND_SQL, batchArgs);
+            }
+            return resultSizes;
+        });
+    }
+
+    @Override
+    public void delete(String memberId) {
+        txTemplate.executeWithoutResult(status -> {
+            template.update("delete from transfer_ledger where member_id=?", memberId);
+            target.delete(memberId);
+        });
+    }
+
+    /**
+     * 아직 fold 하지 않은 원장을 member 행으로 옮긴다. fold 한 원장 건수 반환
+     * folded 로 바꾼 행의 합계를 같은 문장에서 읽으므로 (final table) 그 사이 insert 된 행은 다음 fold 로 넘어간다.
+     * 잔액과 version (member.version + 건수) 은 fold 전후가 같다.
+     */
+    public long compact(String memberId) {
+        return txTemplate.execute(status -> {
+            //출금과 같은 순서 (member 행 -> 원장)
+            target.findByIdsForUpdate(List.of(memberId));
+            String foldSql = "select coalesce(sum(delta), 0) as delta, count(*) as entries" +
+                    " from final table (update transfer_ledger set folded=true where member_id=? and folded=false)";
+            Fold fold = template.queryForObject(foldSql, (rs, rowNum) -> new Fold(rs.getLong("delta"), rs.getLong("entries")), memberId);
+            if (fold.entries() > 0) {
+                String sql = "update member set money=money+?, version=version+? where member_id=?";
+                template.update(sql, Math.toIntExact(fold.delta()), fold.entries(), memberId);
+            }
+            return fold.entries();
+        });
+    }
+
+    /**
+     * fold 할 원장이 있는 회원 (최대 limit 명)
+     * (folded, member_id) 인덱스로 folded = false 인 행만 읽는다.
+     */
+    public List<String> findUnfoldedMemberIds(int limit) {
+        String sql = "select distinct member_id from transfer_ledger where folded=false limit ?";
+        return template.queryForList(sql, String.class, limit);
+    }
+
+    private RowMapper<Member> balanceRowMapper() {
+        return (rs, rowNum) -> new Member(rs.getString("member_id"), rs.getInt("money"), rs.getLong("version"));
+    }
+
+    private record Fold(long delta, long entries) {
+    }
+}
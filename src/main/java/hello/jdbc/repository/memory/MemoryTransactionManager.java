@@ -0,0 +1,112 @@
+package hello.jdbc.repository.memory;
+
+import org.springframework.transaction.SavepointManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.ResourceHolderSupport;
+import org.springframework.transaction.support.SmartTransactionObject;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * StripedMemoryMemberRepository 전용 트랜잭션 매니저 (DataSource 없이)
+ * 커밋/롤백은 저장소가 등록한 TransactionSynchronization 이 처리하고 (undo log, 락 해제)
+ * 여기서는 트랜잭션 범위와 savepoint(= undo log 위치)만 관리한다.
+ * -> MemberServiceV4.transferAll 의 savepoint 롤백, PROPAGATION_NESTED 도 동작
+ */
+public class MemoryTransactionManager extends AbstractPlatformTransactionManager {
+
+    private final StripedMemoryMemberRepository repository;
+
+    public MemoryTransactionManager(StripedMemoryMemberRepository repository) {
+        this.repository = repository;
+        setNestedTransactionAllowed(true);
+    }
+
+    @Override
+    protected Object doGetTransaction() {
+        return new MemoryTransactionObject((MemoryTransactionHolder) TransactionSynchronizationManager.getResource(this));
+    }
+
+    @Override
+    protected boolean isExistingTransaction(Object transaction) {
+        return ((MemoryTransactionObject) transaction).holder != null;
+    }
+
+    @Override
+    protected void doBegin(Object transaction, TransactionDefinition definition) {
+        MemoryTransactionHolder holder = new MemoryTransactionHolder();
+        holder.setSynchronizedWithTransaction(true);
+        ((MemoryTransactionObject) transaction).holder = holder;
+        TransactionSynchronizationManager.bindResource(this, holder);
+    }
+
+    @Override
+    protected Object doSuspend(Object transaction) {
+        ((MemoryTransactionObject) transaction).holder = null;
+        return TransactionSynchronizationManager.unbindResource(this);
+    }
+
+    @Override
+    protected void doResume(Object transaction, Object suspendedResources) {
+        TransactionSynchronizationManager.bindResource(this, suspendedResources);
+    }
+
+    /**
+     * 변경은 이미 반영되어 있다. 락 해제는 afterCompletion
+     */
+    @Override
+    protected void doCommit(DefaultTransactionStatus status) {
+    }
+
+    /**
+     * undo log 적용은 afterCompletion
+     */
+    @Override
+    protected void doRollback(DefaultTransactionStatus status) {
+    }
+
+    @Override
+    protected void doSetRollbackOnly(DefaultTransactionStatus status) {
+        ((MemoryTransactionObject) status.getTransaction()).holder.setRollbackOnly();
+    }
+
+    @Override
+    protected void doCleanupAfterCompletion(Object transaction) {
+        TransactionSynchronizationManager.unbindResourceIfPossible(this);
+    }
+
+    private static class MemoryTransactionHolder extends ResourceHolderSupport {
+    }
+
+    private class MemoryTransactionObject implements SavepointManager, SmartTransactionObject {
+        private MemoryTransactionHolder holder;
+
+        private MemoryTransactionObject(MemoryTransactionHolder holder) {
+            this.holder = holder;
+        }
+
+        @Override
+        public Object createSavepoint() {
+            return repository.savepoint();
+        }
+
+        @Override
+        public void rollbackToSavepoint(Object savepoint) {
+            repository.rollbackToSavepoint((Integer) savepoint);
+        }
+
+        @Override
+        public void releaseSavepoint(Object savepoint) {
+        }
+
+        @Override
+        public boolean isRollbackOnly() {
+            return holder.isRollbackOnly();
+        }
+
+        @Override
+        public void flush() {
+        }
+    }
+}
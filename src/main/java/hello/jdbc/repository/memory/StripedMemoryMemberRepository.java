@@ -0,0 +1,632 @@
+package hello.jdbc.repository.memory;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.domain.Transfer;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.ex.OptimisticLockConflictException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 힙 메모리 MemberRepository - 시뮬레이터, 테스트용 (H2 TCP 왕복 없음)
+ * member_id 해시로 나눈 stripe 마다 open addressing 해시 테이블 (String[] / int[] / long[]) -> Integer 박싱 없음
+ *
+ * 쓰기는 stripe 의 rowLock 을 잡는다.
+ * - 스프링 트랜잭션 안: 트랜잭션이 끝날 때까지 유지 (select ... for update 처럼), 바꾸기 전 값을 undo log 에 기록
+ *   롤백되면 undo log 를 거꾸로 적용 (TransactionSynchronization.afterCompletion)
+ * - 트랜잭션 밖: 메서드가 끝나면 해제
+ * - lockTimeoutMillis 안에 잡지 못하면 CannotAcquireLockException (같은 stripe 의 다른 회원도 기다린다)
+ * 조회는 락을 기다리지 않으므로 다른 트랜잭션의 커밋 전 값이 보일 수 있다. (READ UNCOMMITTED)
+ *
+ * 커밋/롤백은 어떤 PlatformTransactionManager 와도 동작하지만 savepoint 는 MemoryTransactionManager 에서만 되돌린다.
+ * (DataSourceTransactionManager 의 savepoint 는 JDBC 커넥션에만 걸린다)
+ */
+@Slf4j
+public class StripedMemoryMemberRepository implements MemberRepository {
+    public static final int DEFAULT_STRIPES = 256;
+    public static final long DEFAULT_LOCK_TIMEOUT_MILLIS = 1000;
+
+    private final Stripe[] stripes;
+    private final long lockTimeoutMillis;
+
+    public StripedMemoryMemberRepository() {
+        this(DEFAULT_STRIPES, DEFAULT_LOCK_TIMEOUT_MILLIS);
+    }
+
+    public StripedMemoryMemberRepository(int stripeCount, long lockTimeoutMillis) {
+        if (stripeCount < 1) {
+            throw new IllegalArgumentException("stripeCount must be positive. stripeCount=" + stripeCount);
+        }
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe();
+        }
+        this.lockTimeoutMillis = lockTimeoutMillis;
+    }
+
+    @Override
+    public Member save(Member member) {
+        if (!insertIfAbsent(member)) {
+            throw new DuplicateKeyException("duplicate memberId=" + member.getMemberId());
+        }
+        return member;
+    }
+
+    @Override
+    public boolean insertIfAbsent(Member member) {
+        String memberId = member.getMemberId();
+        int stripeIndex = stripeIndex(memberId);
+        Stripe stripe = stripes[stripeIndex];
+        TxState tx = currentTx();
+        acquire(tx, stripeIndex);
+        try {
+            synchronized (stripe) {
+                if (stripe.indexOf(memberId) >= 0) {
+                    return false;
+                }
+                recordUndo(tx, stripe, memberId, -1);
+                stripe.insert(memberId, member.getMoney(), 0);
+                return true;
+            }
+        } finally {
+            releaseIfLocal(tx, stripeIndex);
+        }
+    }
+
+    @Override
+    public boolean saveOrUpdate(Member member) {
+        String memberId = member.getMemberId();
+        int stripeIndex = stripeIndex(memberId);
+        Stripe stripe = stripes[stripeIndex];
+        TxState tx = currentTx();
+        acquire(tx, stripeIndex);
+        try {
+            synchronized (stripe) {
+                int index = stripe.indexOf(memberId);
+                recordUndo(tx, stripe, memberId, index);
+                if (index < 0) {
+                    stripe.insert(memberId, member.getMoney(), 0);
+                    return true;
+                }
+                stripe.set(index, member.getMoney(), stripe.versions[index] + 1);
+                return false;
+            }
+        } finally {
+            releaseIfLocal(tx, stripeIndex);
+        }
+    }
+
+    /**
+     * 하나라도 이미 있으면 아무것도 저장하지 않는다. (batchSize 는 의미 없음)
+     */
+    @Override
+    public List<Member> saveAll(Collection<Member> members, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive. batchSize=" + batchSize);
+        }
+        List<Member> saveMembers = new ArrayList<>(members);
+        Set<String> memberIds = new HashSet<>();
+        for (Member member : saveMembers) {
+            if (!memberIds.add(member.getMemberId())) {
+                throw new DuplicateKeyException("saveAll memberId=" + member.getMemberId());
+            }
+        }
+        int[] stripeIndexes = stripeIndexes(memberIds);
+        TxState tx = currentTx();
+        acquire(tx, stripeIndexes);
+        try {
+            for (Member member : saveMembers) {
+                Stripe stripe = stripe(member.getMemberId());
+                synchronized (stripe) {
+                    if (stripe.indexOf(member.getMemberId()) >= 0) {
+                        throw new DuplicateKeyException("saveAll memberId=" + member.getMemberId());
+                    }
+                }
+            }
+            for (Member member : saveMembers) {
+                Stripe stripe = stripe(member.getMemberId());
+                synchronized (stripe) {
+                    recordUndo(tx, stripe, member.getMemberId(), -1);
+                    stripe.insert(member.getMemberId(), member.getMoney(), 0);
+                }
+            }
+            return saveMembers;
+        } finally {
+            releaseIfLocal(tx, stripeIndexes);
+        }
+    }
+
+    @Override
+    public Member findById(String memberId) {
+        Member member = find(memberId);
+        if (member == null) {
+            throw new EmptyResultDataAccessException("member not found memberId=" + memberId, 1);
+        }
+        return member;
+    }
+
+    @Override
+    public Map<String, Member> findAllByIds(Collection<String> memberIds) {
+        Map<String, Member> result = new LinkedHashMap<>();
+        for (String memberId : memberIds) {
+            Member member = find(memberId);
+            if (member != null) {
+                result.put(memberId, member);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 트랜잭션 안이면 stripe 를 번호 순서로 잠그고 트랜잭션이 끝날 때까지 유지
+     */
+    @Override
+    public Map<String, Member> findByIdsForUpdate(Collection<String> memberIds) {
+        TxState tx = currentTx();
+        if (tx != null) {
+            acquire(tx, stripeIndexes(memberIds));
+        }
+        return findAllByIds(memberIds);
+    }
+
+    @Override
+    public void update(String memberId, int money) {
+        int stripeIndex = stripeIndex(memberId);
+        Stripe stripe = stripes[stripeIndex];
+        TxState tx = currentTx();
+        acquire(tx, stripeIndex);
+        try {
+            synchronized (stripe) {
+                int index = stripe.indexOf(memberId);
+                if (index >= 0) {
+                    recordUndo(tx, stripe, memberId, index);
+                    stripe.set(index, money, stripe.versions[index] + 1);
+                }
+            }
+        } finally {
+            releaseIfLocal(tx, stripeIndex);
+        }
+    }
+
+    @Override
+    public void update(String memberId, int money, long expectedVersion) {
+        int stripeIndex = stripeIndex(memberId);
+        Stripe stripe = stripes[stripeIndex];
+        TxState tx = currentTx();
+        acquire(tx, stripeIndex);
+        try {
+            synchronized (stripe) {
+                int index = stripe.indexOf(memberId);
+                if (index < 0 || stripe.versions[index] != expectedVersion) {
+                    throw new OptimisticLockConflictException("member changed or deleted memberId=" + memberId + ", expectedVersion=" + expectedVersion);
+                }
+                recordUndo(tx, stripe, memberId, index);
+                stripe.set(index, money, expectedVersion + 1);
+            }
+        } finally {
+            releaseIfLocal(tx, stripeIndex);
+        }
+    }
+
+    @Override
+    public int addMoney(String memberId, int delta) {
+        int stripeIndex = stripeIndex(memberId);
+        Stripe stripe = stripes[stripeIndex];
+        TxState tx = currentTx();
+        acquire(tx, stripeIndex);
+        try {
+            synchronized (stripe) {
+                int index = stripe.indexOf(memberId);
+                if (index < 0) {
+                    return 0;
+                }
+                recordUndo(tx, stripe, memberId, index);
+                stripe.set(index, stripe.money[index] + delta, stripe.versions[index] + 1);
+                return 1;
+            }
+        } finally {
+            releaseIfLocal(tx, stripeIndex);
+        }
+    }
+
+    @Override
+    public int withdrawIfSufficient(String memberId, int amount) {
+        int stripeIndex = stripeIndex(memberId);
+        Stripe stripe = stripes[stripeIndex];
+        TxState tx = currentTx();
+        acquire(tx, stripeIndex);
+        try {
+            synchronized (stripe) {
+                int index = stripe.indexOf(memberId);
+                if (index < 0 || stripe.money[index] < amount) {
+                    return 0;
+                }
+                recordUndo(tx, stripe, memberId, index);
+                stripe.set(index, stripe.money[index] - amount, stripe.versions[index] + 1);
+                return 1;
+            }
+        } finally {
+            releaseIfLocal(tx, stripeIndex);
+        }
+    }
+
+    /**
+     * 잔액이 부족하거나 회원이 없으면 아무것도 바꾸지 않고 0
+     */
+    @Override
+    public int transfer(String fromId, String toId, int amount) {
+        int[] stripeIndexes = stripeIndexes(List.of(fromId, toId));
+        TxState tx = currentTx();
+        acquire(tx, stripeIndexes);
+        try {
+            return transferLocked(tx, fromId, toId, amount);
+        } finally {
+            releaseIfLocal(tx, stripeIndexes);
+        }
+    }
+
+    @Override
+    public int[] transferAll(List<Transfer> transfers) {
+        Set<String> memberIds = new HashSet<>();
+        for (Transfer t : transfers) {
+            memberIds.add(t.getFromId());
+            memberIds.add(t.getToId());
+        }
+        int[] stripeIndexes = stripeIndexes(memberIds);
+        TxState tx = currentTx();
+        acquire(tx, stripeIndexes);
+        try {
+            int[] resultSizes = new int[transfers.size()];
+            for (int i = 0; i < transfers.size(); i++) {
+                Transfer t = transfers.get(i);
+                resultSizes[i] = transferLocked(tx, t.getFromId(), t.getToId(), t.getAmount());
+            }
+            return resultSizes;
+        } finally {
+            releaseIfLocal(tx, stripeIndexes);
+        }
+    }
+
+    @Override
+    public void delete(String memberId) {
+        int stripeIndex = stripeIndex(memberId);
+        Stripe stripe = stripes[stripeIndex];
+        TxState tx = currentTx();
+        acquire(tx, stripeIndex);
+        try {
+            synchronized (stripe) {
+                int index = stripe.indexOf(memberId);
+                if (index >= 0) {
+                    recordUndo(tx, stripe, memberId, index);
+                    stripe.remove(index);
+                }
+            }
+        } finally {
+            releaseIfLocal(tx, stripeIndex);
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * MemoryTransactionManager 의 savepoint = 현재 undo log 위치
+     */
+    int savepoint() {
+        TxState tx = currentTx();
+        if (tx == null) {
+            throw new IllegalStateException("no active transaction");
+        }
+        return tx.undoLog.size;
+    }
+
+    void rollbackToSavepoint(int savepoint) {
+        TxState tx = currentTx();
+        if (tx == null) {
+            throw new IllegalStateException("no active transaction");
+        }
+        undo(tx, savepoint);
+    }
+
+    private int transferLocked(TxState tx, String fromId, String toId, int amount) {
+        if (fromId.equals(toId)) {
+            return 0;
+        }
+        Stripe fromStripe = stripe(fromId);
+        Stripe toStripe = stripe(toId);
+        //모니터는 stripe 번호 순서로
+        Stripe first = stripeIndex(fromId) <= stripeIndex(toId) ? fromStripe : toStripe;
+        Stripe second = first == fromStripe ? toStripe : fromStripe;
+        synchronized (first) {
+            synchronized (second) {
+                int fromIndex = fromStripe.indexOf(fromId);
+                int toIndex = toStripe.indexOf(toId);
+                if (fromIndex < 0 || toIndex < 0 || fromStripe.money[fromIndex] < amount) {
+                    return 0;
+                }
+                recordUndo(tx, fromStripe, fromId, fromIndex);
+                recordUndo(tx, toStripe, toId, toIndex);
+                fromStripe.set(fromIndex, fromStripe.money[fromIndex] - amount, fromStripe.versions[fromIndex] + 1);
+                toStripe.set(toIndex, toStripe.money[toIndex] + amount, toStripe.versions[toIndex] + 1);
+                return 2;
+            }
+        }
+    }
+
+    private Member find(String memberId) {
+        Stripe stripe = stripe(memberId);
+        synchronized (stripe) {
+            int index = stripe.indexOf(memberId);
+            return index < 0 ? null : new Member(memberId, stripe.money[index], stripe.versions[index]);
+        }
+    }
+
+    private void recordUndo(TxState tx, Stripe stripe, String memberId, int index) {
+        if (tx == null) {
+            return;
+        }
+        if (index < 0) {
+            tx.undoLog.add(memberId, false, 0, 0);
+        } else {
+            tx.undoLog.add(memberId, true, stripe.money[index], stripe.versions[index]);
+        }
+    }
+
+    /**
+     * undo log 를 savepoint 위치까지 거꾸로 적용 (락은 이미 잡고 있음)
+     */
+    private void undo(TxState tx, int savepoint) {
+        UndoLog undoLog = tx.undoLog;
+        for (int i = undoLog.size - 1; i >= savepoint; i--) {
+            String memberId = undoLog.memberIds[i];
+            Stripe stripe = stripe(memberId);
+            synchronized (stripe) {
+                int index = stripe.indexOf(memberId);
+                if (!undoLog.existed[i]) {
+                    if (index >= 0) {
+                        stripe.remove(index);
+                    }
+                } else if (index >= 0) {
+                    stripe.set(index, undoLog.money[i], undoLog.versions[i]);
+                } else {
+                    stripe.insert(memberId, undoLog.money[i], undoLog.versions[i]);
+                }
+            }
+        }
+        undoLog.truncate(savepoint);
+    }
+
+    private void acquire(TxState tx, int... stripeIndexes) {
+        for (int i = 0; i < stripeIndexes.length; i++) {
+            int stripeIndex = stripeIndexes[i];
+            if (tx != null && tx.locked[stripeIndex]) {
+                continue;
+            }
+            if (!tryLock(stripes[stripeIndex])) {
+                if (tx == null) {
+                    //트랜잭션 밖이면 이번 호출에서 잡은 락만 해제
+                    for (int j = 0; j < i; j++) {
+                        stripes[stripeIndexes[j]].rowLock.unlock();
+                    }
+                }
+                throw new CannotAcquireLockException("member stripe lock timeout stripe=" + stripeIndex + ", timeoutMillis=" + lockTimeoutMillis);
+            }
+            if (tx != null) {
+                tx.locked[stripeIndex] = true;
+                tx.lockedStripes.add(stripeIndex);
+            }
+        }
+    }
+
+    private boolean tryLock(Stripe stripe) {
+        try {
+            return stripe.rowLock.tryLock(lockTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void releaseIfLocal(TxState tx, int... stripeIndexes) {
+        if (tx != null) {
+            return;
+        }
+        for (int stripeIndex : stripeIndexes) {
+            stripes[stripeIndex].rowLock.unlock();
+        }
+    }
+
+    private TxState currentTx() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()
+                || !TransactionSynchronizationManager.isActualTransactionActive()) {
+            return null;
+        }
+        TxState tx = (TxState) TransactionSynchronizationManager.getResource(this);
+        if (tx != null) {
+            return tx;
+        }
+        TxState newTx = new TxState(stripes.length);
+        TransactionSynchronizationManager.bindResource(this, newTx);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void suspend() {
+                TransactionSynchronizationManager.unbindResourceIfPossible(StripedMemoryMemberRepository.this);
+            }
+
+            @Override
+            public void resume() {
+                TransactionSynchronizationManager.bindResource(StripedMemoryMemberRepository.this, newTx);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(StripedMemoryMemberRepository.this);
+                if (status != STATUS_COMMITTED) {
+                    log.debug("rollback undo log size={}, status={}", newTx.undoLog.size, status);
+                    undo(newTx, 0);
+                }
+                for (int stripeIndex : newTx.lockedStripes) {
+                    stripes[stripeIndex].rowLock.unlock();
+                }
+            }
+        });
+        return newTx;
+    }
+
+    private Stripe stripe(String memberId) {
+        return stripes[stripeIndex(memberId)];
+    }
+
+    private int stripeIndex(String memberId) {
+        int h = memberId.hashCode();
+        return ((h ^ (h >>> 16)) & 0x7fffffff) % stripes.length;
+    }
+
+    /**
+     * 중복 없이 정렬된 stripe 번호 -> 여러 stripe 는 항상 번호 순서로 잠근다.
+     */
+    private int[] stripeIndexes(Collection<String> memberIds) {
+        return memberIds.stream().mapToInt(this::stripeIndex).distinct().sorted().toArray();
+    }
+
+    private static final class TxState {
+        private final UndoLog undoLog = new UndoLog();
+        private final boolean[] locked;
+        private final List<Integer> lockedStripes = new ArrayList<>();
+
+        private TxState(int stripeCount) {
+            this.locked = new boolean[stripeCount];
+        }
+    }
+
+    /**
+     * 바꾸기 전 값 (existed=false 면 새로 insert 한 회원 -> 되돌릴 때 삭제)
+     */
+    private static final class UndoLog {
+        private String[] memberIds = new String[16];
+        private boolean[] existed = new boolean[16];
+        private int[] money = new int[16];
+        private long[] versions = new long[16];
+        private int size;
+
+        private void add(String memberId, boolean memberExisted, int memberMoney, long memberVersion) {
+            if (size == memberIds.length) {
+                int capacity = size * 2;
+                memberIds = Arrays.copyOf(memberIds, capacity);
+                existed = Arrays.copyOf(existed, capacity);
+                money = Arrays.copyOf(money, capacity);
+                versions = Arrays.copyOf(versions, capacity);
+            }
+            memberIds[size] = memberId;
+            existed[size] = memberExisted;
+            money[size] = memberMoney;
+            versions[size] = memberVersion;
+            size++;
+        }
+
+        private void truncate(int newSize) {
+            Arrays.fill(memberIds, newSize, size, null);
+            size = newSize;
+        }
+    }
+
+    /**
+     * linear probing 해시 테이블, 삭제는 뒤의 항목을 당겨서 채운다. (tombstone 없음)
+     * 모든 접근은 stripe 모니터 안에서
+     */
+    private static final class Stripe {
+        private final ReentrantLock rowLock = new ReentrantLock();
+        private String[] keys = new String[16];
+        private int[] money = new int[16];
+        private long[] versions = new long[16];
+        private int size;
+
+        private int indexOf(String memberId) {
+            int mask = keys.length - 1;
+            for (int i = slot(memberId, mask); keys[i] != null; i = (i + 1) & mask) {
+                if (keys[i].equals(memberId)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private void insert(String memberId, int memberMoney, long memberVersion) {
+            if ((size + 1) * 4 > keys.length * 3) {
+                resize();
+            }
+            int mask = keys.length - 1;
+            int i = slot(memberId, mask);
+            while (keys[i] != null) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = memberId;
+            money[i] = memberMoney;
+            versions[i] = memberVersion;
+            size++;
+        }
+
+        private void set(int index, int memberMoney, long memberVersion) {
+            money[index] = memberMoney;
+            versions[index] = memberVersion;
+        }
+
+        private void remove(int index) {
+            int mask = keys.length - 1;
+            int hole = index;
+            for (int i = (index + 1) & mask; keys[i] != null; i = (i + 1) & mask) {
+                int home = slot(keys[i], mask);
+                //home 이 (hole, i] 구간 밖이면 hole 로 당겨도 찾을 수 있다.
+                if (((i - home) & mask) >= ((i - hole) & mask)) {
+                    keys[hole] = keys[i];
+                    money[hole] = money[i];
+                    versions[hole] = versions[i];
+                    hole = i;
+                }
+            }
+            keys[hole] = null;
+            size--;
+        }
+
+        private void resize() {
+            String[] oldKeys = keys;
+            int[] oldMoney = money;
+            long[] oldVersions = versions;
+            keys = new String[oldKeys.length * 2];
+            money = new int[oldKeys.length * 2];
+            versions = new long[oldKeys.length * 2];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != null) {
+                    insert(oldKeys[i], oldMoney[i], oldVersions[i]);
+                }
+            }
+        }
+
+        private static int slot(String memberId, int mask) {
+            return Integer.rotateLeft(memberId.hashCode() * 0x9E3779B9, 16) & mask;
+        }
+    }
+}
@@ -0,0 +1,766 @@
+package hello.jdbc.repository.mmap;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.domain.Transfer;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.ex.OptimisticLockConflictException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.EmptyResultDataAccessException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * SQL, JDBC 없이 메모리 맵 파일에 잔액을 저장하는 MemberRepository
+ *
+ * member.dat - open addressing(linear probing) 해시 테이블, 고정 크기 slot
+ * [state(1) | id 길이(1) | id char * 10 | money(4) | version(8)] -> 조회는 파일 매핑을 그대로 읽는다. (힙 객체 없음)
+ * member.wal - 변경을 먼저 append + fsync 한 뒤 member.dat 에 반영 (write-ahead)
+ * 체크포인트: member.dat 를 force 한 뒤 WAL 을 비운다. WAL 이 checkpointBytes 를 넘으면 쓰기 중에 실행
+ * 삭제는 slot 을 DELETED 로 표시만 한다. (조회는 EMPTY 를 만나야 끝나므로 쌓이면 없는 id 조회가 길어진다)
+ * -> DELETED 가 capacity 의 1/8 을 넘으면 체크포인트에서 테이블을 다시 만든다. (CLEAR + 전체 PUT 을 WAL 기록 하나로 남긴 뒤 반영)
+ * 복구: 열 때 WAL 을 처음부터 다시 적용 (값을 덮어쓰는 기록이므로 여러번 적용해도 같다), 잘린 마지막 기록은 버린다.
+ *
+ * DB 트랜잭션에 참여하지 않는다. 메서드 하나가 원자적 단위 (transfer 는 두 회원을 WAL 기록 하나로 변경)
+ * - 잔액이 부족하면 transfer 는 아무것도 바꾸지 않고 0
+ * - findByIdsForUpdate 는 락을 잡지 않는다. (findAllByIds 와 같음)
+ * 예외는 JdbcTemplate 버전(MemberRepositoryV5)과 같은 스프링 데이터 접근 예외
+ */
+@Slf4j
+public class MappedMemberRepository implements MemberRepository, AutoCloseable {
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+    public static final long DEFAULT_CHECKPOINT_BYTES = 64L * 1024 * 1024;
+    static final String DATA_FILE = "member.dat";
+    static final String WAL_FILE = "member.wal";
+
+    private static final int MAGIC = 0x4D454D31;
+    private static final int HEADER_SIZE = 16;
+    private static final int MAX_ID_LENGTH = 10;
+    private static final int SLOT_SIZE = 40;
+    private static final int ID_OFFSET = 2;
+    private static final int MONEY_OFFSET = ID_OFFSET + MAX_ID_LENGTH * 2;
+    private static final int VERSION_OFFSET = MONEY_OFFSET + 4;
+
+    private static final byte EMPTY = 0;
+    private static final byte USED = 1;
+    private static final byte DELETED = 2;
+
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+    private static final byte CLEAR = 3;
+    private static final int WAL_RECORD_HEADER = 8;
+
+    private final int capacity;
+    private final int maxSize;
+    private final int maxDeleted;
+    private final boolean fsync;
+    private final long checkpointBytes;
+    private final FileChannel dataChannel;
+    private final FileChannel walChannel;
+    private final MappedByteBuffer slots;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private int size;
+    private int deleted;
+    private IOException walFailure;
+
+    public MappedMemberRepository(Path directory) {
+        this(directory, DEFAULT_CAPACITY, true, DEFAULT_CHECKPOINT_BYTES);
+    }
+
+    /**
+     * @param capacity slot 수, 이미 있는 파일이면 파일의 값을 쓴다. 최대 회원 수는 capacity 의 3/4
+     * @param fsync    false 면 WAL 을 force 하지 않는다. (OS 가 죽으면 마지막 변경을 잃을 수 있음)
+     */
+    public MappedMemberRepository(Path directory, int capacity, boolean fsync, long checkpointBytes) {
+        if (capacity < 1 || capacity > (Integer.MAX_VALUE - HEADER_SIZE) / SLOT_SIZE) {
+            throw new IllegalArgumentException("invalid capacity=" + capacity);
+        }
+        this.fsync = fsync;
+        this.checkpointBytes = checkpointBytes;
+        try {
+            Files.createDirectories(directory);
+            dataChannel = FileChannel.open(directory.resolve(DATA_FILE),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            boolean created = dataChannel.size() == 0;
+            if (!created) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                dataChannel.read(header, 0);
+                if (header.getInt(0) != MAGIC) {
+                    throw new IllegalStateException("not a member data file " + directory.resolve(DATA_FILE));
+                }
+                capacity = header.getInt(4);
+            }
+            this.capacity = capacity;
+            this.maxSize = Math.max(1, capacity / 4 * 3);
+            this.maxDeleted = Math.max(1, capacity / 8);
+            slots = dataChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * SLOT_SIZE);
+            if (created) {
+                slots.putInt(0, MAGIC);
+                slots.putInt(4, capacity);
+                slots.force();
+            }
+            countSlots();
+
+            walChannel = FileChannel.open(directory.resolve(WAL_FILE),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            int replayed = replay();
+            checkpoint();
+            log.info("member store opened directory={}, capacity={}, size={}, replayed={}", directory, capacity, size, replayed);
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("member store open failed directory=" + directory, e);
+        }
+    }
+
+    @Override
+    public Member save(Member member) {
+        if (!insertIfAbsent(member)) {
+            throw new DuplicateKeyException("duplicate memberId=" + member.getMemberId());
+        }
+        return member;
+    }
+
+    @Override
+    public boolean insertIfAbsent(Member member) {
+        checkId(member.getMemberId());
+        lock.writeLock().lock();
+        try {
+            if (find(member.getMemberId()) >= 0) {
+                return false;
+            }
+            checkSize(1);
+            Wal wal = new Wal();
+            wal.put(member.getMemberId(), member.getMoney(), 0);
+            commit(wal);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean saveOrUpdate(Member member) {
+        checkId(member.getMemberId());
+        lock.writeLock().lock();
+        try {
+            int slot = find(member.getMemberId());
+            if (slot >= 0) {
+                putExisting(member.getMemberId(), slot, member.getMoney());
+                return false;
+            }
+            checkSize(1);
+            Wal wal = new Wal();
+            wal.put(member.getMemberId(), member.getMoney(), 0);
+            commit(wal);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 하나라도 이미 있으면 아무것도 저장하지 않는다.
+     * batchSize 건씩 WAL 기록 하나로 저장 (fsync 한번)
+     */
+    @Override
+    public List<Member> saveAll(Collection<Member> members, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive. batchSize=" + batchSize);
+        }
+        List<Member> saveMembers = new ArrayList<>(members);
+        Set<String> memberIds = new HashSet<>();
+        for (Member member : saveMembers) {
+            checkId(member.getMemberId());
+            if (!memberIds.add(member.getMemberId())) {
+                throw new DuplicateKeyException("saveAll memberId=" + member.getMemberId());
+            }
+        }
+        lock.writeLock().lock();
+        try {
+            for (Member member : saveMembers) {
+                if (find(member.getMemberId()) >= 0) {
+                    throw new DuplicateKeyException("saveAll memberId=" + member.getMemberId());
+                }
+            }
+            checkSize(saveMembers.size());
+            for (int start = 0; start < saveMembers.size(); start += batchSize) {
+                Wal wal = new Wal();
+                for (Member member : saveMembers.subList(start, Math.min(start + batchSize, saveMembers.size()))) {
+                    wal.put(member.getMemberId(), member.getMoney(), 0);
+                }
+                commit(wal);
+            }
+            return saveMembers;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Member findById(String memberId) {
+        lock.readLock().lock();
+        try {
+            int slot = find(memberId);
+            if (slot < 0) {
+                throw new EmptyResultDataAccessException("member not found memberId=" + memberId, 1);
+            }
+            return toMember(memberId, slot);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Map<String, Member> findAllByIds(Collection<String> memberIds) {
+        Map<String, Member> result = new LinkedHashMap<>();
+        lock.readLock().lock();
+        try {
+            for (String memberId : memberIds) {
+                int slot = find(memberId);
+                if (slot >= 0) {
+                    result.put(memberId, toMember(memberId, slot));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Member> findByIdsForUpdate(Collection<String> memberIds) {
+        return findAllByIds(memberIds);
+    }
+
+    @Override
+    public void update(String memberId, int money) {
+        lock.writeLock().lock();
+        try {
+            int slot = find(memberId);
+            if (slot >= 0) {
+                putExisting(memberId, slot, money);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void update(String memberId, int money, long expectedVersion) {
+        lock.writeLock().lock();
+        try {
+            int slot = find(memberId);
+            if (slot < 0 || version(slot) != expectedVersion) {
+                throw new OptimisticLockConflictException("member changed or deleted memberId=" + memberId + ", expectedVersion=" + expectedVersion);
+            }
+            putExisting(memberId, slot, money);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int addMoney(String memberId, int delta) {
+        lock.writeLock().lock();
+        try {
+            int slot = find(memberId);
+            if (slot < 0) {
+                return 0;
+            }
+            putExisting(memberId, slot, money(slot) + delta);
+            return 1;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int withdrawIfSufficient(String memberId, int amount) {
+        lock.writeLock().lock();
+        try {
+            int slot = find(memberId);
+            if (slot < 0 || money(slot) < amount) {
+                return 0;
+            }
+            putExisting(memberId, slot, money(slot) - amount);
+            return 1;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int transfer(String fromId, String toId, int amount) {
+        lock.writeLock().lock();
+        try {
+            Wal wal = new Wal();
+            int resultSize = transfer(wal, new HashMap<>(), fromId, toId, amount);
+            commit(wal);
+            return resultSize;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 전체를 WAL 기록 하나로 (fsync 한번), 건별로는 transfer 와 같다.
+     */
+    @Override
+    public int[] transferAll(List<Transfer> transfers) {
+        int[] resultSizes = new int[transfers.size()];
+        lock.writeLock().lock();
+        try {
+            Wal wal = new Wal();
+            //같은 배치의 앞선 이체 결과 (아직 member.dat 에 반영 전)
+            Map<String, Member> pending = new HashMap<>();
+            for (int i = 0; i < transfers.size(); i++) {
+                Transfer t = transfers.get(i);
+                resultSizes[i] = transfer(wal, pending, t.getFromId(), t.getToId(), t.getAmount());
+            }
+            commit(wal);
+            return resultSizes;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void delete(String memberId) {
+        lock.writeLock().lock();
+        try {
+            if (find(memberId) < 0) {
+                return;
+            }
+            Wal wal = new Wal();
+            wal.remove(memberId);
+            commit(wal);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    int deletedSlots() {
+        lock.readLock().lock();
+        try {
+            return deleted;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * member.dat 를 디스크에 쓰고 WAL 을 비운다. DELETED slot 이 많으면 먼저 테이블을 다시 만든다.
+     */
+    public void checkpoint() {
+        lock.writeLock().lock();
+        try {
+            if (deleted > maxDeleted) {
+                rebuild();
+            }
+            slots.force();
+            walChannel.truncate(0);
+            walChannel.force(true);
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("checkpoint failed", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            checkpoint();
+            walChannel.close();
+            dataChannel.close();
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("member store close failed", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private int transfer(Wal wal, Map<String, Member> pending, String fromId, String toId, int amount) {
+        Member from = current(pending, fromId);
+        Member to = current(pending, toId);
+        if (from == null || to == null || fromId.equals(toId) || from.getMoney() < amount) {
+            return 0;
+        }
+        from = new Member(fromId, from.getMoney() - amount, from.getVersion() + 1);
+        to = new Member(toId, to.getMoney() + amount, to.getVersion() + 1);
+        pending.put(fromId, from);
+        pending.put(toId, to);
+        wal.put(fromId, from.getMoney(), from.getVersion());
+        wal.put(toId, to.getMoney(), to.getVersion());
+        return 2;
+    }
+
+    private Member current(Map<String, Member> pending, String memberId) {
+        Member member = pending.get(memberId);
+        if (member != null) {
+            return member;
+        }
+        int slot = find(memberId);
+        return slot < 0 ? null : toMember(memberId, slot);
+    }
+
+    private void putExisting(String memberId, int slot, int money) {
+        Wal wal = new Wal();
+        wal.put(memberId, money, version(slot) + 1);
+        commit(wal);
+    }
+
+    /**
+     * WAL append (+ fsync) 후 member.dat 반영
+     */
+    private void commit(Wal wal) {
+        if (wal.isEmpty()) {
+            return;
+        }
+        append(wal, fsync);
+        apply(wal);
+        try {
+            if (walChannel.size() >= checkpointBytes || deleted > maxDeleted) {
+                checkpoint();
+            }
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("wal size check failed", e);
+        }
+    }
+
+    /**
+     * 쓰다가 실패하면 WAL 을 append 전 크기로 되돌린다.
+     * 찢어진 기록 뒤에 다음 커밋이 붙으면 replay 가 찢어진 곳에서 멈춰 그 뒤 커밋을 모두 잃기 때문
+     * 되돌리지도 못하면 이후 쓰기를 모두 거부한다.
+     */
+    private void append(Wal wal, boolean force) {
+        if (walFailure != null) {
+            throw new DataAccessResourceFailureException("wal unusable after failed append", walFailure);
+        }
+        ByteBuffer record = wal.toRecord();
+        long walStart;
+        try {
+            walStart = walChannel.size();
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("wal append failed", e);
+        }
+        try {
+            while (record.hasRemaining()) {
+                walChannel.write(record, walStart + record.position());
+            }
+            if (force) {
+                walChannel.force(false);
+            }
+        } catch (IOException e) {
+            try {
+                walChannel.truncate(walStart);
+            } catch (IOException truncateFailure) {
+                e.addSuppressed(truncateFailure);
+                walFailure = e;
+            }
+            throw new DataAccessResourceFailureException("wal append failed", e);
+        }
+    }
+
+    /**
+     * 남은 회원만 다시 넣어 DELETED slot 을 없앤다.
+     * slot 을 옮기는 중에 죽어도 CLEAR 부터 다시 적용하면 같은 테이블이 되도록 WAL 에 먼저 남긴다. (fsync 설정과 무관하게 force)
+     */
+    private void rebuild() {
+        Wal wal = new Wal();
+        wal.clear();
+        for (int slot = 0; slot < capacity; slot++) {
+            int offset = offset(slot);
+            if (slots.get(offset) == USED) {
+                String memberId = readId(slot);
+                wal.put(memberId, money(slot), version(slot));
+            }
+        }
+        int removed = deleted;
+        append(wal, true);
+        apply(wal);
+        log.info("member store rebuilt size={}, removedTombstones={}", size, removed);
+    }
+
+    private int replay() throws IOException {
+        long position = 0;
+        long walSize = walChannel.size();
+        int replayed = 0;
+        ByteBuffer header = ByteBuffer.allocate(WAL_RECORD_HEADER);
+        while (position + WAL_RECORD_HEADER <= walSize) {
+            header.clear();
+            walChannel.read(header, position);
+            int length = header.getInt(0);
+            int crc = header.getInt(4);
+            if (length <= 0 || position + WAL_RECORD_HEADER + length > walSize) {
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            walChannel.read(payload, position + WAL_RECORD_HEADER);
+            payload.flip();
+            if (crc != crc(payload)) {
+                break;
+            }
+            apply(Wal.fromPayload(payload));
+            position += WAL_RECORD_HEADER + length;
+            replayed++;
+        }
+        if (position < walSize) {
+            log.warn("wal tail discarded position={}, walSize={}", position, walSize);
+        }
+        return replayed;
+    }
+
+    private void apply(Wal wal) {
+        ByteBuffer payload = wal.payload();
+        while (payload.hasRemaining()) {
+            byte op = payload.get();
+            if (op == CLEAR) {
+                for (int slot = 0; slot < capacity; slot++) {
+                    slots.put(offset(slot), EMPTY);
+                }
+                size = 0;
+                deleted = 0;
+                continue;
+            }
+            String memberId = readId(payload);
+            if (op == PUT) {
+                int money = payload.getInt();
+                long version = payload.getLong();
+                int slot = find(memberId);
+                if (slot < 0) {
+                    slot = insertSlot(memberId);
+                }
+                slots.putInt(offset(slot) + MONEY_OFFSET, money);
+                slots.putLong(offset(slot) + VERSION_OFFSET, version);
+            } else {
+                int slot = find(memberId);
+                if (slot >= 0) {
+                    slots.put(offset(slot), DELETED);
+                    size--;
+                    deleted++;
+                }
+            }
+        }
+    }
+
+    /**
+     * 없으면 -1, 빈 slot 을 만나면 끝 (삭제된 slot 은 건너뛴다)
+     */
+    private int find(String memberId) {
+        int slot = home(memberId);
+        for (int probe = 0; probe < capacity; probe++) {
+            int offset = offset(slot);
+            byte state = slots.get(offset);
+            if (state == EMPTY) {
+                return -1;
+            }
+            if (state == USED && idEquals(offset, memberId)) {
+                return slot;
+            }
+            slot = slot + 1 == capacity ? 0 : slot + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * 처음 만나는 빈 slot 또는 삭제된 slot 에 저장 (find 로 없는 것을 확인한 뒤 호출)
+     */
+    private int insertSlot(String memberId) {
+        int slot = home(memberId);
+        for (int probe = 0; probe < capacity; probe++) {
+            int offset = offset(slot);
+            byte state = slots.get(offset);
+            if (state != USED) {
+                if (state == DELETED) {
+                    deleted--;
+                }
+                slots.put(offset + 1, (byte) memberId.length());
+                for (int i = 0; i < memberId.length(); i++) {
+                    slots.putChar(offset + ID_OFFSET + i * 2, memberId.charAt(i));
+                }
+                slots.put(offset, USED);
+                size++;
+                return slot;
+            }
+            slot = slot + 1 == capacity ? 0 : slot + 1;
+        }
+        throw new IllegalStateException("member store full capacity=" + capacity);
+    }
+
+    private boolean idEquals(int offset, String memberId) {
+        if (slots.get(offset + 1) != memberId.length()) {
+            return false;
+        }
+        for (int i = 0; i < memberId.length(); i++) {
+            if (slots.getChar(offset + ID_OFFSET + i * 2) != memberId.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int home(String memberId) {
+        int h = memberId.hashCode();
+        h ^= h >>> 16;
+        return (h & 0x7fffffff) % capacity;
+    }
+
+    private void countSlots() {
+        size = 0;
+        deleted = 0;
+        for (int slot = 0; slot < capacity; slot++) {
+            byte state = slots.get(offset(slot));
+            if (state == USED) {
+                size++;
+            } else if (state == DELETED) {
+                deleted++;
+            }
+        }
+    }
+
+    private String readId(int slot) {
+        int offset = offset(slot);
+        char[] chars = new char[slots.get(offset + 1)];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = slots.getChar(offset + ID_OFFSET + i * 2);
+        }
+        return new String(chars);
+    }
+
+    private void checkSize(int adding) {
+        if (size + adding > maxSize) {
+            throw new DataIntegrityViolationException("member store full size=" + size + ", maxSize=" + maxSize);
+        }
+    }
+
+    private void checkId(String memberId) {
+        if (memberId == null || memberId.isEmpty() || memberId.length() > MAX_ID_LENGTH) {
+            throw new DataIntegrityViolationException("invalid memberId=" + memberId);
+        }
+    }
+
+    private Member toMember(String memberId, int slot) {
+        return new Member(memberId, money(slot), version(slot));
+    }
+
+    private int money(int slot) {
+        return slots.getInt(offset(slot) + MONEY_OFFSET);
+    }
+
+    private long version(int slot) {
+        return slots.getLong(offset(slot) + VERSION_OFFSET);
+    }
+
+    private static int offset(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private static String readId(ByteBuffer buffer) {
+        int length = buffer.get();
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = buffer.getChar();
+        }
+        return new String(chars);
+    }
+
+    private static int crc(ByteBuffer payload) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(payload.duplicate());
+        return (int) crc32.getValue();
+    }
+
+    /**
+     * WAL 기록 하나 = [payload 길이(4) | crc32(4) | payload]
+     * payload = (PUT id money version | REMOVE id | CLEAR)*
+     */
+    private static class Wal {
+        private ByteBuffer buffer = ByteBuffer.allocate(64);
+
+        static Wal fromPayload(ByteBuffer payload) {
+            Wal wal = new Wal();
+            wal.buffer = ByteBuffer.allocate(payload.remaining()).put(payload);
+            return wal;
+        }
+
+        void put(String memberId, int money, long version) {
+            ensure(1 + 1 + memberId.length() * 2 + 4 + 8);
+            buffer.put(PUT);
+            writeId(memberId);
+            buffer.putInt(money);
+            buffer.putLong(version);
+        }
+
+        void clear() {
+            ensure(1);
+            buffer.put(CLEAR);
+        }
+
+        void remove(String memberId) {
+            ensure(1 + 1 + memberId.length() * 2);
+            buffer.put(REMOVE);
+            writeId(memberId);
+        }
+
+        boolean isEmpty() {
+            return buffer.position() == 0;
+        }
+
+        ByteBuffer payload() {
+            return ByteBuffer.wrap(buffer.array(), 0, buffer.position());
+        }
+
+        ByteBuffer toRecord() {
+            ByteBuffer payload = payload();
+            ByteBuffer record = ByteBuffer.allocate(WAL_RECORD_HEADER + payload.remaining());
+            record.putInt(payload.remaining());
+            record.putInt(crc(payload));
+            record.put(payload);
+            return record.flip();
+        }
+
+        private void writeId(String memberId) {
+            buffer.put((byte) memberId.length());
+            for (int i = 0; i < memberId.length(); i++) {
+                buffer.putChar(memberId.charAt(i));
+            }
+        }
+
+        private void ensure(int bytes) {
+            if (buffer.remaining() < bytes) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+                buffer.flip();
+                buffer = larger.put(buffer);
+            }
+        }
+    }
+}
@@ -0,0 +1,383 @@
+package hello.jdbc.repository.mvstore;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.domain.Transfer;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.ex.OptimisticLockConflictException;
+import lombok.extern.slf4j.Slf4j;
+import org.h2.mvstore.DataUtils;
+import org.h2.mvstore.MVStore;
+import org.h2.mvstore.MVStoreException;
+import org.h2.mvstore.tx.Transaction;
+import org.h2.mvstore.tx.TransactionMap;
+import org.h2.mvstore.tx.TransactionStore;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+/**
+ * H2 MVStore 키-값 저장소를 직접 쓰는 MemberRepository - SQL 파싱, JDBC, TCP 서버를 거치지 않는다.
+ * member: MVMap<String, Integer> (money), member_version: MVMap<String, Long>
+ *
+ * 스프링 트랜잭션 안이면 MVStore 트랜잭션 하나를 스프링 트랜잭션에 묶는다. (TransactionSynchronization)
+ *   커밋 직전(beforeCommit)에 커밋, 롤백되면 afterCompletion 에서 롤백 -> 잠근 키는 스프링 트랜잭션이 끝날 때까지 유지
+ *   메서드 하나가 실패하면 그 메서드의 변경만 MVStore savepoint 로 되돌린다. (SQL 문장 하나가 실패한 것과 같음)
+ *   스프링 savepoint(DataSourceTransactionManager)는 JDBC 커넥션에만 걸리므로 MVStore 변경은 되돌리지 않는다.
+ * 트랜잭션 밖이면 메서드 하나 = MVStore 트랜잭션 하나
+ * - 변경할 키는 먼저 lock (select ... for update 와 같음), transfer 는 member_id 순서로 잠가서 교착상태를 피한다.
+ * - 다른 트랜잭션이 lockTimeoutMillis 동안 키를 놓지 않으면 CannotAcquireLockException
+ * - 잔액이 부족하면 transfer 는 아무것도 바꾸지 않고 0
+ *
+ * 파일 저장은 MVStore 자동 커밋(기본 1초 주기) -> 프로세스가 죽으면 마지막 주기의 커밋을 잃을 수 있다.
+ */
+@Slf4j
+public class MvStoreMemberRepository implements MemberRepository, AutoCloseable {
+    public static final int DEFAULT_LOCK_TIMEOUT_MILLIS = 1000;
+    private static final String MONEY_MAP = "member";
+    private static final String VERSION_MAP = "member_version";
+
+    private final MVStore store;
+    private final TransactionStore transactionStore;
+    private final int lockTimeoutMillis;
+
+    /**
+     * @param fileName null 이면 메모리에만 저장
+     */
+    public MvStoreMemberRepository(String fileName) {
+        this(fileName, DEFAULT_LOCK_TIMEOUT_MILLIS);
+    }
+
+    public MvStoreMemberRepository(String fileName, int lockTimeoutMillis) {
+        this.store = new MVStore.Builder().fileName(fileName).open();
+        this.transactionStore = new TransactionStore(store);
+        //이전에 커밋하지 못하고 끝난 트랜잭션은 롤백
+        this.transactionStore.init();
+        this.transactionStore.endLeftoverTransactions();
+        this.lockTimeoutMillis = lockTimeoutMillis;
+        log.info("mvstore member repository opened fileName={}", fileName);
+    }
+
+    @Override
+    public Member save(Member member) {
+        if (!insertIfAbsent(member)) {
+            throw new DuplicateKeyException("duplicate memberId=" + member.getMemberId());
+        }
+        return member;
+    }
+
+    @Override
+    public boolean insertIfAbsent(Member member) {
+        return inTransaction(maps -> maps.insert(member));
+    }
+
+    @Override
+    public boolean saveOrUpdate(Member member) {
+        return inTransaction(maps -> {
+            if (maps.insert(member)) {
+                return true;
+            }
+            Member current = maps.lock(member.getMemberId());
+            maps.put(member.getMemberId(), member.getMoney(), current.getVersion() + 1);
+            return false;
+        });
+    }
+
+    /**
+     * 트랜잭션 하나로 저장, 하나라도 이미 있으면 전체 롤백
+     */
+    @Override
+    public List<Member> saveAll(Collection<Member> members, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive. batchSize=" + batchSize);
+        }
+        List<Member> saveMembers = new ArrayList<>(members);
+        return inTransaction(maps -> {
+            for (Member member : saveMembers) {
+                if (!maps.insert(member)) {
+                    throw new DuplicateKeyException("saveAll memberId=" + member.getMemberId());
+                }
+            }
+            return saveMembers;
+        });
+    }
+
+    @Override
+    public Member findById(String memberId) {
+        Member member = inTransaction(maps -> maps.get(memberId));
+        if (member == null) {
+            throw new EmptyResultDataAccessException("member not found memberId=" + memberId, 1);
+        }
+        return member;
+    }
+
+    @Override
+    public Map<String, Member> findAllByIds(Collection<String> memberIds) {
+        return inTransaction(maps -> {
+            Map<String, Member> result = new LinkedHashMap<>();
+            for (String memberId : memberIds) {
+                Member member = maps.get(memberId);
+                if (member != null) {
+                    result.put(memberId, member);
+                }
+            }
+            return result;
+        });
+    }
+
+    /**
+     * member_id 순서로 잠근다. 스프링 트랜잭션 밖이면 메서드 안에서 락이 풀리므로 findAllByIds 와 같다.
+     */
+    @Override
+    public Map<String, Member> findByIdsForUpdate(Collection<String> memberIds) {
+        return inTransaction(maps -> {
+            Map<String, Member> result = new LinkedHashMap<>();
+            for (String memberId : new TreeSet<>(memberIds)) {
+                Member member = maps.lock(memberId);
+                if (member != null) {
+                    result.put(memberId, member);
+                }
+            }
+            return result;
+        });
+    }
+
+    @Override
+    public void update(String memberId, int money) {
+        inTransaction(maps -> {
+            Member member = maps.lock(memberId);
+            if (member != null) {
+                maps.put(memberId, money, member.getVersion() + 1);
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void update(String memberId, int money, long expectedVersion) {
+        inTransaction(maps -> {
+            Member member = maps.lock(memberId);
+            if (member == null || member.getVersion() != expectedVersion) {
+                throw new OptimisticLockConflictException("member changed or deleted memberId=" + memberId + ", expectedVersion=" + expectedVersion);
+            }
+            maps.put(memberId, money, expectedVersion + 1);
+            return null;
+        });
+    }
+
+    @Override
+    public int addMoney(String memberId, int delta) {
+        return inTransaction(maps -> {
+            Member member = maps.lock(memberId);
+            if (member == null) {
+                return 0;
+            }
+            maps.put(memberId, member.getMoney() + delta, member.getVersion() + 1);
+            return 1;
+        });
+    }
+
+    @Override
+    public int withdrawIfSufficient(String memberId, int amount) {
+        return inTransaction(maps -> {
+            Member member = maps.lock(memberId);
+            if (member == null || member.getMoney() < amount) {
+                return 0;
+            }
+            maps.put(memberId, member.getMoney() - amount, member.getVersion() + 1);
+            return 1;
+        });
+    }
+
+    @Override
+    public int transfer(String fromId, String toId, int amount) {
+        return inTransaction(maps -> transfer(maps, fromId, toId, amount));
+    }
+
+    /**
+     * 트랜잭션 하나로 실행, 건별로는 transfer 와 같다. (실패한 건만 빠지고 나머지는 커밋)
+     */
+    @Override
+    public int[] transferAll(List<Transfer> transfers) {
+        return inTransaction(maps -> {
+            int[] resultSizes = new int[transfers.size()];
+            for (int i = 0; i < transfers.size(); i++) {
+                Transfer t = transfers.get(i);
+                resultSizes[i] = transfer(maps, t.getFromId(), t.getToId(), t.getAmount());
+            }
+            return resultSizes;
+        });
+    }
+
+    @Override
+    public void delete(String memberId) {
+        inTransaction(maps -> {
+            maps.money.remove(memberId);
+            maps.version.remove(memberId);
+            return null;
+        });
+    }
+
+    @Override
+    public void close() {
+        store.close();
+    }
+
+    private int transfer(Maps maps, String fromId, String toId, int amount) {
+        if (fromId.equals(toId)) {
+            return 0;
+        }
+        //member_id 순서로 잠근다.
+        boolean fromFirst = fromId.compareTo(toId) < 0;
+        Member first = maps.lock(fromFirst ? fromId : toId);
+        Member second = maps.lock(fromFirst ? toId : fromId);
+        Member from = fromFirst ? first : second;
+        Member to = fromFirst ? second : first;
+        if (from == null || to == null || from.getMoney() < amount) {
+            return 0;
+        }
+        maps.put(fromId, from.getMoney() - amount, from.getVersion() + 1);
+        maps.put(toId, to.getMoney() + amount, to.getVersion() + 1);
+        return 2;
+    }
+
+    private <T> T inTransaction(Function<Maps, T> work) {
+        Transaction boundTx = currentTx();
+        if (boundTx != null) {
+            long savepoint = boundTx.setSavepoint();
+            try {
+                return work.apply(maps(boundTx));
+            } catch (MVStoreException e) {
+                boundTx.rollbackToSavepoint(savepoint);
+                throw translate(e);
+            } catch (RuntimeException e) {
+                boundTx.rollbackToSavepoint(savepoint);
+                throw e;
+            }
+        }
+        Transaction tx = begin();
+        try {
+            T result = work.apply(maps(tx));
+            tx.commit();
+            return result;
+        } catch (MVStoreException e) {
+            tx.rollback();
+            throw translate(e);
+        } catch (RuntimeException e) {
+            tx.rollback();
+            throw e;
+        }
+    }
+
+    /**
+     * 스프링 트랜잭션에 묶인 MVStore 트랜잭션, 처음 쓸 때 시작한다. 트랜잭션 밖이면 null
+     */
+    private Transaction currentTx() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()
+                || !TransactionSynchronizationManager.isActualTransactionActive()) {
+            return null;
+        }
+        Transaction tx = (Transaction) TransactionSynchronizationManager.getResource(this);
+        if (tx != null) {
+            return tx;
+        }
+        Transaction newTx = begin();
+        TransactionSynchronizationManager.bindResource(this, newTx);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void suspend() {
+                TransactionSynchronizationManager.unbindResourceIfPossible(MvStoreMemberRepository.this);
+            }
+
+            @Override
+            public void resume() {
+                TransactionSynchronizationManager.bindResource(MvStoreMemberRepository.this, newTx);
+            }
+
+            /**
+             * 여기서 실패하면 스프링 트랜잭션도 롤백된다.
+             */
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                try {
+                    newTx.commit();
+                } catch (MVStoreException e) {
+                    throw translate(e);
+                }
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(MvStoreMemberRepository.this);
+                if (newTx.getStatus() != Transaction.STATUS_CLOSED) {
+                    log.debug("mvstore rollback txId={}, status={}", newTx.getId(), status);
+                    newTx.rollback();
+                }
+            }
+        });
+        return newTx;
+    }
+
+    private Transaction begin() {
+        Transaction tx = transactionStore.begin();
+        tx.setTimeoutMillis(lockTimeoutMillis);
+        return tx;
+    }
+
+    private Maps maps(Transaction tx) {
+        return new Maps(tx.openMap(MONEY_MAP), tx.openMap(VERSION_MAP));
+    }
+
+    private RuntimeException translate(MVStoreException e) {
+        int errorCode = e.getErrorCode();
+        if (errorCode == DataUtils.ERROR_TRANSACTION_LOCKED || errorCode == DataUtils.ERROR_TRANSACTIONS_DEADLOCK) {
+            return new CannotAcquireLockException("mvstore lock failed errorCode=" + errorCode, e);
+        }
+        return new DataAccessResourceFailureException("mvstore failed errorCode=" + errorCode, e);
+    }
+
+    private record Maps(TransactionMap<String, Integer> money, TransactionMap<String, Long> version) {
+
+        Member get(String memberId) {
+            Integer memberMoney = money.get(memberId);
+            if (memberMoney == null) {
+                return null;
+            }
+            return new Member(memberId, memberMoney, version.get(memberId));
+        }
+
+        /**
+         * 다른 트랜잭션이 커밋할 때까지 기다렸다가 잠그고, 커밋된 최신 값을 반환
+         */
+        Member lock(String memberId) {
+            Integer memberMoney = money.lock(memberId);
+            if (memberMoney == null) {
+                return null;
+            }
+            return new Member(memberId, memberMoney, version.lock(memberId));
+        }
+
+        boolean insert(Member member) {
+            if (money.putIfAbsent(member.getMemberId(), member.getMoney()) != null) {
+                return false;
+            }
+            version.put(member.getMemberId(), 0L);
+            return true;
+        }
+
+        void put(String memberId, int memberMoney, long memberVersion) {
+            money.put(memberId, memberMoney);
+            version.put(memberId, memberVersion);
+        }
+    }
+}
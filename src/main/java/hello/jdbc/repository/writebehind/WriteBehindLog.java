@@ -0,0 +1,160 @@
+package hello.jdbc.repository.writebehind;
+
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * write-behind 변경 로그 - 고정 크기 메모리 맵 파일에 append
+ * 기록 = [payload 길이(4) | crc32(4) | seq(8) | op(1) | id 길이(1) | id char | value(4)], 끝에는 길이 0 표시
+ * 모든 기록이 DB 에 반영되면 처음부터 다시 쓴다. (reset) -> 복구할 때 남아있는 예전 기록은 seq 로 걸러진다.
+ * 동기화는 호출하는 쪽(WriteBehindMemberRepository)에서
+ */
+class WriteBehindLog implements AutoCloseable {
+    static final byte ADD = 1;
+    static final byte SET = 2;
+
+    private static final int RECORD_HEADER = 8;
+    private static final int FIXED_PAYLOAD = 8 + 1 + 1 + 4;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private int position;
+    //이 위치 앞의 기록은 모두 force 됨
+    private int durableEnd;
+    private long generation;
+
+    WriteBehindLog(Path file, int capacity) {
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("write-behind log open failed file=" + file, e);
+        }
+    }
+
+    boolean hasRoom(String memberId) {
+        //다음 기록의 끝 표시(4) 자리까지
+        return position + recordSize(memberId) + 4 <= buffer.capacity();
+    }
+
+    /**
+     * force 할 범위 반환 - 아직 force 되지 않은 첫 위치(durableEnd)부터 이 기록의 끝까지
+     * -> 먼저 append 했지만 아직 force 하지 않은 다른 스레드의 기록도 같이 force 한다.
+     */
+    Range append(long seq, byte op, String memberId, int value) {
+        int payloadStart = position + RECORD_HEADER;
+        int offset = payloadStart;
+        buffer.putLong(offset, seq);
+        offset += 8;
+        buffer.put(offset++, op);
+        buffer.put(offset++, (byte) memberId.length());
+        for (int i = 0; i < memberId.length(); i++) {
+            buffer.putChar(offset, memberId.charAt(i));
+            offset += 2;
+        }
+        buffer.putInt(offset, value);
+        offset += 4;
+        buffer.putInt(offset, 0);
+
+        int payloadLength = offset - payloadStart;
+        buffer.putInt(position + 4, crc(payloadStart, payloadLength));
+        //길이를 마지막에 써서 쓰다 만 기록은 길이 0 또는 crc 불일치
+        buffer.putInt(position, payloadLength);
+        position = offset;
+        return new Range(generation, durableEnd, offset + 4);
+    }
+
+    int position() {
+        return position;
+    }
+
+    /**
+     * 호출하는 쪽 락 밖에서 - 그 사이 다른 스레드가 다음 기록을 append 할 수 있다.
+     */
+    void force(Range range) {
+        buffer.force(range.start(), range.end() - range.start());
+    }
+
+    /**
+     * force 가 끝난 범위 반영, 그 사이 reset 했으면 무시
+     * range.start 앞은 이미 force 되어 있었으므로 range.end 까지 모두 디스크에 있다.
+     */
+    void forced(Range range) {
+        if (range.generation() == generation) {
+            durableEnd = Math.max(durableEnd, range.end());
+        }
+    }
+
+    void reset() {
+        buffer.putInt(0, 0);
+        buffer.force(0, 4);
+        position = 0;
+        durableEnd = 0;
+        generation++;
+    }
+
+    /**
+     * 처음부터 읽다가 길이 0, crc 불일치, 잘린 기록을 만나면 멈추고 그 위치부터 이어서 쓴다.
+     */
+    void replay(Consumer<Entry> consumer) {
+        int offset = 0;
+        while (offset + RECORD_HEADER <= buffer.capacity()) {
+            int length = buffer.getInt(offset);
+            if (length < FIXED_PAYLOAD || offset + RECORD_HEADER + length > buffer.capacity()
+                    || buffer.getInt(offset + 4) != crc(offset + RECORD_HEADER, length)) {
+                break;
+            }
+            int p = offset + RECORD_HEADER;
+            long seq = buffer.getLong(p);
+            byte op = buffer.get(p + 8);
+            int idLength = buffer.get(p + 9);
+            if (FIXED_PAYLOAD + idLength * 2 != length) {
+                break;
+            }
+            char[] chars = new char[idLength];
+            for (int i = 0; i < idLength; i++) {
+                chars[i] = buffer.getChar(p + 10 + i * 2);
+            }
+            int value = buffer.getInt(p + 10 + idLength * 2);
+            consumer.accept(new Entry(seq, op, new String(chars), value));
+            offset += RECORD_HEADER + length;
+        }
+        position = offset;
+        durableEnd = offset;
+    }
+
+    @Override
+    public void close() {
+        try {
+            buffer.force();
+            channel.close();
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("write-behind log close failed", e);
+        }
+    }
+
+    private int crc(int start, int length) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(buffer.slice(start, length));
+        return (int) crc32.getValue();
+    }
+
+    private static int recordSize(String memberId) {
+        return RECORD_HEADER + FIXED_PAYLOAD + memberId.length() * 2;
+    }
+
+    record Entry(long seq, byte op, String memberId, int value) {
+    }
+
+    record Range(long generation, int start, int end) {
+    }
+}
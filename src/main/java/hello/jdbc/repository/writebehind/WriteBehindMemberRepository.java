@@ -0,0 +1,815 @@
+package hello.jdbc.repository.writebehind;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.domain.Transfer;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.PeriodicTasks;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * write-behind - MemberRepository 데코레이터 (적립금, 수수료처럼 DB 커밋과 같이 끝날 필요가 없는 잔액 변경용)
+ * update(memberId, money), addMoney 는 로컬 로그(WriteBehindLog)에 기록하고 fsync 한 뒤 바로 반환한다.
+ * - 같은 회원의 미반영 변경은 메모리에서 합친다. (로그의 set 기록 이후의 delta 는 set 값에 더함)
+ * - 같은 트랜잭션에서 findByIdsForUpdate 로 잠가 읽은 회원의 update 는 set 대신 읽은 값과의 차이(add)로 기록
+ *   -> 잠가서 읽은 뒤 들어온 입금을 덮어쓰지 않는다.
+ * - 백그라운드 flush 가 flushInterval 마다 합친 변경을 batch 로 member 테이블에 반영
+ *   회원별로 반영한 로그 seq 를 write_behind_applied 에 같은 트랜잭션으로 기록
+ *   -> 재시작할 때 로그를 다시 읽어 applied_seq 보다 큰 기록만 반영한다. (한 번만 반영)
+ * - back-pressure: 미반영 회원 수가 maxPendingMembers 이상이거나 lag 가 maxLag 이상이면 쓰는 쪽에서 직접 flush
+ * - 조회는 DB 값 + 미반영 변경 (version 도 미반영 변경 건수만큼 더함)
+ * - 나머지 변경(출금, 이체, version 조건 update, 삭제)은 해당 회원의 미반영 변경을 먼저 flush 하고 target 에 위임
+ *
+ * flush
+ * - 호출한 쪽 트랜잭션이 있으면 그 커넥션에서 savepoint 로 반영 (PROPAGATION_NESTED) -> 자기가 잡은 행 락을 기다리지 않는다.
+ *   커밋되면 반영 끝, 롤백되면 pending 으로 되돌린다. -> write-behind 변경은 호출한 쪽 트랜잭션 롤백과 무관하다.
+ * - 없으면 별도 트랜잭션(REQUIRES_NEW)으로 커밋, 전체 flush 는 한 번에 하나씩
+ *   트랜잭션이 이 저장소로 잠근 회원은 건너뛴다. (그 행 락을 기다리며 다른 flush 를 막지 않도록)
+ * - 반영했지만 커밋 전인 변경은 회원마다 하나 -> 다른 flush 는 그 회원을 건너뛰어 반영 순서가 섞이지 않는다.
+ * target 은 member 테이블을 쓰는 JDBC 저장소 (flush 는 member 테이블을 직접 update), 반영 시점에 없는 회원의 변경은 버린다.
+ */
+@Slf4j
+public class WriteBehindMemberRepository implements MemberRepository, AutoCloseable {
+    private static final String APPLY_SQL =
+            "update member set money=coalesce(cast(? as integer), money)+?, version=version+? where member_id=?";
+    private static final String APPLIED_SQL =
+            "merge into write_behind_applied (log_id, member_id, applied_seq) key (log_id, member_id) values (?, ?, ?)";
+
+    private final MemberRepository target;
+    private final JdbcTemplate template;
+    private final PlatformTransactionManager transactionManager;
+    private final DefaultTransactionDefinition flushDefinition =
+            new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    //호출한 쪽 트랜잭션 안의 savepoint - 실패하면 이번 반영만 되돌린다.
+    private final DefaultTransactionDefinition callerFlushDefinition =
+            new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_NESTED);
+    private final String logId;
+    private final WriteBehindSettings settings;
+    private final WriteBehindLog changeLog;
+    private final PeriodicTasks tasks = new PeriodicTasks("write-behind-flush");
+
+    //appendLock: 로그 append, pending, flushing, reserved / flushLock: 전체 flush 를 하나씩 (flushLock -> appendLock 순서)
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private Map<String, Pending> pending = new HashMap<>();
+    //반영했지만 커밋 전인 변경
+    private final Map<String, InFlight> flushing = new HashMap<>();
+    //트랜잭션이 findByIdsForUpdate 로 잠근 회원 -> 잠근 트랜잭션 수
+    private final Map<String, Integer> reserved = new HashMap<>();
+    private long nextSeq;
+    private long oldestPendingNanos;
+    //flush 커밋 시작/끝 횟수, 다르면 커밋 중 -> 조회가 커밋 전후를 섞어 읽지 않도록 (seqlock)
+    private final AtomicLong commitsStarted = new AtomicLong();
+    private final AtomicLong commitsFinished = new AtomicLong();
+
+    private final LongAdder appendedChanges = new LongAdder();
+    private final LongAdder flushedChanges = new LongAdder();
+    private final LongAdder flushedMembers = new LongAdder();
+    private final LongAdder flushCount = new LongAdder();
+    private final LongAdder backPressureFlushes = new LongAdder();
+    private final LongAdder droppedMembers = new LongAdder();
+    private final AtomicLong maxLagNanos = new AtomicLong();
+
+    /**
+     * @param dataSource transactionManager 와 같은 DataSource
+     * @param logId      write_behind_applied 의 키, 로그 파일마다 다르게
+     */
+    public WriteBehindMemberRepository(MemberRepository target, DataSource dataSource, PlatformTransactionManager transactionManager,
+                                       Path logFile, String logId, WriteBehindSettings settings) {
+        this.target = target;
+        this.template = new JdbcTemplate(dataSource);
+        this.transactionManager = transactionManager;
+        this.logId = logId;
+        this.settings = settings;
+        this.changeLog = new WriteBehindLog(logFile, settings.logCapacityBytes());
+        recover();
+    }
+
+    public void start() {
+        tasks.schedule("write-behind flush logId=" + logId, settings.flushInterval(), this::flush);
+        log.info("write-behind started logId={}, settings={}", logId, settings);
+    }
+
+    @Override
+    public Member save(Member member) {
+        return target.save(member);
+    }
+
+    @Override
+    public boolean insertIfAbsent(Member member) {
+        return target.insertIfAbsent(member);
+    }
+
+    @Override
+    public boolean saveOrUpdate(Member member) {
+        flushMembers(List.of(member.getMemberId()));
+        return target.saveOrUpdate(member);
+    }
+
+    @Override
+    public List<Member> saveAll(Collection<Member> members, int batchSize) {
+        return target.saveAll(members, batchSize);
+    }
+
+    @Override
+    public Member findById(String memberId) {
+        Member member = withPending(List.of(memberId), () -> {
+            try {
+                return Map.of(memberId, target.findById(memberId));
+            } catch (EmptyResultDataAccessException e) {
+                return Map.of();
+            }
+        }).get(memberId);
+        if (member == null) {
+            throw new EmptyResultDataAccessException("member not found memberId=" + memberId, 1);
+        }
+        return member;
+    }
+
+    @Override
+    public Map<String, Member> findAllByIds(Collection<String> memberIds) {
+        return withPending(memberIds, () -> target.findAllByIds(memberIds));
+    }
+
+    /**
+     * 미반영 변경을 반영하고 잠근다. 트랜잭션 안이면 읽은 잔액을 기억해 update 를 차이로 기록한다.
+     */
+    @Override
+    public Map<String, Member> findByIdsForUpdate(Collection<String> memberIds) {
+        flushMembers(memberIds);
+        Map<String, Member> members = target.findByIdsForUpdate(memberIds);
+        TxFlushes tx = currentTx();
+        if (tx != null) {
+            appendLock.lock();
+            try {
+                members.forEach((memberId, member) -> {
+                    if (tx.reservedMembers.add(memberId)) {
+                        reserved.merge(memberId, 1, Integer::sum);
+                    }
+                    tx.lockedMoney.put(memberId, member.getMoney());
+                });
+            } finally {
+                appendLock.unlock();
+            }
+        }
+        return members;
+    }
+
+    /**
+     * 로그에 set 으로 기록, 같은 트랜잭션에서 잠가 읽은 회원이면 읽은 잔액과의 차이를 add 로 기록
+     * -> 잠가서 읽은 뒤 로그에 들어온 입금을 덮어쓰지 않는다.
+     */
+    @Override
+    public void update(String memberId, int money) {
+        TxFlushes tx = boundTx();
+        Integer lockedMoney = tx == null ? null : tx.lockedMoney.get(memberId);
+        if (lockedMoney == null) {
+            append(WriteBehindLog.SET, memberId, money);
+            return;
+        }
+        append(WriteBehindLog.ADD, memberId, money - lockedMoney);
+        tx.lockedMoney.put(memberId, money);
+    }
+
+    @Override
+    public void update(String memberId, int money, long expectedVersion) {
+        flushMembers(List.of(memberId));
+        target.update(memberId, money, expectedVersion);
+    }
+
+    /**
+     * 로그에 기록하고 1 반환, 회원이 없으면 flush 할 때 버린다.
+     */
+    @Override
+    public int addMoney(String memberId, int delta) {
+        append(WriteBehindLog.ADD, memberId, delta);
+        return 1;
+    }
+
+    @Override
+    public int withdrawIfSufficient(String memberId, int amount) {
+        flushMembers(List.of(memberId));
+        return target.withdrawIfSufficient(memberId, amount);
+    }
+
+    @Override
+    public int transfer(String fromId, String toId, int amount) {
+        flushMembers(List.of(fromId, toId));
+        return target.transfer(fromId, toId, amount);
+    }
+
+    @Override
+    public int[] transferAll(List<Transfer> transfers) {
+        Set<String> memberIds = new LinkedHashSet<>();
+        for (Transfer t : transfers) {
+            memberIds.add(t.getFromId());
+            memberIds.add(t.getToId());
+        }
+        flushMembers(memberIds);
+        return target.transferAll(transfers);
+    }
+
+    @Override
+    public void delete(String memberId) {
+        flushMembers(List.of(memberId));
+        target.delete(memberId);
+    }
+
+    /**
+     * 미반영 변경 전체를 반영, 반영한 회원 수 반환
+     */
+    public int flush() {
+        flushLock.lock();
+        try {
+            return flush(null, null);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    public int getPendingMembers() {
+        appendLock.lock();
+        try {
+            return pending.size();
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * 가장 오래된 미반영 변경이 기다린 시간
+     */
+    public long getLagMillis() {
+        appendLock.lock();
+        try {
+            return TimeUnit.NANOSECONDS.toMillis(lagNanos(System.nanoTime()));
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * flush 할 때 관측한 최대 lag
+     */
+    public long getMaxLagMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxLagNanos.get());
+    }
+
+    public long getAppendedChanges() {
+        return appendedChanges.sum();
+    }
+
+    /**
+     * 반영한 변경 건수 (합치기 전), getFlushedMembers 와의 차이만큼 update 를 아꼈다.
+     */
+    public long getFlushedChanges() {
+        return flushedChanges.sum();
+    }
+
+    public long getFlushedMembers() {
+        return flushedMembers.sum();
+    }
+
+    public long getFlushCount() {
+        return flushCount.sum();
+    }
+
+    public long getBackPressureFlushes() {
+        return backPressureFlushes.sum();
+    }
+
+    public long getDroppedMembers() {
+        return droppedMembers.sum();
+    }
+
+    /**
+     * flush 실패로 남은 변경은 로그에 있으므로 다음 시작할 때 반영된다.
+     */
+    @Override
+    public void close() {
+        tasks.close();
+        try {
+            flush();
+        } finally {
+            changeLog.close();
+        }
+    }
+
+    private void append(byte op, String memberId, int value) {
+        if (memberId == null || memberId.isEmpty() || memberId.length() > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("invalid memberId=" + memberId);
+        }
+        boolean overloaded = false;
+        for (int attempt = 0; ; attempt++) {
+            WriteBehindLog.Range range = null;
+            appendLock.lock();
+            try {
+                if (changeLog.hasRoom(memberId)) {
+                    long now = System.nanoTime();
+                    range = changeLog.append(nextSeq, op, memberId, value);
+                    addPending(nextSeq++, op, memberId, value, now);
+                    overloaded = pending.size() >= settings.maxPendingMembers() || lagNanos(now) >= settings.maxLag().toNanos();
+                }
+            } finally {
+                appendLock.unlock();
+            }
+            if (range != null) {
+                //아직 force 안 된 앞 기록부터 이 기록까지 fsync, 다른 스레드는 그 사이 다음 기록을 append
+                //-> 이 기록만 force 하면 먼저 쓴 기록이 찢어진 채 죽었을 때 replay 가 거기서 멈춰 이 기록도 잃는다.
+                changeLog.force(range);
+                appendLock.lock();
+                try {
+                    changeLog.forced(range);
+                } finally {
+                    appendLock.unlock();
+                }
+                appendedChanges.increment();
+                break;
+            }
+            //로그가 가득 참 -> flush 하면 처음부터 다시 쓴다.
+            if (attempt > 0) {
+                throw new DataAccessResourceFailureException("write-behind log full logId=" + logId);
+            }
+            backPressureFlushes.increment();
+            flush();
+        }
+        //다른 flush 가 진행 중이면 그 flush 가 줄이고 있다. (기다리지 않는다)
+        if (overloaded && flushLock.tryLock()) {
+            try {
+                backPressureFlushes.increment();
+                flush(null, null);
+            } catch (RuntimeException e) {
+                //이미 로그에 기록한 변경 -> 실패를 알리면 호출한 쪽이 다시 시도해서 두 번 반영된다. 남은 변경은 다음 flush 에서
+                log.warn("write-behind back-pressure flush failed logId={}", logId, e);
+            } finally {
+                flushLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 동기 변경 전에 해당 회원의 미반영 변경을 반영
+     * 호출한 쪽 트랜잭션이 있으면 그 커넥션에서 반영하고 커밋/롤백은 트랜잭션이 끝날 때 처리
+     */
+    private void flushMembers(Collection<String> memberIds) {
+        TxFlushes tx = currentTx();
+        if (tx != null) {
+            //잠가 읽은 뒤 동기 변경이 끼면 읽은 잔액은 더 이상 기준이 아니다.
+            tx.lockedMoney.keySet().removeAll(memberIds);
+        }
+        flush(memberIds, tx);
+    }
+
+    /**
+     * @param memberIds null 이면 전체 (flushLock 을 잡고)
+     * @param tx        null 이면 별도 트랜잭션으로 커밋
+     */
+    private int flush(Collection<String> memberIds, TxFlushes tx) {
+        Drained drained = drain(memberIds, tx);
+        if (drained.changes().isEmpty()) {
+            return 0;
+        }
+        try {
+            if (tx == null) {
+                applyAndCommit(drained.changes());
+            } else {
+                applyInCallerTransaction(drained.changes());
+            }
+        } catch (RuntimeException e) {
+            undrain(drained);
+            throw e;
+        }
+        if (tx != null) {
+            return drained.changes().size();
+        }
+        appendLock.lock();
+        try {
+            flushing.keySet().removeAll(drained.changes().keySet());
+            commitsFinished.incrementAndGet();
+            resetLogIfApplied();
+        } finally {
+            appendLock.unlock();
+        }
+        countFlushed(drained.changes().values());
+        return drained.changes().size();
+    }
+
+    /**
+     * 다른 flush 가 반영 중(커밋 전)인 회원은 건너뛴다. 같은 트랜잭션이 반영 중이면 그 뒤에 이어 붙인다.
+     * 전체 flush 는 트랜잭션이 잠근 회원도 건너뛴다.
+     */
+    private Drained drain(Collection<String> memberIds, TxFlushes tx) {
+        appendLock.lock();
+        try {
+            Map<String, Pending> changes = new HashMap<>();
+            Map<String, InFlight> replaced = new HashMap<>();
+            for (String memberId : memberIds == null ? List.copyOf(pending.keySet()) : memberIds) {
+                Pending p = pending.get(memberId);
+                InFlight inFlight = flushing.get(memberId);
+                if (p == null || (inFlight != null && (tx == null || inFlight.tx() != tx))
+                        || (memberIds == null && reserved.containsKey(memberId))) {
+                    continue;
+                }
+                pending.remove(memberId);
+                changes.put(memberId, p);
+                if (inFlight == null) {
+                    flushing.put(memberId, new InFlight(tx, p));
+                } else {
+                    replaced.put(memberId, inFlight);
+                    Pending combined = inFlight.changes().copy();
+                    combined.then(p);
+                    flushing.put(memberId, new InFlight(tx, combined));
+                }
+                if (tx != null) {
+                    tx.flushedMembers.add(memberId);
+                }
+            }
+            if (changes.isEmpty()) {
+                resetLogIfApplied();
+                return new Drained(changes, replaced);
+            }
+            long now = System.nanoTime();
+            for (Pending p : changes.values()) {
+                maxLagNanos.accumulateAndGet(now - p.firstNanos, Math::max);
+            }
+            return new Drained(changes, replaced);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * 반영하지 못한 변경을 되돌린다. 같은 트랜잭션이 먼저 반영한 변경은 그대로 둔다.
+     */
+    private void undrain(Drained drained) {
+        appendLock.lock();
+        try {
+            drained.changes().forEach((memberId, p) -> {
+                InFlight before = drained.replaced().get(memberId);
+                if (before != null) {
+                    flushing.put(memberId, before);
+                } else {
+                    flushing.remove(memberId);
+                }
+                restore(memberId, p);
+            });
+            recomputeOldestPending();
+        } finally {
+            appendLock.unlock();
+        }
+    }
+    /**
+     * member_id 순서로 update (다른 트랜잭션과 같은 순서로 잠금), 커밋 중에는 commitsStarted != commitsFinished
+     */
+    private void applyAndCommit(Map<String, Pending> changes) {
+        TransactionStatus status = transactionManager.getTransaction(flushDefinition);
+        apply(changes, status);
+        commitsStarted.incrementAndGet();
+        try {
+            transactionManager.commit(status);
+        } catch (RuntimeException e) {
+            commitsFinished.incrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * 호출한 쪽 커넥션에서 savepoint 로 반영, 커밋/롤백은 트랜잭션이 끝날 때 (completeTx)
+     */
+    private void applyInCallerTransaction(Map<String, Pending> changes) {
+        TransactionStatus status = transactionManager.getTransaction(callerFlushDefinition);
+        apply(changes, status);
+        transactionManager.commit(status);
+    }
+
+    private void apply(Map<String, Pending> changes, TransactionStatus status) {
+        List<Object[]> memberArgs = new ArrayList<>(changes.size());
+        List<Object[]> appliedArgs = new ArrayList<>(changes.size());
+        for (Map.Entry<String, Pending> entry : new TreeMap<>(changes).entrySet()) {
+            Pending p = entry.getValue();
+            memberArgs.add(new Object[]{p.base, Math.toIntExact(p.delta), p.changes, entry.getKey()});
+            appliedArgs.add(new Object[]{logId, entry.getKey(), p.lastSeq});
+        }
+        try {
+            int[] rows = template.batchUpdate(APPLY_SQL, memberArgs);
+            for (int i = 0; i < rows.length; i++) {
+                if (rows[i] == 0) {
+                    droppedMembers.increment();
+                    log.warn("write-behind change dropped, member not found memberId={}", memberArgs.get(i)[3]);
+                }
+            }
+            template.batchUpdate(APPLIED_SQL, appliedArgs);
+        } catch (RuntimeException e) {
+            //락 타임아웃 후 커넥션 풀이 커넥션을 닫으면 롤백도 실패한다. -> 원래 예외를 던진다. (PessimisticLockingFailureException 재시도)
+            try {
+                transactionManager.rollback(status);
+            } catch (RuntimeException rollbackFailure) {
+                e.addSuppressed(rollbackFailure);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 트랜잭션이 반영한 변경 - 커밋됐으면 끝, 아니면 pending 앞으로 되돌린다. (그 사이 들어온 변경은 뒤에)
+     */
+    private void completeTx(TxFlushes tx, boolean committed) {
+        List<Pending> flushed = new ArrayList<>();
+        appendLock.lock();
+        try {
+            for (String memberId : tx.reservedMembers) {
+                reserved.computeIfPresent(memberId, (id, count) -> count == 1 ? null : count - 1);
+            }
+            for (String memberId : tx.flushedMembers) {
+                InFlight inFlight = flushing.get(memberId);
+                if (inFlight == null || inFlight.tx() != tx) {
+                    continue;
+                }
+                flushing.remove(memberId);
+                if (committed) {
+                    flushed.add(inFlight.changes());
+                } else {
+                    restore(memberId, inFlight.changes());
+                }
+            }
+            if (!committed) {
+                recomputeOldestPending();
+            }
+            resetLogIfApplied();
+        } finally {
+            appendLock.unlock();
+        }
+        if (tx.committing) {
+            commitsFinished.incrementAndGet();
+        }
+        if (!flushed.isEmpty()) {
+            countFlushed(flushed);
+        }
+    }
+
+    private void restore(String memberId, Pending restored) {
+        Pending later = pending.get(memberId);
+        if (later != null) {
+            restored.then(later);
+        }
+        pending.put(memberId, restored);
+    }
+
+    private void recomputeOldestPending() {
+        oldestPendingNanos = pending.values().stream().mapToLong(p -> p.firstNanos).min().orElse(oldestPendingNanos);
+    }
+
+    private void countFlushed(Collection<Pending> flushed) {
+        flushCount.increment();
+        flushedMembers.add(flushed.size());
+        flushed.forEach(p -> flushedChanges.add(p.changes));
+    }
+
+    /**
+     * 반영 대기 중인 변경이 없으면 로그를 처음부터 다시 쓴다.
+     */
+    private void resetLogIfApplied() {
+        if (pending.isEmpty() && flushing.isEmpty() && changeLog.position() > 0) {
+            changeLog.reset();
+        }
+    }
+
+    /**
+     * DB 값 + 미반영 변경, 읽는 중에 flush 커밋이 끼면 다시 읽는다.
+     * 같은 트랜잭션이 반영한 변경은 DB 값(커밋 전)에 이미 있으므로 빼고 더한다.
+     */
+    private Map<String, Member> withPending(Collection<String> memberIds, Supplier<Map<String, Member>> flushedReader) {
+        TxFlushes tx = boundTx();
+        while (true) {
+            long finished = commitsFinished.get();
+            if (commitsStarted.get() == finished) {
+                Map<String, Pending> snapshot = snapshot(memberIds, tx);
+                Map<String, Member> flushed = flushedReader.get();
+                if (commitsStarted.get() == finished) {
+                    if (snapshot.isEmpty()) {
+                        return flushed;
+                    }
+                    Map<String, Member> result = new LinkedHashMap<>();
+                    flushed.forEach((memberId, member) -> {
+                        Pending p = snapshot.get(memberId);
+                        result.put(memberId, p == null ? member
+                                : new Member(memberId, p.money(member.getMoney()), member.getVersion() + p.changes));
+                    });
+                    return result;
+                }
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    private Map<String, Pending> snapshot(Collection<String> memberIds, TxFlushes tx) {
+        appendLock.lock();
+        try {
+            Map<String, Pending> snapshot = new HashMap<>();
+            for (String memberId : memberIds) {
+                InFlight inFlight = flushing.get(memberId);
+                Pending flushed = inFlight == null || (tx != null && inFlight.tx() == tx) ? null : inFlight.changes();
+                Pending waiting = pending.get(memberId);
+                if (flushed == null && waiting == null) {
+                    continue;
+                }
+                Pending copy = (flushed != null ? flushed : waiting).copy();
+                if (flushed != null && waiting != null) {
+                    copy.then(waiting);
+                }
+                snapshot.put(memberId, copy);
+            }
+            return snapshot;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * 진행 중인 트랜잭션의 상태, 처음이면 만들어 트랜잭션이 끝날 때 completeTx 를 호출하도록 등록
+     */
+    private TxFlushes currentTx() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()
+                || !TransactionSynchronizationManager.isActualTransactionActive()) {
+            return null;
+        }
+        TxFlushes tx = boundTx();
+        if (tx != null) {
+            return tx;
+        }
+        TxFlushes newTx = new TxFlushes();
+        TransactionSynchronizationManager.bindResource(this, newTx);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void suspend() {
+                TransactionSynchronizationManager.unbindResourceIfPossible(WriteBehindMemberRepository.this);
+            }
+
+            @Override
+            public void resume() {
+                TransactionSynchronizationManager.bindResource(WriteBehindMemberRepository.this, newTx);
+            }
+
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                if (!newTx.flushedMembers.isEmpty()) {
+                    newTx.committing = true;
+                    commitsStarted.incrementAndGet();
+                }
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(WriteBehindMemberRepository.this);
+                completeTx(newTx, status == STATUS_COMMITTED);
+            }
+        });
+        return newTx;
+    }
+
+    private TxFlushes boundTx() {
+        return (TxFlushes) TransactionSynchronizationManager.getResource(this);
+    }
+
+    private void addPending(long seq, byte op, String memberId, int value, long now) {
+        if (pending.isEmpty()) {
+            oldestPendingNanos = now;
+        }
+        pending.computeIfAbsent(memberId, id -> new Pending(now)).apply(seq, op, value);
+    }
+
+    private long lagNanos(long now) {
+        return pending.isEmpty() ? 0 : now - oldestPendingNanos;
+    }
+
+    /**
+     * 로그를 다시 읽어 DB 에 반영되지 않은 기록만 pending 으로, 바로 flush
+     */
+    private void recover() {
+        Map<String, Long> applied = new HashMap<>();
+        template.query("select member_id, applied_seq from write_behind_applied where log_id=?",
+                rs -> {
+                    applied.put(rs.getString("member_id"), rs.getLong("applied_seq"));
+                }, logId);
+        long maxSeq = applied.values().stream().mapToLong(Long::longValue).max().orElse(0);
+        long[] replay = {maxSeq, 0};
+        long now = System.nanoTime();
+        appendLock.lock();
+        try {
+            changeLog.replay(entry -> {
+                replay[0] = Math.max(replay[0], entry.seq());
+                if (entry.seq() > applied.getOrDefault(entry.memberId(), 0L)) {
+                    addPending(entry.seq(), entry.op(), entry.memberId(), entry.value(), now);
+                    replay[1]++;
+                }
+            });
+            nextSeq = replay[0] + 1;
+        } finally {
+            appendLock.unlock();
+        }
+        log.info("write-behind log recovered logId={}, replayed={}, pendingMembers={}, nextSeq={}",
+                logId, replay[1], getPendingMembers(), nextSeq);
+        flush();
+    }
+
+    /**
+     * @param tx 반영한 트랜잭션, null 이면 별도 트랜잭션으로 커밋 중
+     */
+    private record InFlight(TxFlushes tx, Pending changes) {
+    }
+
+    /**
+     * @param replaced 같은 트랜잭션이 먼저 반영해 두었던 변경 (실패하면 되돌릴 값)
+     */
+    private record Drained(Map<String, Pending> changes, Map<String, InFlight> replaced) {
+    }
+
+    /**
+     * 트랜잭션마다 - 호출한 스레드만 쓰는 lockedMoney 외에는 appendLock 안에서
+     */
+    private static final class TxFlushes {
+        private final Map<String, Integer> lockedMoney = new HashMap<>();
+        private final Set<String> reservedMembers = new HashSet<>();
+        private final Set<String> flushedMembers = new HashSet<>();
+        private boolean committing;
+    }
+
+    /**
+     * 한 회원의 합친 변경 - base 가 있으면 money = base + delta, 없으면 money = money + delta
+     */
+    private static final class Pending {
+        private final long firstNanos;
+        private Integer base;
+        private long delta;
+        private int changes;
+        private long lastSeq;
+
+        private Pending(long firstNanos) {
+            this.firstNanos = firstNanos;
+        }
+
+        void apply(long seq, byte op, int value) {
+            if (op == WriteBehindLog.SET) {
+                base = value;
+                delta = 0;
+            } else {
+                delta += value;
+            }
+            changes++;
+            lastSeq = seq;
+        }
+
+        /**
+         * 이 변경 뒤에 later 를 이어 붙인다.
+         */
+        void then(Pending later) {
+            if (later.base != null) {
+                base = later.base;
+                delta = later.delta;
+            } else {
+                delta += later.delta;
+            }
+            changes += later.changes;
+            lastSeq = later.lastSeq;
+        }
+
+        int money(int flushedMoney) {
+            return (int) ((base != null ? base : flushedMoney) + delta);
+        }
+
+        Pending copy() {
+            Pending copy = new Pending(firstNanos);
+            copy.base = base;
+            copy.delta = delta;
+            copy.changes = changes;
+            copy.lastSeq = lastSeq;
+            return copy;
+        }
+    }
+}
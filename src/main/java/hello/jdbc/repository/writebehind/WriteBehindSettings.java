@@ -0,0 +1,31 @@
+package hello.jdbc.repository.writebehind;
+
+import java.time.Duration;
+
+/**
+ * WriteBehindMemberRepository 설정
+ *
+ * @param flushInterval     백그라운드 flush 주기
+ * @param maxLag            가장 오래된 미반영 변경이 이보다 오래되면 쓰는 쪽이 직접 flush (back-pressure)
+ * @param maxPendingMembers 미반영 회원 수가 이만큼 쌓이면 쓰는 쪽이 직접 flush (back-pressure)
+ * @param logCapacityBytes  로그 파일 크기, 가득 차면 flush 후 처음부터 다시 쓴다.
+ */
+public record WriteBehindSettings(Duration flushInterval, Duration maxLag, int maxPendingMembers, int logCapacityBytes) {
+    public static final Duration DEFAULT_FLUSH_INTERVAL = Duration.ofMillis(200);
+    public static final Duration DEFAULT_MAX_LAG = Duration.ofSeconds(2);
+    public static final int DEFAULT_MAX_PENDING_MEMBERS = 10_000;
+    public static final int DEFAULT_LOG_CAPACITY_BYTES = 16 * 1024 * 1024;
+
+    public WriteBehindSettings {
+        if (flushInterval.isNegative() || flushInterval.isZero() || maxLag.isNegative() || maxLag.isZero()) {
+            throw new IllegalArgumentException("flushInterval, maxLag must be positive. flushInterval=" + flushInterval + ", maxLag=" + maxLag);
+        }
+        if (maxPendingMembers < 1 || logCapacityBytes < 1024) {
+            throw new IllegalArgumentException("maxPendingMembers=" + maxPendingMembers + ", logCapacityBytes=" + logCapacityBytes);
+        }
+    }
+
+    public static WriteBehindSettings defaults() {
+        return new WriteBehindSettings(DEFAULT_FLUSH_INTERVAL, DEFAULT_MAX_LAG, DEFAULT_MAX_PENDING_MEMBERS, DEFAULT_LOG_CAPACITY_BYTES);
+    }
+}
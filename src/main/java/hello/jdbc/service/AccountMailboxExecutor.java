@@ -0,0 +1,197 @@
+package hello.jdbc.service;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.domain.Transfer;
+import hello.jdbc.domain.TransferResult;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 회원별 mailbox (actor) - 같은 key 의 이체는 JVM 에서 한 번에 한 건씩 실행
+ * 핫 계좌에 동시에 이체가 몰려도 DB 행 락을 기다리며 커넥션을 붙잡고 있는 쓰레드가 생기지 않는다.
+ *
+ * key = 두 회원 중 작은 member_id
+ * - key 가 같은 이체끼리만 직렬화된다. 큰 쪽 회원만 겹치는 이체는 여전히 DB 행 락으로 보호된다.
+ * mailbox 는 처음 이체가 들어올 때 만들고, 큐가 비면 바로 제거한다.
+ * mailbox 실행은 공유 worker 쓰레드 (커넥션 풀 maximumPoolSize 개)에서 한다.
+ * 큐 조작은 모두 ConcurrentHashMap.compute 안에서 한다. (key 별 락 -> 추가/제거 경쟁 없음)
+ */
+@Slf4j
+public class AccountMailboxExecutor implements AutoCloseable {
+    //한 mailbox 가 worker 를 독점하지 않도록 이만큼 실행하면 다른 mailbox 에 양보
+    private static final int MAX_TASKS_PER_TURN = 64;
+
+    private final MemberServiceV4 memberService;
+    private final ExecutorService workers;
+    private final ConcurrentHashMap<String, Mailbox> mailboxes = new ConcurrentHashMap<>();
+
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+    private final LongAdder reclaimedCount = new LongAdder();
+
+    public AccountMailboxExecutor(MemberServiceV4 memberService, HikariDataSource dataSource) {
+        this(memberService, ParallelTransferExecutor.maximumPoolSize(dataSource));
+    }
+
+    public AccountMailboxExecutor(MemberServiceV4 memberService, int workerCount) {
+        this.memberService = memberService;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(workerCount, r -> {
+            Thread thread = new Thread(r, "account-mailbox-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public CompletableFuture<TransferResult> submit(Transfer transfer) {
+        Task task = new Task(transfer, new CompletableFuture<>());
+        String key = transfer.getFromId().compareTo(transfer.getToId()) <= 0 ? transfer.getFromId() : transfer.getToId();
+
+        boolean[] schedule = new boolean[1];
+        Mailbox mailbox = mailboxes.compute(key, (k, current) -> {
+            Mailbox target = current != null ? current : new Mailbox(k);
+            target.queue.add(task);
+            maxQueueDepth.accumulateAndGet(target.queue.size(), Math::max);
+            if (!target.scheduled) {
+                target.scheduled = true;
+                schedule[0] = true;
+            }
+            return target;
+        });
+        if (schedule[0]) {
+            try {
+                workers.execute(mailbox::drain);
+            } catch (RejectedExecutionException e) {
+                reject(key, e);
+            }
+        }
+        return task.future;
+    }
+
+    /**
+     * 현재 mailbox 별 대기 건수 (실행 중인 건 제외)
+     */
+    public Map<String, Integer> queueDepths() {
+        Map<String, Integer> depths = new HashMap<>();
+        for (String key : mailboxes.keySet()) {
+            mailboxes.computeIfPresent(key, (k, mailbox) -> {
+                depths.put(k, mailbox.queue.size());
+                return mailbox;
+            });
+        }
+        return depths;
+    }
+
+    public int getMailboxCount() {
+        return mailboxes.size();
+    }
+
+    public int getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    public long getReclaimedCount() {
+        return reclaimedCount.sum();
+    }
+
+    @Override
+    public void close() {
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.warn("account mailbox workers not terminated mailboxes={}", mailboxes.size());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 종료된 뒤 들어온 이체 - 실행할 worker 가 없다. 그 사이 같은 mailbox 에 쌓인 이체도 함께 실패시키고 mailbox 제거
+     * (scheduled 로 남겨두면 이후 이체가 영원히 실행되지 않는 mailbox 뒤에 쌓인다)
+     */
+    private void reject(String key, RejectedExecutionException e) {
+        List<Task> rejected = new ArrayList<>();
+        mailboxes.computeIfPresent(key, (k, mailbox) -> {
+            rejected.addAll(mailbox.queue);
+            mailbox.queue.clear();
+            mailbox.scheduled = false;
+            return null;
+        });
+        for (Task task : rejected) {
+            task.future.completeExceptionally(e);
+        }
+    }
+
+    private TransferResult transfer(Transfer transfer) {
+        try {
+            memberService.accountTransfer(transfer.getFromId(), transfer.getToId(), transfer.getAmount());
+            return TransferResult.success(transfer);
+        } catch (RuntimeException e) {
+            log.info("transfer failed transfer={}", transfer, e);
+            return TransferResult.failure(transfer, e.getMessage());
+        }
+    }
+
+    private record Task(Transfer transfer, CompletableFuture<TransferResult> future) {
+    }
+
+    private class Mailbox {
+        private final String key;
+        private final Queue<Task> queue = new ArrayDeque<>();
+        private boolean scheduled;
+
+        Mailbox(String key) {
+            this.key = key;
+        }
+
+        void drain() {
+            int executed = 0;
+            Task task;
+            while ((task = next()) != null) {
+                task.future.complete(transfer(task.transfer));
+                if (++executed < MAX_TASKS_PER_TURN) {
+                    continue;
+                }
+                executed = 0;
+                try {
+                    //아직 남아있으면 (scheduled 유지) worker 큐 뒤에 다시 넣는다.
+                    workers.execute(this::drain);
+                    return;
+                } catch (RejectedExecutionException e) {
+                    //종료 중이면 남은 이체를 이 쓰레드에서 끝까지 실행
+                }
+            }
+        }
+
+        /**
+         * 큐가 비었으면 mailbox 를 map 에서 제거 (idle mailbox 회수)
+         */
+        private Task next() {
+            Task[] next = new Task[1];
+            mailboxes.compute(key, (k, current) -> {
+                next[0] = queue.poll();
+                if (next[0] != null) {
+                    return current;
+                }
+                scheduled = false;
+                reclaimedCount.increment();
+                return null;
+            });
+            return next[0];
+        }
+    }
+}
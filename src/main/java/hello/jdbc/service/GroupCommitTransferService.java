@@ -0,0 +1,162 @@
+package hello.jdbc.service;
+
+import hello.jdbc.domain.Transfer;
+import hello.jdbc.domain.TransferResult;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 그룹 커밋 - 동시에 들어온 이체 요청을 모아서 트랜잭션 하나로 커밋
+ * 요청마다 커밋하면 커밋(DB 왕복 + 로그 flush) 비용을 건마다 내지만, 모으면 묶음 크기로 나눠 낸다.
+ *
+ * drainer 쓰레드 하나가 첫 요청을 받은 뒤 maxWait 동안 또는 maxBatchSize 건이 될 때까지 모아서
+ * MemberServiceV4.transferAll 로 실행한다. (batch update, 실패한 건만 savepoint 로 롤백)
+ * 호출한 쪽은 자신의 CompletableFuture 로 건별 결과를 받는다.
+ *
+ * 대신 요청 한 건의 지연시간은 최대 maxWait 만큼 늘어난다.
+ */
+@Slf4j
+public class GroupCommitTransferService implements AutoCloseable {
+    public static final int DEFAULT_MAX_BATCH_SIZE = 128;
+    public static final Duration DEFAULT_MAX_WAIT = Duration.ofNanos(300_000);
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    private final MemberServiceV4 memberService;
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+    private final BlockingQueue<PendingTransfer> queue = new LinkedBlockingQueue<>();
+    private final Thread drainer;
+    private volatile boolean running = true;
+
+    private final LongAdder batchCount = new LongAdder();
+    private final LongAdder transferCount = new LongAdder();
+
+    public GroupCommitTransferService(MemberServiceV4 memberService) {
+        this(memberService, DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_WAIT);
+    }
+
+    public GroupCommitTransferService(MemberServiceV4 memberService, int maxBatchSize, Duration maxWait) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be positive. maxBatchSize=" + maxBatchSize);
+        }
+        this.memberService = memberService;
+        this.maxBatchSize = maxBatchSize;
+        this.maxWaitNanos = maxWait.toNanos();
+        this.drainer = new Thread(this::drainLoop, "group-commit-transfer");
+        this.drainer.setDaemon(true);
+        this.drainer.start();
+    }
+
+    public CompletableFuture<TransferResult> submit(Transfer transfer) {
+        PendingTransfer pending = new PendingTransfer(transfer, new CompletableFuture<>());
+        if (!running) {
+            pending.future().completeExceptionally(new IllegalStateException("group commit transfer service closed"));
+            return pending.future();
+        }
+        queue.add(pending);
+        //close() 와 동시에 들어와서 drainer 가 이미 끝났을 수 있다.
+        if (!running && queue.remove(pending)) {
+            pending.future().completeExceptionally(new IllegalStateException("group commit transfer service closed"));
+        }
+        return pending.future();
+    }
+
+    public long getBatchCount() {
+        return batchCount.sum();
+    }
+
+    public long getTransferCount() {
+        return transferCount.sum();
+    }
+
+    /**
+     * 이미 받은 요청은 모두 처리한 뒤 종료
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            drainer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        failAll(new ArrayList<>(queue), new IllegalStateException("group commit transfer service closed"));
+        queue.clear();
+    }
+
+    private void drainLoop() {
+        List<PendingTransfer> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingTransfer first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                collect(batch);
+                commit(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failAll(batch, e);
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 첫 요청부터 maxWait 가 지나거나 maxBatchSize 건이 될 때까지 모은다.
+     */
+    private void collect(List<PendingTransfer> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + maxWaitNanos;
+        while (batch.size() < maxBatchSize) {
+            queue.drainTo(batch, maxBatchSize - batch.size());
+            long remainingNanos = deadline - System.nanoTime();
+            if (batch.size() >= maxBatchSize || remainingNanos <= 0) {
+                return;
+            }
+            PendingTransfer next = queue.poll(remainingNanos, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void commit(List<PendingTransfer> batch) {
+        List<Transfer> transfers = new ArrayList<>(batch.size());
+        for (PendingTransfer pending : batch) {
+            transfers.add(pending.transfer());
+        }
+        try {
+            List<TransferResult> results = memberService.transferAll(transfers, batch.size());
+            batchCount.increment();
+            transferCount.add(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).future().complete(results.get(i));
+            }
+        } catch (RuntimeException e) {
+            //커밋 실패 등 묶음 전체가 실패한 경우 (건별 실패는 TransferResult 로 전달됨)
+            log.error("group commit failed size={}", batch.size(), e);
+            failAll(batch, e);
+        }
+    }
+
+    private void failAll(List<PendingTransfer> batch, Throwable cause) {
+        for (PendingTransfer pending : batch) {
+            pending.future().completeExceptionally(cause);
+        }
+    }
+
+    private record PendingTransfer(Transfer transfer, CompletableFuture<TransferResult> future) {
+    }
+}
@@ -0,0 +1,38 @@
+package hello.jdbc.service;
+
+import org.springframework.dao.PessimisticLockingFailureException;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * 교착상태 희생자(deadlock loser), 락 대기 시간 초과면 트랜잭션을 처음부터 다시 실행
+ * SQLErrorCodeSQLExceptionTranslator (MemberRepositoryV4_2, JdbcTemplate) 가 DB 에러 코드로 구분해준다.
+ * - H2: 40001(교착상태, sql-error-codes.xml 에 추가), 50200(락 대기 시간 초과) -> CannotAcquireLockException
+ * 재시도는 상위 타입 PessimisticLockingFailureException 으로 판단 (다른 DB 의 교착상태 변환도 포함)
+ * MemberRepositoryV4_1 은 MyDbException 으로만 바꾸므로 재시도하지 않는다.
+ *
+ * memberService.accountTransfer 는 @Transactional 프록시이므로 시도마다 새 트랜잭션이다. (롤백된 뒤 재시도)
+ */
+public class LockRetryTransferService {
+    private final MemberServiceV4 memberService;
+    private final RetryPolicy retryPolicy;
+
+    public LockRetryTransferService(MemberServiceV4 memberService) {
+        this(memberService, new RetryPolicy(5, Duration.ofMillis(5), Duration.ofMillis(100),
+                List.of(PessimisticLockingFailureException.class)));
+    }
+
+    public LockRetryTransferService(MemberServiceV4 memberService, RetryPolicy retryPolicy) {
+        this.memberService = memberService;
+        this.retryPolicy = retryPolicy;
+    }
+
+    public void accountTransfer(String fromId, String toId, int transferMoney) {
+        retryPolicy.run(() -> memberService.accountTransfer(fromId, toId, transferMoney));
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+}
@@ -0,0 +1,118 @@
+package hello.jdbc.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.CannotAcquireLockException;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * member_id 를 stripe 로 나눈 JVM 락
+ * 이체 전에 (fromId, toId) 두 stripe 를 잡으면 같은 노드의 경합 이체는 커넥션을 얻기 전에 여기서 기다린다.
+ * (DB 행 락에서 기다리면 그동안 커넥션을 붙잡고 있음)
+ *
+ * 항상 stripe 번호 순서로 잡는다. -> 두 이체가 서로 반대 순서로 기다리는 교착상태 없음
+ * 두 회원이 같은 stripe 면 한 번만 잡는다.
+ * 다른 노드와의 경합은 여전히 DB 행 락이 보호한다.
+ */
+@Slf4j
+public class LockStripes {
+    public static final int DEFAULT_STRIPES = 64;
+    public static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(3);
+
+    private final ReentrantLock[] locks;
+    private final long timeoutNanos;
+
+    private final LongAdder acquiredCount = new LongAdder();
+    private final LongAdder contendedCount = new LongAdder();
+    private final LongAdder timeoutCount = new LongAdder();
+
+    public LockStripes() {
+        this(DEFAULT_STRIPES, DEFAULT_TIMEOUT);
+    }
+
+    public LockStripes(int stripes, Duration timeout) {
+        if (stripes < 1) {
+            throw new IllegalArgumentException("stripes must be positive. stripes=" + stripes);
+        }
+        this.locks = new ReentrantLock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        this.timeoutNanos = timeout.toNanos();
+    }
+
+    public void runWithLocks(String memberId1, String memberId2, Runnable action) {
+        callWithLocks(memberId1, memberId2, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * timeout 안에 두 stripe 를 모두 잡지 못하면 CannotAcquireLockException (잡았던 락은 풀어준다)
+     */
+    public <T> T callWithLocks(String memberId1, String memberId2, Supplier<T> action) {
+        int stripe1 = stripe(memberId1);
+        int stripe2 = stripe(memberId2);
+        ReentrantLock first = locks[Math.min(stripe1, stripe2)];
+        ReentrantLock second = locks[Math.max(stripe1, stripe2)];
+
+        long deadline = System.nanoTime() + timeoutNanos;
+        lock(first, deadline, memberId1, memberId2);
+        try {
+            if (second != first) {
+                lock(second, deadline, memberId1, memberId2);
+            }
+            try {
+                return action.get();
+            } finally {
+                if (second != first) {
+                    second.unlock();
+                }
+            }
+        } finally {
+            first.unlock();
+        }
+    }
+
+    public int stripe(String memberId) {
+        int hash = memberId.hashCode();
+        //hashCode 하위 비트만 쓰면 비슷한 id 가 몰리므로 상위 비트를 섞는다. (HashMap 과 같은 방식)
+        return Math.floorMod(hash ^ (hash >>> 16), locks.length);
+    }
+
+    public long getAcquiredCount() {
+        return acquiredCount.sum();
+    }
+
+    /**
+     * 바로 잡지 못하고 기다린 횟수
+     */
+    public long getContendedCount() {
+        return contendedCount.sum();
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount.sum();
+    }
+
+    private void lock(ReentrantLock lock, long deadline, String memberId1, String memberId2) {
+        if (!lock.tryLock()) {
+            contendedCount.increment();
+            try {
+                if (!lock.tryLock(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                    timeoutCount.increment();
+                    throw new CannotAcquireLockException("lock stripe timeout memberIds=" + memberId1 + ", " + memberId2);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CannotAcquireLockException("lock stripe interrupted memberIds=" + memberId1 + ", " + memberId2, e);
+            }
+        }
+        acquiredCount.increment();
+    }
+}
@@ -0,0 +1,86 @@
+package hello.jdbc.service;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.id.HiLoIdAllocator;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 회원 가입 - 요청한 id 가 이미 있으면 뒤에 숫자를 붙인 id 로 가입
+ * insertIfAbsent 가 false 를 돌려주므로 중복 키 예외를 잡아서 복구하지 않는다. (ExTranslatorV1Test.Service 와 비교)
+ * id 를 지정하지 않으면 HiLoIdAllocator 로 발급한 id 로 가입 (충돌 없음)
+ */
+@Slf4j
+public class MemberJoinService {
+    public static final int MAX_ATTEMPTS = 10;
+    private static final int JOIN_BATCH_SIZE = 100;
+
+    private final MemberRepository repository;
+    private final HiLoIdAllocator idAllocator;
+
+    public MemberJoinService(MemberRepository repository) {
+        this(repository, null);
+    }
+
+    public MemberJoinService(MemberRepository repository, HiLoIdAllocator idAllocator) {
+        this.repository = repository;
+        this.idAllocator = idAllocator;
+    }
+
+    /**
+     * 발급한 id 로 가입
+     */
+    public String join() {
+        Member member = new Member(allocator().nextMemberId(), 0);
+        repository.save(member);
+        log.info("joinId={}", member.getMemberId());
+        return member.getMemberId();
+    }
+
+    /**
+     * 발급한 id 로 count 명 일괄 가입 (saveAll)
+     */
+    public List<String> joinAll(int count) {
+        HiLoIdAllocator allocator = allocator();
+        List<Member> members = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            members.add(new Member(allocator.nextMemberId(), 0));
+        }
+        List<String> joinIds = new ArrayList<>(count);
+        for (Member member : repository.saveAll(members, JOIN_BATCH_SIZE)) {
+            joinIds.add(member.getMemberId());
+        }
+        return joinIds;
+    }
+
+    /**
+     * 가입된 member_id 반환
+     */
+    public String join(String memberId) {
+        String candidateId = memberId;
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            if (repository.insertIfAbsent(new Member(candidateId, 0))) {
+                log.info("joinId={}", candidateId);
+                return candidateId;
+            }
+            log.info("키가 중복되었습니다. 다른 id 로 시도 memberId={}", candidateId);
+            candidateId = generateNewId(memberId);
+        }
+        throw new IllegalStateException("가입할 수 있는 id 를 찾지 못했습니다. memberId=" + memberId);
+    }
+
+    private HiLoIdAllocator allocator() {
+        if (idAllocator == null) {
+            throw new IllegalStateException("idAllocator is not configured");
+        }
+        return idAllocator;
+    }
+
+    private String generateNewId(String memberId) {
+        return memberId + ThreadLocalRandom.current().nextInt(10000);
+    }
+}
@@ -1,9 +1,22 @@
 package hello.jdbc.service;
 
 import hello.jdbc.domain.Member;
+import hello.jdbc.domain.Transfer;
+import hello.jdbc.domain.TransferResult;
 import hello.jdbc.repository.MemberRepository;
-import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * 예외 누수 문제 해결
@@ -11,25 +24,196 @@ import org.springframework.transaction.annotation.Transactional;
  *
  * MemberRepository interface 에 의존
  */
-@RequiredArgsConstructor
+@Slf4j
 public class MemberServiceV4 {
+    public static final int DEFAULT_TRANSFER_CHUNK_SIZE = 500;
+
     private final MemberRepository repository;
+    private final TransactionTemplate txTemplate;
+
+    public MemberServiceV4(MemberRepository repository, PlatformTransactionManager transactionManager) {
+        this.repository = repository;
+        this.txTemplate = new TransactionTemplate(transactionManager);
+    }
 
     @Transactional
     public void accountTransfer(String fromId, String toId, int transferMoney) {
         businessLogic(fromId, toId, transferMoney);//비즈니스 로직
     }
 
-    private void businessLogic(String fromId, String toId, int transferMoney) {
+    /**
+     * 조회 없이 조건부 update 2번으로 이체 (findById 2번 + update 2번 -> update 2번)
+     * 잔액 확인과 차감이 한 문장이라 동시에 이체해도 잔액이 음수가 되지 않는다.
+     */
+    @Transactional
+    public void atomicAccountTransfer(String fromId, String toId, int transferMoney) {
+        if (transferMoney <= 0) {
+            throw new IllegalArgumentException("transferMoney must be positive. transferMoney=" + transferMoney);
+        }
+        if (repository.withdrawIfSufficient(fromId, transferMoney) != 1) {
+            throw new IllegalStateException("잔액 부족 또는 회원 없음 memberId=" + fromId);
+        }
+        validation(toId);
+        if (repository.addMoney(toId, transferMoney) != 1) {
+            throw new IllegalStateException("회원 없음 memberId=" + toId);
+        }
+    }
+
+    /**
+     * 차감과 입금을 update 한 문장으로 이체 (DB 왕복 1번)
+     * 정확히 2행이 바뀌지 않으면 (잔액 부족, 회원 없음) 예외 -> 롤백
+     */
+    @Transactional
+    public void singleStatementAccountTransfer(String fromId, String toId, int transferMoney) {
+        if (transferMoney <= 0) {
+            throw new IllegalArgumentException("transferMoney must be positive. transferMoney=" + transferMoney);
+        }
+        if (fromId.equals(toId)) {
+            throw new IllegalArgumentException("같은 회원에게 이체할 수 없습니다. memberId=" + fromId);
+        }
+        validation(toId);
+        int resultSize = repository.transfer(fromId, toId, transferMoney);
+        if (resultSize != 2) {
+            throw new IllegalStateException("잔액 부족 또는 회원 없음 fromId=" + fromId + ", toId=" + toId);
+        }
+    }
+
+    /**
+     * 낙관적 락 - 행 락 없이 조회하고, 조회한 version 이 그대로일 때만 update
+     * 그 사이 다른 트랜잭션이 변경했으면 OptimisticLockConflictException -> 롤백 (재시도는 OptimisticTransferService)
+     */
+    @Transactional
+    public void optimisticAccountTransfer(String fromId, String toId, int transferMoney) {
         Member fromMember = repository.findById(fromId);
         Member toMember = repository.findById(toId);
+        if (fromMember.getMoney() < transferMoney) {
+            throw new IllegalStateException("잔액 부족 memberId=" + fromId);
+        }
+        repository.update(fromId, fromMember.getMoney() - transferMoney, fromMember.getVersion());
+        validation(toMember.getMemberId());
+        repository.update(toId, toMember.getMoney() + transferMoney, toMember.getVersion());
+    }
+
+    public List<TransferResult> transferAll(List<Transfer> transfers) {
+        return transferAll(transfers, DEFAULT_TRANSFER_CHUNK_SIZE);
+    }
+
+    /**
+     * 대량 이체 - chunkSize 건마다 트랜잭션 하나 (건마다 커밋하지 않음)
+     * 1. 청크가 건드리는 회원을 member_id 순서로 select for update -> 청크끼리 락 순서가 같아 교착상태 없음
+     * 2. savepoint 후 transfer update 를 JDBC batch 한번으로 실행
+     * 3. 한 건이라도 실패하면 savepoint 로 되돌리고 건마다 savepoint 를 두고 다시 실행 -> 실패한 건만 롤백
+     * 결과는 요청 순서대로 건별 성공/실패
+     */
+    public List<TransferResult> transferAll(List<Transfer> transfers, int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be positive. chunkSize=" + chunkSize);
+        }
+        List<TransferResult> results = new ArrayList<>(transfers.size());
+        for (int start = 0; start < transfers.size(); start += chunkSize) {
+            List<Transfer> chunk = transfers.subList(start, Math.min(start + chunkSize, transfers.size()));
+            results.addAll(txTemplate.execute(status -> transferChunk(chunk, status)));
+        }
+        return results;
+    }
+
+    private List<TransferResult> transferChunk(List<Transfer> chunk, TransactionStatus status) {
+        TransferResult[] results = new TransferResult[chunk.size()];
+        List<Integer> batchIndexes = new ArrayList<>();
+        Set<String> memberIds = new HashSet<>();
+        for (int i = 0; i < chunk.size(); i++) {
+            Transfer transfer = chunk.get(i);
+            if (transfer.getAmount() <= 0) {
+                results[i] = TransferResult.failure(transfer, "transferMoney must be positive. transferMoney=" + transfer.getAmount());
+            } else if (transfer.getFromId().equals(transfer.getToId())) {
+                results[i] = TransferResult.failure(transfer, "같은 회원에게 이체할 수 없습니다. memberId=" + transfer.getFromId());
+            } else {
+                batchIndexes.add(i);
+                memberIds.add(transfer.getFromId());
+                memberIds.add(transfer.getToId());
+            }
+        }
+        if (batchIndexes.isEmpty()) {
+            return Arrays.asList(results);
+        }
+
+        repository.findByIdsForUpdate(memberIds);
+        List<Transfer> batch = new ArrayList<>(batchIndexes.size());
+        for (int index : batchIndexes) {
+            batch.add(chunk.get(index));
+        }
+
+        Object batchSavepoint = status.createSavepoint();
+        if (transferBatch(batch)) {
+            status.releaseSavepoint(batchSavepoint);
+            for (int index : batchIndexes) {
+                results[index] = TransferResult.success(chunk.get(index));
+            }
+            return Arrays.asList(results);
+        }
+        status.rollbackToSavepoint(batchSavepoint);
+        status.releaseSavepoint(batchSavepoint);
+        log.info("transfer batch failed, retry with savepoint per transfer size={}", batch.size());
+
+        for (int index : batchIndexes) {
+            results[index] = transferWithSavepoint(chunk.get(index), status);
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * 모든 건이 정확히 2행을 바꿔야 성공 (실패한 건이 있으면 호출한 쪽에서 savepoint 로 되돌림)
+     */
+    private boolean transferBatch(List<Transfer> batch) {
+        try {
+            for (Transfer transfer : batch) {
+                validation(transfer.getToId());
+            }
+            int[] resultSizes = repository.transferAll(batch);
+            return Arrays.stream(resultSizes).allMatch(resultSize -> resultSize == 2);
+        } catch (IllegalStateException | DataAccessException e) {
+            log.info("transfer batch failed", e);
+            return false;
+        }
+    }
+
+    private TransferResult transferWithSavepoint(Transfer transfer, TransactionStatus status) {
+        Object savepoint = status.createSavepoint();
+        try {
+            int resultSize = repository.transfer(transfer.getFromId(), transfer.getToId(), transfer.getAmount());
+            if (resultSize != 2) {
+                throw new IllegalStateException("잔액 부족 또는 회원 없음 fromId=" + transfer.getFromId() + ", toId=" + transfer.getToId());
+            }
+            validation(transfer.getToId());
+            status.releaseSavepoint(savepoint);
+            return TransferResult.success(transfer);
+        } catch (IllegalStateException | DataAccessException e) {
+            status.rollbackToSavepoint(savepoint);
+            status.releaseSavepoint(savepoint);
+            return TransferResult.failure(transfer, e.getMessage());
+        }
+    }
+
+    private void businessLogic(String fromId, String toId, int transferMoney) {
+        //두 행을 member_id 순서로 한 문장에서 락 -> A->B, B->A 가 동시에 와도 서로 반대 순서로 기다리지 않음
+        Map<String, Member> members = repository.findByIdsForUpdate(List.of(fromId, toId));
+        Member fromMember = lockedMember(members, fromId);
+        Member toMember = lockedMember(members, toId);
         repository.update(fromId, fromMember.getMoney() - transferMoney);
-        validation(toMember);
+        validation(toMember.getMemberId());
         repository.update(toId, toMember.getMoney() + transferMoney);
     }
 
-    private void validation(Member toMember) {
-        if (toMember.getMemberId().equals("ex")) {
+    private Member lockedMember(Map<String, Member> members, String memberId) {
+        Member member = members.get(memberId);
+        if (member == null) {
+            throw new IllegalStateException("회원 없음 memberId=" + memberId);
+        }
+        return member;
+    }
+
+    private void validation(String toId) {
+        if (toId.equals("ex")) {
             throw new IllegalStateException("이체중 예외 발생");
         }
     }
@@ -0,0 +1,33 @@
+package hello.jdbc.service;
+
+import hello.jdbc.repository.ex.OptimisticLockConflictException;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * 낙관적 락 이체 + 충돌 시 재시도
+ * memberService.optimisticAccountTransfer 는 @Transactional 프록시이므로 시도마다 새 트랜잭션이다.
+ */
+public class OptimisticTransferService {
+    private final MemberServiceV4 memberService;
+    private final RetryPolicy retryPolicy;
+
+    public OptimisticTransferService(MemberServiceV4 memberService) {
+        this(memberService, new RetryPolicy(10, Duration.ofMillis(1), Duration.ofMillis(50),
+                List.of(OptimisticLockConflictException.class)));
+    }
+
+    public OptimisticTransferService(MemberServiceV4 memberService, RetryPolicy retryPolicy) {
+        this.memberService = memberService;
+        this.retryPolicy = retryPolicy;
+    }
+
+    public void accountTransfer(String fromId, String toId, int transferMoney) {
+        retryPolicy.run(() -> memberService.optimisticAccountTransfer(fromId, toId, transferMoney));
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+}
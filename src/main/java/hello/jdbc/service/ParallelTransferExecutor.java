@@ -0,0 +1,108 @@
+package hello.jdbc.service;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.domain.Transfer;
+import hello.jdbc.domain.TransferResult;
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * 서로 겹치지 않는 이체를 병렬로 실행
+ * 이체마다 wave = max(from 의 마지막 wave, to 의 마지막 wave) + 1
+ * - 같은 wave 안의 이체는 회원이 겹치지 않는다. -> 서로 락을 기다리지 않으므로 교착상태가 생길 수 없음
+ * - 같은 회원의 이체는 요청 순서대로 다음 wave 에 배치된다. -> 순차 실행과 결과가 같다.
+ * wave 하나를 병렬로 실행하고, 끝나면 다음 wave 를 실행한다.
+ *
+ * 이체 한 건은 MemberServiceV4.accountTransfer (트랜잭션 하나, 커넥션 하나)
+ * 쓰레드 수 = 커넥션 풀 maximumPoolSize (더 많으면 커넥션을 기다리기만 한다)
+ */
+@Slf4j
+public class ParallelTransferExecutor implements AutoCloseable {
+
+    private final MemberServiceV4 memberService;
+    private final ForkJoinPool pool;
+
+    public ParallelTransferExecutor(MemberServiceV4 memberService, HikariDataSource dataSource) {
+        this(memberService, maximumPoolSize(dataSource));
+    }
+
+    public ParallelTransferExecutor(MemberServiceV4 memberService, int parallelism) {
+        this.memberService = memberService;
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    public List<TransferResult> transferAll(List<Transfer> transfers) {
+        TransferResult[] results = new TransferResult[transfers.size()];
+        List<List<Integer>> waves = waves(transfers);
+        for (List<Integer> wave : waves) {
+            List<Callable<Void>> tasks = new ArrayList<>(wave.size());
+            for (int index : wave) {
+                tasks.add(() -> {
+                    results[index] = transfer(transfers.get(index));
+                    return null;
+                });
+            }
+            //invokeAll 은 wave 의 모든 이체가 끝날 때까지 기다린다.
+            pool.invokeAll(tasks);
+        }
+        log.info("parallel transfer transfers={}, waves={}, parallelism={}", transfers.size(), waves.size(), pool.getParallelism());
+        return Arrays.asList(results);
+    }
+
+    /**
+     * wave 별 이체 index 목록 (wave 안에서는 요청 순서)
+     */
+    static List<List<Integer>> waves(List<Transfer> transfers) {
+        List<List<Integer>> waves = new ArrayList<>();
+        Map<String, Integer> lastWaves = new HashMap<>();
+        for (int i = 0; i < transfers.size(); i++) {
+            Transfer transfer = transfers.get(i);
+            int wave = Math.max(
+                    lastWaves.getOrDefault(transfer.getFromId(), -1),
+                    lastWaves.getOrDefault(transfer.getToId(), -1)) + 1;
+            lastWaves.put(transfer.getFromId(), wave);
+            lastWaves.put(transfer.getToId(), wave);
+            if (wave == waves.size()) {
+                waves.add(new ArrayList<>());
+            }
+            waves.get(wave).add(i);
+        }
+        return waves;
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    static int maximumPoolSize(HikariDataSource dataSource) {
+        if (dataSource.getMaximumPoolSize() < 1) {
+            //설정하지 않았으면 풀이 시작될 때(첫 getConnection) 기본값으로 정해진다.
+            try (Connection con = dataSource.getConnection()) {
+                log.info("start pool to read maximumPoolSize con={}", con);
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return dataSource.getMaximumPoolSize();
+    }
+
+    private TransferResult transfer(Transfer transfer) {
+        try {
+            memberService.accountTransfer(transfer.getFromId(), transfer.getToId(), transfer.getAmount());
+            return TransferResult.success(transfer);
+        } catch (RuntimeException e) {
+            log.info("transfer failed transfer={}", transfer, e);
+            return TransferResult.failure(transfer, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package hello.jdbc.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 재시도 정책 - retryOn 예외면 maxAttempts 번까지 다시 실행
+ * 대기 시간은 full jitter: 0 ~ min(maxBackoff, baseBackoff * 2^(attempt-1)) 사이 무작위
+ * 같은 행에서 충돌한 트랜잭션들이 같은 간격으로 다시 충돌하지 않도록 흩어준다.
+ *
+ * 트랜잭션 밖(@Transactional 프록시 호출 바깥)에서 감싸야 한다. 재시도마다 새 트랜잭션으로 다시 조회한다.
+ */
+@Slf4j
+public class RetryPolicy {
+
+    private final int maxAttempts;
+    private final long baseBackoffNanos;
+    private final long maxBackoffNanos;
+    private final List<Class<? extends RuntimeException>> retryOn;
+
+    private final LongAdder retryCount = new LongAdder();
+    private final LongAdder exhaustedCount = new LongAdder();
+
+    public RetryPolicy(int maxAttempts, Duration baseBackoff, Duration maxBackoff,
+                       List<Class<? extends RuntimeException>> retryOn) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be positive. maxAttempts=" + maxAttempts);
+        }
+        this.maxAttempts = maxAttempts;
+        this.baseBackoffNanos = baseBackoff.toNanos();
+        this.maxBackoffNanos = maxBackoff.toNanos();
+        this.retryOn = List.copyOf(retryOn);
+    }
+
+    public void run(Runnable action) {
+        call(() -> {
+            action.run();
+            return null;
+        });
+    }
+
+    public <T> T call(Supplier<T> action) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return action.get();
+            } catch (RuntimeException e) {
+                if (!isRetryable(e)) {
+                    throw e;
+                }
+                if (attempt >= maxAttempts) {
+                    exhaustedCount.increment();
+                    log.info("retry exhausted attempts={}", attempt, e);
+                    throw e;
+                }
+                retryCount.increment();
+                log.debug("retry attempt={}, cause={}", attempt, e.toString());
+                backoff(attempt);
+            }
+        }
+    }
+
+    public long getRetryCount() {
+        return retryCount.sum();
+    }
+
+    /**
+     * maxAttempts 번 모두 실패한 호출 수
+     */
+    public long getExhaustedCount() {
+        return exhaustedCount.sum();
+    }
+
+    private boolean isRetryable(RuntimeException e) {
+        for (Class<? extends RuntimeException> type : retryOn) {
+            if (type.isInstance(e)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void backoff(int attempt) {
+        //2^(attempt-1) 이 long 을 넘지 않도록 지수를 제한
+        long ceiling = Math.min(maxBackoffNanos, baseBackoffNanos << Math.min(attempt - 1, 30));
+        if (ceiling <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("retry backoff interrupted", e);
+        }
+    }
+}
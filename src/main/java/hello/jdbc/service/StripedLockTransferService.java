@@ -0,0 +1,17 @@
+package hello.jdbc.service;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * LockStripes 로 두 회원의 stripe 를 잡은 뒤 트랜잭션을 시작
+ * memberService 는 @Transactional 프록시이므로 락 -> 트랜잭션(커넥션 획득) -> 커밋 -> 락 해제 순서가 된다.
+ */
+@RequiredArgsConstructor
+public class StripedLockTransferService {
+    private final MemberServiceV4 memberService;
+    private final LockStripes lockStripes;
+
+    public void accountTransfer(String fromId, String toId, int transferMoney) {
+        lockStripes.runWithLocks(fromId, toId, () -> memberService.accountTransfer(fromId, toId, transferMoney));
+    }
+}
@@ -0,0 +1,116 @@
+package hello.jdbc.service;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.domain.NettingResult;
+import hello.jdbc.domain.Transfer;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.TransferAuditRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.UUID;
+
+/**
+ * 이체 묶음을 회원별 순변동(net delta)으로 상계해서 회원마다 update 를 한 번만 실행
+ * 예) 결제자 1000명 -> 가맹점 1명: update 2000번 -> 1001번, 가맹점 행 락도 한 번만 잡는다.
+ *
+ * 잔액 검증은 상계 결과 기준이다. (묶음 안에서 먼저 입금받은 돈으로 이체하는 것도 허용)
+ * 한 회원이라도 잔액이 음수가 되면 묶음 전체를 롤백한다.
+ * 원래 이체 내역은 같은 트랜잭션에서 transfer_audit 에 건별로 남긴다.
+ */
+@Slf4j
+public class TransferNettingService {
+    private final MemberRepository repository;
+    private final TransferAuditRepository auditRepository;
+    private final TransactionTemplate txTemplate;
+
+    public TransferNettingService(MemberRepository repository, TransferAuditRepository auditRepository,
+                                  PlatformTransactionManager transactionManager) {
+        this.repository = repository;
+        this.auditRepository = auditRepository;
+        this.txTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public NettingResult netTransfer(List<Transfer> transfers) {
+        NetDeltas netDeltas = net(transfers);
+        String batchId = UUID.randomUUID().toString();
+        int updatedMemberCount = txTemplate.execute(status -> apply(batchId, transfers, netDeltas));
+        log.info("net transfer batchId={}, transfers={}, updatedMembers={}", batchId, transfers.size(), updatedMemberCount);
+        return new NettingResult(batchId, transfers.size(), updatedMemberCount);
+    }
+
+    /**
+     * member_id 를 정렬 순서대로 0..n-1 로 번호를 매기고 long[] 에 누적한다. (Map<String, Long> 박싱 없음)
+     * 정렬 순서로 update 하므로 락 순서도 고정된다.
+     */
+    private NetDeltas net(List<Transfer> transfers) {
+        TreeSet<String> sortedIds = new TreeSet<>();
+        for (Transfer transfer : transfers) {
+            if (transfer.getAmount() <= 0) {
+                throw new IllegalArgumentException("transferMoney must be positive. transferMoney=" + transfer.getAmount());
+            }
+            if (transfer.getFromId().equals(transfer.getToId())) {
+                throw new IllegalArgumentException("같은 회원에게 이체할 수 없습니다. memberId=" + transfer.getFromId());
+            }
+            sortedIds.add(transfer.getFromId());
+            sortedIds.add(transfer.getToId());
+        }
+
+        List<String> memberIds = new ArrayList<>(sortedIds);
+        Map<String, Integer> indexes = new HashMap<>();
+        for (int i = 0; i < memberIds.size(); i++) {
+            indexes.put(memberIds.get(i), i);
+        }
+        long[] deltas = new long[memberIds.size()];
+        for (Transfer transfer : transfers) {
+            deltas[indexes.get(transfer.getFromId())] -= transfer.getAmount();
+            deltas[indexes.get(transfer.getToId())] += transfer.getAmount();
+        }
+        return new NetDeltas(memberIds, deltas);
+    }
+
+    private int apply(String batchId, List<Transfer> transfers, NetDeltas netDeltas) {
+        List<String> memberIds = netDeltas.memberIds();
+        long[] deltas = netDeltas.deltas();
+        Map<String, Member> members = repository.findByIdsForUpdate(memberIds);
+        for (int i = 0; i < memberIds.size(); i++) {
+            Member member = members.get(memberIds.get(i));
+            if (member == null) {
+                throw new IllegalStateException("회원 없음 memberId=" + memberIds.get(i));
+            }
+            long money = member.getMoney() + deltas[i];
+            if (money < 0) {
+                throw new IllegalStateException("잔액 부족 memberId=" + member.getMemberId() + ", netDelta=" + deltas[i]);
+            }
+            if (money > Integer.MAX_VALUE) {
+                throw new IllegalStateException("잔액 한도 초과 memberId=" + member.getMemberId() + ", netDelta=" + deltas[i]);
+            }
+        }
+
+        int updatedMemberCount = 0;
+        for (int i = 0; i < memberIds.size(); i++) {
+            if (deltas[i] == 0) {
+                continue;
+            }
+            //위에서 범위를 확인했으므로 int 로 줄여도 넘치지 않는다.
+            int resultSize = deltas[i] < 0
+                    ? repository.withdrawIfSufficient(memberIds.get(i), (int) -deltas[i])
+                    : repository.addMoney(memberIds.get(i), (int) deltas[i]);
+            if (resultSize != 1) {
+                throw new IllegalStateException("잔액 부족 또는 회원 없음 memberId=" + memberIds.get(i));
+            }
+            updatedMemberCount++;
+        }
+        auditRepository.saveAll(batchId, transfers);
+        return updatedMemberCount;
+    }
+
+    private record NetDeltas(List<String> memberIds, long[] deltas) {
+    }
+}
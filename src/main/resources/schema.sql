@@ -0,0 +1,68 @@
+create table if not exists member (
+    member_id varchar(10),
+    money integer not null default 0,
+    primary key (member_id)
+);
+
+-- 노드간 캐시 무효화용 변경 로그 (MemberChangeLog)
+create table if not exists member_change_log (
+    seq bigint auto_increment primary key,
+    member_id varchar(10) not null,
+    changed_at timestamp default current_timestamp not null
+);
+create index if not exists idx_member_change_log_changed_at on member_change_log (changed_at);
+
+-- 상계(netting) 이체의 원래 이체 내역 (TransferAuditRepository)
+create table if not exists transfer_audit (
+    seq bigint auto_increment primary key,
+    batch_id varchar(36) not null,
+    from_id varchar(10) not null,
+    to_id varchar(10) not null,
+    amount integer not null,
+    created_at timestamp default current_timestamp not null
+);
+create index if not exists idx_transfer_audit_batch_id on transfer_audit (batch_id);
+
+-- 낙관적 락 - 변경할 때마다 1씩 증가 (update ... where version=?)
+alter table member add column if not exists version bigint default 0 not null;
+
+-- 핫 계좌 잔액 분산 (HotMemberRepository)
+-- 잔액 = member.money + sum(member_balance_slot.money)
+create table if not exists hot_member (
+    member_id varchar(10) primary key,
+    slots integer not null
+);
+create table if not exists member_balance_slot (
+    member_id varchar(10) not null,
+    slot integer not null,
+    money integer default 0 not null,
+    version bigint default 0 not null,
+    primary key (member_id, slot)
+);
+
+-- hi/lo id 발급 (HiLoIdAllocator) - next value 한번에 blockSize 개의 id 를 예약
+create sequence if not exists member_id_seq start with 1;
+
+-- 이체 원장 (LedgerMemberRepository) - 잔액 변경은 insert 만
+-- 잔액 = member.money (마지막 fold 시점 스냅샷) + sum(folded = false 인 delta)
+-- folded: LedgerCompactor 가 member.money 로 옮긴 행 (delta 는 바꾸지 않고 이력으로 남긴다)
+create table if not exists transfer_ledger (
+    seq bigint auto_increment primary key,
+    member_id varchar(10) not null,
+    delta integer not null,
+    folded boolean default false not null,
+    created_at timestamp default current_timestamp not null
+);
+-- 잔액 조회 (member_id = ? and folded = false)
+create index if not exists idx_transfer_ledger_member_folded on transfer_ledger (member_id, folded);
+-- LedgerCompactor 의 fold 대상 회원 조회 (folded = false) - folded 행이 쌓여도 안 읽는다.
+create index if not exists idx_transfer_ledger_folded_member on transfer_ledger (folded, member_id);
+
+-- write-behind 로그가 DB 에 반영된 위치 (WriteBehindMemberRepository)
+-- 회원 행 변경과 같은 트랜잭션에서 갱신 -> 로그를 다시 읽을 때 applied_seq 이하는 건너뛴다. (한 번만 반영)
+create table if not exists write_behind_applied (
+    log_id varchar(64) not null,
+    member_id varchar(10) not null,
+    applied_seq bigint not null,
+    primary key (log_id, member_id)
+);
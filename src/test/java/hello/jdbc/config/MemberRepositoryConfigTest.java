@@ -0,0 +1,21 @@
+package hello.jdbc.config;
+
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.mvstore.MvStoreMemberRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = MemberRepositoryConfig.ENGINE + "=mvstore")
+public class MemberRepositoryConfigTest {
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @Test
+    void mvStoreEngine() {
+        assertThat(memberRepository).isInstanceOf(MvStoreMemberRepository.class);
+    }
+}
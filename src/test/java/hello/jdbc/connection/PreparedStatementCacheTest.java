@@ -0,0 +1,132 @@
+package hello.jdbc.connection;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV3;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.interceptor.DefaultTransactionAttribute;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import static hello.jdbc.constants.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+public class PreparedStatementCacheTest {
+
+    private HikariDataSource dataSource;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new HikariDataSource();
+        dataSource.setPoolName("testPool");
+        dataSource.setJdbcUrl(URL);
+        dataSource.setUsername(USERNAME);
+        dataSource.setPassword(PASSWORD);
+        dataSource.setMaximumPoolSize(1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        dataSource.close();
+    }
+
+    @Test
+    void transferParsesEachStatementOnce() throws SQLException {
+        PreparedStatementCache statementCache = new PreparedStatementCache();
+        MemberRepositoryV3 repository = new MemberRepositoryV3(dataSource, statementCache);
+        PlatformTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        TransactionStatus status = transactionManager.getTransaction(new DefaultTransactionAttribute());
+        repository.save(new Member("memberA", 10000));
+        repository.save(new Member("memberB", 10000));
+        long missCount = statementCache.getMissCount();
+
+        //이체와 같은 순서: findById 2회, update 2회
+        Member memberA = repository.findById("memberA");
+        Member memberB = repository.findById("memberB");
+        repository.update("memberA", memberA.getMoney() - 2000);
+        repository.update("memberB", memberB.getMoney() + 2000);
+        transactionManager.rollback(status);
+
+        log.info("hit={}, miss={}", statementCache.getHitCount(), statementCache.getMissCount());
+        assertThat(statementCache.getMissCount() - missCount).isEqualTo(2);
+        assertThat(statementCache.getHitCount()).isEqualTo(3);
+    }
+
+    @Test
+    void reuseAfterConnectionReturnedToPool() throws SQLException {
+        PreparedStatementCache statementCache = new PreparedStatementCache();
+        String sql = "select * from member where member_id = ?";
+
+        PreparedStatement first;
+        try (Connection con = dataSource.getConnection()) {
+            first = statementCache.prepareStatement(con, sql);
+            statementCache.release(first);
+        }
+        //풀 크기 1 -> 같은 물리 커넥션, 프록시가 닫아도 캐시된 statement 는 살아있다
+        try (Connection con = dataSource.getConnection()) {
+            PreparedStatement second = statementCache.prepareStatement(con, sql);
+            assertThat(second).isSameAs(first);
+            assertThat(second.isClosed()).isFalse();
+            statementCache.release(second);
+        }
+        assertThat(statementCache.getHitCount()).isEqualTo(1);
+        assertThat(statementCache.getMissCount()).isEqualTo(1);
+    }
+
+    @Test
+    void evictLeastRecentlyUsed() throws SQLException {
+        PreparedStatementCache statementCache = new PreparedStatementCache(1);
+        try (Connection con = dataSource.getConnection()) {
+            PreparedStatement first = statementCache.prepareStatement(con, "select * from member where member_id = ?");
+            statementCache.prepareStatement(con, "delete from member where member_id = ?");
+            assertThat(first.isClosed()).isTrue();
+            assertThat(statementCache.getEvictionCount()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void disabledClosesOnRelease() throws SQLException {
+        PreparedStatementCache statementCache = PreparedStatementCache.disabled();
+        try (Connection con = dataSource.getConnection()) {
+            PreparedStatement pstmt = statementCache.prepareStatement(con, "select * from member where member_id = ?");
+            statementCache.release(pstmt);
+            assertThat(pstmt.isClosed()).isTrue();
+        }
+        assertThat(statementCache.getCachedConnectionCount()).isZero();
+    }
+
+    @Test
+    void evictWhenPoolClosesPhysicalConnection() throws Exception {
+        PreparedStatementCache statementCache = new PreparedStatementCache();
+        HikariDataSource trackedDataSource = new HikariDataSource();
+        trackedDataSource.setPoolName("trackedPool");
+        trackedDataSource.setMaximumPoolSize(1);
+        trackedDataSource.setDataSource(statementCache.trackConnectionClose(new DriverManagerDataSource(URL, USERNAME, PASSWORD)));
+
+        PreparedStatement pstmt;
+        try (Connection con = trackedDataSource.getConnection()) {
+            pstmt = statementCache.prepareStatement(con, "select * from member where member_id = ?");
+            statementCache.release(pstmt);
+        }
+        assertThat(statementCache.getCachedConnectionCount()).isEqualTo(1);
+
+        //풀에서 퇴출 -> 물리 커넥션 close (별도 쓰레드) -> 다음 miss 를 기다리지 않고 항목 제거
+        trackedDataSource.getHikariPoolMXBean().softEvictConnections();
+        for (int i = 0; i < 50 && statementCache.getCachedConnectionCount() > 0; i++) {
+            Thread.sleep(100);
+        }
+        assertThat(statementCache.getCachedConnectionCount()).isZero();
+        assertThat(pstmt.isClosed()).isTrue();
+        trackedDataSource.close();
+    }
+}
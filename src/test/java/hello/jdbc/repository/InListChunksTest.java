@@ -0,0 +1,36 @@
+package hello.jdbc.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class InListChunksTest {
+
+    @Test
+    void padToChunkSize() {
+        List<List<String>> chunks = InListChunks.chunk(List.of("a", "b", "a", "c"));
+        //중복 제거 후 3건 -> 4칸, 남는 자리는 마지막 id 로 채움
+        assertThat(chunks).containsExactly(List.of("a", "b", "c", "c"));
+    }
+
+    @Test
+    void splitByMaxChunkSize() {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < InListChunks.MAX_CHUNK_SIZE + 10; i++) {
+            ids.add("member" + i);
+        }
+        List<List<String>> chunks = InListChunks.chunk(ids);
+        assertThat(chunks).hasSize(2);
+        assertThat(chunks.get(0)).hasSize(InListChunks.MAX_CHUNK_SIZE);
+        assertThat(chunks.get(1)).hasSize(16);
+    }
+
+    @Test
+    void sql() {
+        assertThat(InListChunks.sql("select * from member where member_id in ", 4))
+                .isEqualTo("select * from member where member_id in (?, ?, ?, ?)");
+    }
+}
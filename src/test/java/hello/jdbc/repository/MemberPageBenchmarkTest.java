@@ -0,0 +1,113 @@
+package hello.jdbc.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.domain.Member;
+import hello.jdbc.domain.MemberPage;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static hello.jdbc.constants.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * keyset(seek) 페이징 vs OFFSET 페이징
+ * ./gradlew benchmark
+ */
+@Slf4j
+@Tag("benchmark")
+public class MemberPageBenchmarkTest {
+    private static final int MEMBER_COUNT = 100_000;
+    private static final int PAGE_SIZE = 100;
+    private static final int ROUNDS = 20;
+
+    private HikariDataSource dataSource;
+    private JdbcTemplate template;
+    private MemberRepositoryV5 repository;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new HikariDataSource();
+        dataSource.setPoolName("benchmarkPool");
+        dataSource.setJdbcUrl(URL);
+        dataSource.setUsername(USERNAME);
+        dataSource.setPassword(PASSWORD);
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+        template = new JdbcTemplate(dataSource);
+        repository = new MemberRepositoryV5(dataSource);
+
+        template.update("delete from member where member_id like 'bench%'");
+        List<Member> members = new ArrayList<>(MEMBER_COUNT);
+        for (int i = 0; i < MEMBER_COUNT; i++) {
+            members.add(new Member(benchId(i), i));
+        }
+        repository.saveAll(members);
+    }
+
+    @AfterEach
+    void tearDown() {
+        template.update("delete from member where member_id like 'bench%'");
+        dataSource.close();
+    }
+
+    @Test
+    void keysetVsOffset() {
+        for (int position : new int[]{0, 10_000, 50_000, 90_000, MEMBER_COUNT - PAGE_SIZE}) {
+            //같은 위치의 페이지를 두 방식으로 조회
+            String cursor = position == 0 ? "bench" : benchId(position - 1);
+            List<Member> keysetPage = repository.findPage(cursor, PAGE_SIZE).getMembers();
+            List<Member> offsetPage = findPageByOffset(position);
+            assertThat(keysetPage).isEqualTo(offsetPage);
+
+            long keysetNanos = measure(() -> repository.findPage(cursor, PAGE_SIZE));
+            long offsetNanos = measure(() -> findPageByOffset(position));
+            log.info("position={} keyset={}us offset={}us", position, keysetNanos / 1000, offsetNanos / 1000);
+        }
+    }
+
+    @Test
+    void walkAllPages() {
+        long start = System.nanoTime();
+        int count = 0;
+        MemberPage page = repository.findPage("bench", PAGE_SIZE);
+        while (true) {
+            count += (int) page.getMembers().stream().filter(m -> m.getMemberId().startsWith("bench")).count();
+            if (!page.hasNext() || !page.getNextCursor().startsWith("bench")) {
+                break;
+            }
+            page = repository.findPage(page.getNextCursor(), PAGE_SIZE);
+        }
+        log.info("keyset walk count={} elapsed={}ms", count, (System.nanoTime() - start) / 1_000_000);
+        assertThat(count).isEqualTo(MEMBER_COUNT);
+    }
+
+    private List<Member> findPageByOffset(int offset) {
+        String sql = "select * from member where member_id like 'bench%' order by member_id limit ? offset ?";
+        return template.query(sql, (rs, rowNum) -> new Member(rs.getString("member_id"), rs.getInt("money")),
+                PAGE_SIZE, offset);
+    }
+
+    private long measure(Runnable query) {
+        //warm up
+        for (int i = 0; i < ROUNDS; i++) {
+            query.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            query.run();
+        }
+        return (System.nanoTime() - start) / ROUNDS;
+    }
+
+    private static String benchId(int i) {
+        return String.format("bench%05d", i);
+    }
+}
@@ -3,9 +3,12 @@ package hello.jdbc.repository;
 import com.zaxxer.hikari.HikariDataSource;
 import hello.jdbc.domain.Member;
 import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.interceptor.DefaultTransactionAttribute;
@@ -22,6 +25,15 @@ import static org.assertj.core.api.Assertions.assertThatThrownBy;
 public class MemberRepositoryV4_1Test {
     private MemberRepositoryV4_1 repository;
 
+    /**
+     * version 컬럼 등 schema.sql 이 필요하다. (스프링 부트 테스트 실행 순서와 무관하게)
+     */
+    @BeforeAll
+    static void createSchema() {
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql"))
+                .execute(new DriverManagerDataSource(URL, USERNAME, PASSWORD));
+    }
+
     @Test
     void driverManagerDataSourceCommitTest() {
         DataSource dataSource = getDriverManagerDataSourceConnection();
@@ -4,15 +4,21 @@ import com.zaxxer.hikari.HikariDataSource;
 import hello.jdbc.domain.Member;
 import lombok.extern.slf4j.Slf4j;
 import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.BadSqlGrammarException;
 import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.interceptor.DefaultTransactionAttribute;
 
 import javax.sql.DataSource;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 
 import static hello.jdbc.constants.ConnectionConst.*;
@@ -24,6 +30,15 @@ import static org.assertj.core.api.Assertions.assertThatThrownBy;
 public class MemberRepositoryV4_2Test {
     private MemberRepositoryV4_2 repository;
 
+    /**
+     * version 컬럼 등 schema.sql 이 필요하다. (스프링 부트 테스트 실행 순서와 무관하게)
+     */
+    @BeforeAll
+    static void createSchema() {
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql"))
+                .execute(new DriverManagerDataSource(URL, USERNAME, PASSWORD));
+    }
+
     @Test
     void driverManagerDataSourceCommitTest() {
         DataSource dataSource = getDriverManagerDataSourceConnection();
@@ -61,6 +76,48 @@ public class MemberRepositoryV4_2Test {
         transactionManager.commit(status);
     }
 
+    @Test
+    void saveAllTest() {
+        DataSource dataSource = getHikariDataSource();
+        repository = new MemberRepositoryV4_2(dataSource);
+        PlatformTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        TransactionStatus status = transactionManager.getTransaction(new DefaultTransactionAttribute());
+
+        //batchSize 보다 많은 건수 -> executeBatch 2회
+        List<Member> members = List.of(
+                new Member("memberA", 10000),
+                new Member("memberB", 20000),
+                new Member("memberC", 30000));
+        List<Member> savedMembers = repository.saveAll(members, 2);
+        assertThat(savedMembers).containsExactlyElementsOf(members);
+        assertThat(repository.findById("memberA").getMoney()).isEqualTo(10000);
+        assertThat(repository.findById("memberC").getMoney()).isEqualTo(30000);
+
+        //실패한 행의 memberId 가 예외 메시지에 포함
+        assertThatThrownBy(() -> repository.saveAll(List.of(new Member("memberD", 0), new Member("memberB", 0)), 2))
+                .isInstanceOf(DuplicateKeyException.class)
+                .hasMessageContaining("memberId=memberB");
+        transactionManager.rollback(status);
+    }
+
+    @Test
+    void findAllByIdsTest() {
+        DataSource dataSource = getHikariDataSource();
+        repository = new MemberRepositoryV4_2(dataSource);
+        PlatformTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        TransactionStatus status = transactionManager.getTransaction(new DefaultTransactionAttribute());
+        repository.saveAll(List.of(
+                new Member("memberA", 10000),
+                new Member("memberB", 20000),
+                new Member("memberC", 30000)));
+
+        //요청 순서 유지, 없는 id 는 예외 없이 빠진다
+        Map<String, Member> findMembers = repository.findAllByIds(List.of("memberC", "memberrrr", "memberA"));
+        assertThat(findMembers.keySet()).containsExactly("memberC", "memberA");
+        assertThat(findMembers.get("memberC").getMoney()).isEqualTo(30000);
+        transactionManager.rollback(status);
+    }
+
     private void transactionManagerCommit(DataSource dataSource) {
         repository = new MemberRepositoryV4_2(dataSource);
         PlatformTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
@@ -2,16 +2,29 @@ package hello.jdbc.repository;
 
 import com.zaxxer.hikari.HikariDataSource;
 import hello.jdbc.domain.Member;
+import hello.jdbc.domain.MemberPage;
+import hello.jdbc.domain.Transfer;
+import hello.jdbc.repository.ex.OptimisticLockConflictException;
 import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.interceptor.DefaultTransactionAttribute;
 
 import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static hello.jdbc.constants.ConnectionConst.*;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -23,6 +36,15 @@ import static org.assertj.core.api.Assertions.assertThatThrownBy;
 public class MemberRepositoryV5Test {
     private MemberRepositoryV5 repository;
 
+    /**
+     * version 컬럼 등 schema.sql 이 필요하다. (스프링 부트 테스트 실행 순서와 무관하게)
+     */
+    @BeforeAll
+    static void createSchema() {
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql"))
+                .execute(new DriverManagerDataSource(URL, USERNAME, PASSWORD));
+    }
+
     @Test
     void driverManagerDataSourceCommitTest() {
         DataSource dataSource = getDriverManagerDataSourceConnection();
@@ -47,6 +69,197 @@ public class MemberRepositoryV5Test {
         transactionManagerRollback(dataSource);
     }
 
+    @Test
+    void saveAllTest() {
+        DataSource dataSource = getHikariDataSource();
+        repository = new MemberRepositoryV5(dataSource);
+        PlatformTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        TransactionStatus status = transactionManager.getTransaction(new DefaultTransactionAttribute());
+
+        //batchSize 보다 많은 건수 -> executeBatch 2회
+        List<Member> members = List.of(
+                new Member("memberA", 10000),
+                new Member("memberB", 20000),
+                new Member("memberC", 30000));
+        List<Member> savedMembers = repository.saveAll(members, 2);
+        assertThat(savedMembers).containsExactlyElementsOf(members);
+        assertThat(repository.findById("memberA").getMoney()).isEqualTo(10000);
+        assertThat(repository.findById("memberC").getMoney()).isEqualTo(30000);
+
+        //실패한 행의 memberId 가 예외 메시지에 포함
+        assertThatThrownBy(() -> repository.saveAll(List.of(new Member("memberD", 0), new Member("memberB", 0)), 2))
+                .isInstanceOf(DuplicateKeyException.class)
+                .hasMessageContaining("memberId=memberB");
+        transactionManager.rollback(status);
+    }
+
+    @Test
+    void findAllByIdsTest() {
+        DataSource dataSource = getHikariDataSource();
+        repository = new MemberRepositoryV5(dataSource);
+        PlatformTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        TransactionStatus status = transactionManager.getTransaction(new DefaultTransactionAttribute());
+        repository.saveAll(List.of(
+                new Member("memberA", 10000),
+                new Member("memberB", 20000),
+                new Member("memberC", 30000)));
+
+        //요청 순서 유지, 없는 id 는 예외 없이 빠진다
+        Map<String, Member> findMembers = repository.findAllByIds(List.of("memberC", "memberrrr", "memberA"));
+        assertThat(findMembers.keySet()).containsExactly("memberC", "memberA");
+        assertThat(findMembers.get("memberC").getMoney()).isEqualTo(30000);
+        transactionManager.rollback(status);
+    }
+
+    @Test
+    void scanTest() {
+        DataSource dataSource = getHikariDataSource();
+        repository = new MemberRepositoryV5(dataSource);
+        PlatformTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        TransactionStatus status = transactionManager.getTransaction(new DefaultTransactionAttribute());
+        repository.saveAll(List.of(
+                new Member("memberA", 10000),
+                new Member("memberB", 20000),
+                new Member("memberC", 30000)));
+
+        //fetchSize 보다 많은 건수도 끝까지 읽는다
+        List<String> scannedIds = new ArrayList<>();
+        repository.scan(2, member -> scannedIds.add(member.getMemberId()));
+        assertThat(scannedIds).contains("memberA", "memberB", "memberC");
+        transactionManager.rollback(status);
+    }
+
+    @Test
+    void findPageTest() {
+        DataSource dataSource = getHikariDataSource();
+        repository = new MemberRepositoryV5(dataSource);
+        PlatformTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        TransactionStatus status = transactionManager.getTransaction(new DefaultTransactionAttribute());
+        repository.saveAll(List.of(
+                new Member("memberA", 10000),
+                new Member("memberB", 20000),
+                new Member("memberC", 30000)));
+
+        MemberPage page = repository.findPage("member", 2);
+        assertThat(page.getMembers()).extracting("memberId").containsExactly("memberA", "memberB");
+        assertThat(page.getNextCursor()).isEqualTo("memberB");
+
+        MemberPage nextPage = repository.findPage(page.getNextCursor(), 2);
+        assertThat(nextPage.getMembers()).extracting("memberId").startsWith("memberC");
+
+        //역순
+        MemberPage descPage = repository.findPage("memberC", 2, true);
+        assertThat(descPage.getMembers()).extracting("memberId").containsExactly("memberB", "memberA");
+        transactionManager.rollback(status);
+    }
+
+    @Test
+    void addMoneyAndWithdrawIfSufficientTest() {
+        DataSource dataSource = getHikariDataSource();
+        repository = new MemberRepositoryV5(dataSource);
+        PlatformTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        TransactionStatus status = transactionManager.getTransaction(new DefaultTransactionAttribute());
+        repository.save(new Member("memberA", 10000));
+
+        assertThat(repository.addMoney("memberA", 500)).isEqualTo(1);
+        assertThat(repository.withdrawIfSufficient("memberA", 10500)).isEqualTo(1);
+        //잔액 부족, 없는 회원 -> 0
+        assertThat(repository.withdrawIfSufficient("memberA", 1)).isEqualTo(0);
+        assertThat(repository.addMoney("memberrrr", 500)).isEqualTo(0);
+        assertThat(repository.findById("memberA").getMoney()).isEqualTo(0);
+        transactionManager.rollback(status);
+    }
+
+    @Test
+    void transferTest() {
+        DataSource dataSource = getHikariDataSource();
+        repository = new MemberRepositoryV5(dataSource);
+        PlatformTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        TransactionStatus status = transactionManager.getTransaction(new DefaultTransactionAttribute());
+        repository.save(new Member("memberA", 10000));
+        repository.save(new Member("memberB", 0));
+
+        assertThat(repository.transfer("memberA", "memberB", 4000)).isEqualTo(2);
+        //잔액 부족, 없는 입금 회원, 같은 회원 -> 아무것도 바꾸지 않고 0
+        assertThat(repository.transfer("memberA", "memberB", 7000)).isEqualTo(0);
+        assertThat(repository.transfer("memberA", "memberrrr", 1000)).isEqualTo(0);
+        assertThat(repository.transfer("memberA", "memberA", 1000)).isEqualTo(0);
+        assertThat(repository.transferAll(List.of(
+                new Transfer("memberA", "memberB", 1000),
+                new Transfer("memberB", "memberA", 9000)))).containsExactly(2, 0);
+        assertThat(repository.findById("memberA")).isEqualTo(new Member("memberA", 5000, 2));
+        assertThat(repository.findById("memberB")).isEqualTo(new Member("memberB", 5000, 2));
+        transactionManager.rollback(status);
+    }
+
+    /**
+     * 잔액 확인 뒤 출금 행 락을 기다리는 사이 다른 트랜잭션이 잔액을 줄이고 커밋 -> 입금만 반영된 행을 되돌리고 0
+     */
+    @Test
+    void transferRaceUndoesCreditTest() throws Exception {
+        DataSource dataSource = getHikariDataSource();
+        repository = new MemberRepositoryV5(dataSource);
+        PlatformTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        repository.save(new Member("memberA", 1000));
+        repository.save(new Member("memberB", 0));
+        try {
+            TransactionStatus status = transactionManager.getTransaction(new DefaultTransactionAttribute());
+            assertThat(repository.withdrawIfSufficient("memberA", 600)).isEqualTo(1);
+            //트랜잭션 밖에서 이체 -> memberA 행 락을 기다린다.
+            Future<Integer> transfer = executor.submit(() -> repository.transfer("memberA", "memberB", 600));
+            Thread.sleep(300);
+            transactionManager.commit(status);
+
+            assertThat(transfer.get()).isEqualTo(0);
+            assertThat(repository.findById("memberA")).isEqualTo(new Member("memberA", 400, 1));
+            assertThat(repository.findById("memberB")).isEqualTo(new Member("memberB", 0, 0));
+        } finally {
+            executor.shutdown();
+            repository.delete("memberA");
+            repository.delete("memberB");
+        }
+    }
+
+    @Test
+    void optimisticUpdateTest() {
+        DataSource dataSource = getHikariDataSource();
+        repository = new MemberRepositoryV5(dataSource);
+        PlatformTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        TransactionStatus status = transactionManager.getTransaction(new DefaultTransactionAttribute());
+        repository.save(new Member("memberA", 10000));
+        Member member = repository.findById("memberA");
+        assertThat(member.getVersion()).isEqualTo(0);
+
+        repository.update("memberA", 5000, member.getVersion());
+        //조회한 뒤 변경됨 -> version 불일치
+        assertThatThrownBy(() -> repository.update("memberA", 6000, member.getVersion()))
+                .isInstanceOf(OptimisticLockConflictException.class);
+        //다른 변경도 version 을 올린다.
+        repository.addMoney("memberA", 500);
+        assertThat(repository.findById("memberA")).isEqualTo(new Member("memberA", 5500, 2));
+        transactionManager.rollback(status);
+    }
+
+    @Test
+    void insertIfAbsentTest() {
+        DataSource dataSource = getHikariDataSource();
+        repository = new MemberRepositoryV5(dataSource);
+        PlatformTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        TransactionStatus status = transactionManager.getTransaction(new DefaultTransactionAttribute());
+
+        assertThat(repository.insertIfAbsent(new Member("memberA", 10000))).isTrue();
+        //이미 있으면 예외 없이 false, 기존 값 유지
+        assertThat(repository.insertIfAbsent(new Member("memberA", 20000))).isFalse();
+        assertThat(repository.findById("memberA").getMoney()).isEqualTo(10000);
+
+        assertThat(repository.saveOrUpdate(new Member("memberA", 30000))).isFalse();
+        assertThat(repository.saveOrUpdate(new Member("memberB", 40000))).isTrue();
+        assertThat(repository.findById("memberA")).isEqualTo(new Member("memberA", 30000, 1));
+        assertThat(repository.findById("memberB")).isEqualTo(new Member("memberB", 40000, 0));
+        transactionManager.rollback(status);
+    }
+
     private void transactionManagerCommit(DataSource dataSource) {
         repository = new MemberRepositoryV5(dataSource);
         PlatformTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
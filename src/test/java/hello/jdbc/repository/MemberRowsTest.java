@@ -0,0 +1,38 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.domain.Member;
+import org.junit.jupiter.api.Test;
+
+import java.sql.BatchUpdateException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MemberRowsTest {
+    private final List<Member> members = List.of(
+            new Member("memberA", 0), new Member("memberB", 0), new Member("memberC", 0), new Member("memberD", 0));
+
+    @Test
+    void inRequestOrder() {
+        Map<String, Member> found = Map.of("memberC", members.get(2), "memberA", members.get(0));
+        assertThat(MemberRows.inRequestOrder(List.of("memberC", "memberX", "memberA"), found).keySet())
+                .containsExactly("memberC", "memberA");
+    }
+
+    @Test
+    void failedMemberIdsWhenDriverContinues() {
+        //두번째 batch(memberC, memberD) 를 끝까지 실행하고 실패한 행마다 EXECUTE_FAILED
+        BatchUpdateException e = new BatchUpdateException(new int[]{Statement.EXECUTE_FAILED, Statement.EXECUTE_FAILED});
+        assertThat(MemberRows.failedMemberIds(members, 2, e)).containsExactly("memberC", "memberD");
+    }
+
+    @Test
+    void failedMemberIdsWhenDriverStops() {
+        //첫번째 batch 의 memberB 에서 멈춤 -> 성공한 1건만
+        BatchUpdateException e = new BatchUpdateException(new int[]{1});
+        assertThat(MemberRows.failedMemberIds(members, 0, e)).containsExactly("memberB");
+        assertThat(MemberRows.failedMessage(members, 0, e)).isEqualTo("saveAll failed memberId=memberB");
+    }
+}
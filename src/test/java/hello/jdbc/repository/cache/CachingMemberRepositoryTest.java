@@ -0,0 +1,106 @@
+package hello.jdbc.repository.cache;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV5;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.interceptor.DefaultTransactionAttribute;
+
+import java.util.List;
+
+import static hello.jdbc.constants.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Slf4j
+public class CachingMemberRepositoryTest {
+
+    private HikariDataSource dataSource;
+    private PlatformTransactionManager transactionManager;
+    private CachingMemberRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new HikariDataSource();
+        dataSource.setPoolName("testPool");
+        dataSource.setJdbcUrl(URL);
+        dataSource.setUsername(USERNAME);
+        dataSource.setPassword(PASSWORD);
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+        transactionManager = new DataSourceTransactionManager(dataSource);
+        repository = new CachingMemberRepository(new MemberRepositoryV5(dataSource), 100);
+        repository.save(new Member("memberA", 10000));
+    }
+
+    @AfterEach
+    void tearDown() {
+        repository.delete("memberA");
+        dataSource.close();
+    }
+
+    @Test
+    void readThrough() {
+        Member first = repository.findById("memberA");
+        Member second = repository.findById("memberA");
+
+        assertThat(second).isEqualTo(first);
+        assertThat(second).isNotSameAs(first);
+        assertThat(repository.stats().missCount()).isEqualTo(1);
+        assertThat(repository.stats().hitCount()).isEqualTo(1);
+    }
+
+    @Test
+    void updateInvalidates() {
+        repository.findById("memberA");
+        repository.update("memberA", 20000);
+        assertThat(repository.findById("memberA").getMoney()).isEqualTo(20000);
+    }
+
+    @Test
+    void deleteInvalidates() {
+        repository.findById("memberA");
+        repository.delete("memberA");
+        assertThatThrownBy(() -> repository.findById("memberA"))
+                .isInstanceOf(EmptyResultDataAccessException.class);
+        repository.save(new Member("memberA", 0));
+    }
+
+    @Test
+    void rollbackLeavesNoStaleValue() {
+        repository.findById("memberA");
+
+        TransactionStatus status = transactionManager.getTransaction(new DefaultTransactionAttribute());
+        repository.update("memberA", 20000);
+        //트랜잭션 안에서는 자신이 변경한 값을 본다
+        assertThat(repository.findById("memberA").getMoney()).isEqualTo(20000);
+        transactionManager.rollback(status);
+
+        assertThat(repository.findById("memberA").getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    void noPopulateInsideTransaction() {
+        TransactionStatus status = transactionManager.getTransaction(new DefaultTransactionAttribute());
+        repository.findById("memberA");
+        transactionManager.commit(status);
+
+        assertThat(repository.stats().loadCount()).isZero();
+    }
+
+    @Test
+    void findAllByIdsUsesCache() {
+        repository.findById("memberA");
+        assertThat(repository.findAllByIds(List.of("memberrrr", "memberA")).keySet())
+                .containsExactly("memberA");
+        assertThat(repository.stats().hitCount()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,117 @@
+package hello.jdbc.repository.cache;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV5;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.interceptor.DefaultTransactionAttribute;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+
+import static hello.jdbc.constants.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 같은 DB 를 쓰는 노드 2개를 CachingMemberRepository 2개로 흉내낸다.
+ */
+@Slf4j
+public class MemberChangeLogPollerTest {
+
+    private HikariDataSource dataSource;
+    private PlatformTransactionManager transactionManager;
+    private CachingMemberRepository node1;
+    private CachingMemberRepository node2;
+    private MemberChangeLogPoller node2Poller;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new HikariDataSource();
+        dataSource.setPoolName("testPool");
+        dataSource.setJdbcUrl(URL);
+        dataSource.setUsername(USERNAME);
+        dataSource.setPassword(PASSWORD);
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+        transactionManager = new DataSourceTransactionManager(dataSource);
+
+        MemberChangeLog changeLog = new MemberChangeLog(dataSource);
+        node1 = new CachingMemberRepository(new MemberRepositoryV5(dataSource), 100, null, changeLog);
+        node2 = new CachingMemberRepository(new MemberRepositoryV5(dataSource), 100, null, changeLog);
+        node2Poller = new MemberChangeLogPoller(changeLog, node2, Duration.ofMillis(50), Duration.ofMinutes(10));
+        node1.save(new Member("memberA", 10000));
+        node1.save(new Member("memberB", 10000));
+    }
+
+    @AfterEach
+    void tearDown() {
+        node2Poller.close();
+        node1.delete("memberA");
+        node1.delete("memberB");
+        dataSource.close();
+    }
+
+    @Test
+    void otherNodeUpdateInvalidates() {
+        node2Poller.start();
+        assertThat(node2.findById("memberA").getMoney()).isEqualTo(10000);
+
+        TransactionStatus status = transactionManager.getTransaction(new DefaultTransactionAttribute());
+        node1.update("memberA", 20000);
+        transactionManager.commit(status);
+
+        node2Poller.poll();
+        assertThat(node2.findById("memberA").getMoney()).isEqualTo(20000);
+        log.info("change age last={}ms, max={}ms",
+                node2Poller.getLastChangeAgeMillis(), node2Poller.getMaxChangeAgeMillis());
+        assertThat(node2Poller.getInvalidationCount()).isPositive();
+    }
+
+    @Test
+    void rollbackLeavesNoLog() {
+        node2Poller.start();
+        node2Poller.poll();
+        long before = node2Poller.getInvalidationCount();
+
+        TransactionStatus status = transactionManager.getTransaction(new DefaultTransactionAttribute());
+        node1.update("memberA", 20000);
+        transactionManager.rollback(status);
+
+        node2Poller.poll();
+        assertThat(node2Poller.getInvalidationCount()).isEqualTo(before);
+    }
+
+    @Test
+    void lateCommitAfterManyLaterChangesInvalidates() throws SQLException {
+        node2Poller.start();
+        assertThat(node2.findById("memberB").getMoney()).isEqualTo(10000);
+
+        //seq 를 먼저 받고 늦게 커밋하는 트랜잭션
+        try (Connection con = dataSource.getConnection()) {
+            con.setAutoCommit(false);
+            try (Statement stmt = con.createStatement()) {
+                stmt.executeUpdate("update member set money=20000 where member_id='memberB'");
+                stmt.executeUpdate("insert into member_change_log (member_id) values ('memberB')");
+            }
+            //그 사이 커밋된 변경이 많아도 (seq 수와 무관하게) lookback 시간 동안은 다시 읽는다.
+            for (int i = 0; i < 150; i++) {
+                node1.update("memberA", i);
+            }
+            node2Poller.poll();
+            assertThat(node2.findById("memberB").getMoney()).isEqualTo(10000);
+            con.commit();
+        }
+
+        node2Poller.poll();
+        assertThat(node2.findById("memberB").getMoney()).isEqualTo(20000);
+    }
+}
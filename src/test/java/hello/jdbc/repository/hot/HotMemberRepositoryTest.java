@@ -0,0 +1,137 @@
+package hello.jdbc.repository.hot;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV5;
+import hello.jdbc.repository.ex.OptimisticLockConflictException;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.time.Duration;
+
+import static hello.jdbc.constants.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Slf4j
+public class HotMemberRepositoryTest {
+
+    private HikariDataSource dataSource;
+    private MemberRepositoryV5 memberRows;
+    private HotMemberRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new HikariDataSource();
+        dataSource.setPoolName("testPool");
+        dataSource.setJdbcUrl(URL);
+        dataSource.setUsername(USERNAME);
+        dataSource.setPassword(PASSWORD);
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+        memberRows = new MemberRepositoryV5(dataSource);
+        //member 행 입금은 모두 경합으로 센다.
+        repository = new HotMemberRepository(memberRows, dataSource, new DataSourceTransactionManager(dataSource), Duration.ZERO);
+        repository.save(new Member("memberA", 1000));
+    }
+
+    @AfterEach
+    void tearDown() {
+        repository.delete("memberA");
+        dataSource.close();
+    }
+
+    @Test
+    void creditGoesToSlots() {
+        repository.promote("memberA", 4);
+
+        for (int i = 0; i < 10; i++) {
+            repository.addMoney("memberA", 100);
+        }
+
+        //member 행은 그대로, 합계는 slot 포함
+        assertThat(memberRows.findById("memberA").getMoney()).isEqualTo(1000);
+        assertThat(repository.findById("memberA")).isEqualTo(new Member("memberA", 2000, 10));
+    }
+
+    @Test
+    void withdrawConsolidatesSlots() {
+        repository.promote("memberA", 4);
+        repository.addMoney("memberA", 500);
+
+        assertThat(repository.withdrawIfSufficient("memberA", 1200)).isEqualTo(1);
+        assertThat(repository.withdrawIfSufficient("memberA", 301)).isEqualTo(0);
+        assertThat(repository.findById("memberA").getMoney()).isEqualTo(300);
+        assertThat(memberRows.findById("memberA").getMoney()).isEqualTo(300);
+    }
+
+    @Test
+    void optimisticUpdateSeesSlotCredits() {
+        repository.promote("memberA", 4);
+        Member member = repository.findById("memberA");
+        repository.addMoney("memberA", 100);
+
+        assertThatThrownBy(() -> repository.update("memberA", 0, member.getVersion()))
+                .isInstanceOf(OptimisticLockConflictException.class);
+
+        Member current = repository.findById("memberA");
+        repository.update("memberA", 0, current.getVersion());
+        assertThat(repository.findById("memberA").getMoney()).isEqualTo(0);
+    }
+
+    @Test
+    void demoteMovesSlotsToMemberRow() {
+        repository.promote("memberA", 4);
+        repository.addMoney("memberA", 700);
+
+        repository.demote("memberA");
+
+        assertThat(repository.isHot("memberA")).isFalse();
+        assertThat(memberRows.findById("memberA").getMoney()).isEqualTo(1700);
+    }
+
+    @Test
+    void optimisticUpdateAcrossDemote() {
+        repository.promote("memberA", 4);
+        for (int i = 0; i < 3; i++) {
+            repository.addMoney("memberA", 100);
+        }
+        //version 3 (slot version 합계)
+        Member stale = repository.findById("memberA");
+
+        repository.demote("memberA");
+        assertThat(repository.findById("memberA").getVersion()).isGreaterThan(stale.getVersion());
+        //강등 후 변경이 이어져도 강등 전 version 으로 돌아가지 않는다.
+        repository.addMoney("memberA", 1);
+        repository.addMoney("memberA", 1);
+        assertThatThrownBy(() -> repository.update("memberA", 0, stale.getVersion()))
+                .isInstanceOf(OptimisticLockConflictException.class);
+        assertThat(repository.findById("memberA").getMoney()).isEqualTo(1302);
+    }
+
+    @Test
+    void consolidatorPromotesAndDemotes() {
+        HotMemberConsolidator consolidator = new HotMemberConsolidator(repository, Duration.ofMinutes(1), 4, 3, 1);
+        for (int i = 0; i < 3; i++) {
+            repository.addMoney("memberA", 100);
+        }
+
+        consolidator.run();
+        assertThat(repository.isHot("memberA")).isTrue();
+
+        repository.addMoney("memberA", 100);
+        consolidator.run();
+        //slot 잔액은 member 행으로 모인다.
+        assertThat(repository.isHot("memberA")).isTrue();
+        assertThat(memberRows.findById("memberA").getMoney()).isEqualTo(1400);
+
+        //지난 주기 입금 없음 -> 강등
+        consolidator.run();
+        assertThat(repository.isHot("memberA")).isFalse();
+        assertThat(repository.findById("memberA").getMoney()).isEqualTo(1400);
+    }
+}
@@ -0,0 +1,89 @@
+package hello.jdbc.repository.id;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static hello.jdbc.constants.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Slf4j
+public class HiLoIdAllocatorTest {
+
+    private DriverManagerDataSource dataSource;
+    private HiLoIdAllocator allocator;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new DriverManagerDataSource(URL, USERNAME, PASSWORD);
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+        allocator = new HiLoIdAllocator(dataSource, HiLoIdAllocator.DEFAULT_SEQUENCE, 10, 5);
+    }
+
+    @AfterEach
+    void tearDown() {
+        allocator.close();
+    }
+
+    @Test
+    void idsInBlockAreSequential() {
+        long first = allocator.nextId();
+        assertThat(first % 10).isZero();
+        for (int i = 1; i < 10; i++) {
+            assertThat(allocator.nextId()).isEqualTo(first + i);
+        }
+        //다음 블록은 새 시퀀스 값으로 받은 구간
+        assertThat(allocator.nextId() % 10).isZero();
+        assertThat(allocator.getBlockFetchCount()).isEqualTo(2);
+    }
+
+    @Test
+    void nextBlockIsPrefetched() {
+        for (int i = 0; i < 10; i++) {
+            allocator.nextId();
+        }
+        //두 번째 블록은 미리 받아둔 블록
+        allocator.nextId();
+        assertThat(allocator.getPrefetchMissCount()).isEqualTo(1);
+    }
+
+    @Test
+    void concurrentIdsAreUnique() throws Exception {
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 500; i++) {
+                    ids.add(allocator.nextId());
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        assertThat(ids).hasSize(8 * 500);
+        log.info("blockFetchCount={}, prefetchMissCount={}", allocator.getBlockFetchCount(), allocator.getPrefetchMissCount());
+    }
+
+    @Test
+    void invalidPrefetchThreshold() {
+        assertThatThrownBy(() -> new HiLoIdAllocator(dataSource, HiLoIdAllocator.DEFAULT_SEQUENCE, 10, 11))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
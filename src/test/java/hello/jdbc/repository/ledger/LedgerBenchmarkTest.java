@@ -0,0 +1,133 @@
+package hello.jdbc.repository.ledger;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.domain.Member;
+import hello.jdbc.domain.Transfer;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.MemberRepositoryV5;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static hello.jdbc.constants.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 한 회원에 입금이 몰릴 때 (hot row)
+ * MemberRepositoryV5.addMoney: member 행 update -> 행 락 대기
+ * LedgerMemberRepository.addMoney: 원장 insert -> 행 락 없음
+ * transferAll 100건: update batch vs 원장 insert batch
+ * ./gradlew benchmark
+ */
+@Slf4j
+@Tag("benchmark")
+public class LedgerBenchmarkTest {
+    private static final String HOT_MEMBER = "benchHot";
+    private static final int THREADS = 8;
+    private static final int CREDITS_PER_THREAD = 200;
+    private static final int TRANSFER_BATCHES = 50;
+
+    private HikariDataSource dataSource;
+    private MemberRepositoryV5 memberRows;
+    private LedgerMemberRepository ledger;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new HikariDataSource();
+        dataSource.setPoolName("benchmarkPool");
+        dataSource.setJdbcUrl(URL);
+        dataSource.setUsername(USERNAME);
+        dataSource.setPassword(PASSWORD);
+        dataSource.setMaximumPoolSize(THREADS + 2);
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+        memberRows = new MemberRepositoryV5(dataSource);
+        ledger = new LedgerMemberRepository(memberRows, dataSource, new DataSourceTransactionManager(dataSource));
+    }
+
+    @AfterEach
+    void tearDown() {
+        ledger.delete(HOT_MEMBER);
+        for (int i = 0; i < 10; i++) {
+            ledger.delete("bench" + i);
+        }
+        dataSource.close();
+    }
+
+    @Test
+    void hotCredits() throws Exception {
+        long updateMillis = credits(memberRows);
+        ledger.delete(HOT_MEMBER);
+        long ledgerMillis = credits(ledger);
+        log.info("hot credits={} update={}ms ({}/s) ledger={}ms ({}/s)", THREADS * CREDITS_PER_THREAD,
+                updateMillis, perSecond(updateMillis), ledgerMillis, perSecond(ledgerMillis));
+    }
+
+    @Test
+    void transferBatches() {
+        for (int i = 0; i < 10; i++) {
+            ledger.save(new Member("bench" + i, 1_000_000));
+        }
+        List<Transfer> transfers = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            transfers.add(new Transfer("bench" + (i % 10), "bench" + ((i + 1) % 10), 1));
+        }
+        long updateMillis = transferBatches(memberRows, transfers);
+        long ledgerMillis = transferBatches(ledger, transfers);
+        //fold 하지 않으면 잔액 조회가 읽는 원장 행이 계속 늘어난다. -> 배치마다 compact 포함
+        long compactedMillis = transferBatches(ledger, transfers, new LedgerCompactor(ledger, Duration.ofMinutes(1)));
+        log.info("transferAll batches={} x 100 update={}ms ledger={}ms ledger+compact={}ms",
+                TRANSFER_BATCHES, updateMillis, ledgerMillis, compactedMillis);
+    }
+
+    private long credits(MemberRepository repository) throws Exception {
+        repository.save(new Member(HOT_MEMBER, 0));
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        long start = System.nanoTime();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < CREDITS_PER_THREAD; i++) {
+                    repository.addMoney(HOT_MEMBER, 1);
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        executor.shutdown();
+        assertThat(repository.findById(HOT_MEMBER).getMoney()).isEqualTo(THREADS * CREDITS_PER_THREAD);
+        return elapsedMillis;
+    }
+
+    private long transferBatches(MemberRepository repository, List<Transfer> transfers) {
+        return transferBatches(repository, transfers, null);
+    }
+
+    private long transferBatches(MemberRepository repository, List<Transfer> transfers, LedgerCompactor compactor) {
+        long start = System.nanoTime();
+        for (int i = 0; i < TRANSFER_BATCHES; i++) {
+            repository.transferAll(transfers);
+            if (compactor != null) {
+                compactor.run();
+            }
+        }
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    private long perSecond(long millis) {
+        return THREADS * CREDITS_PER_THREAD * 1000L / Math.max(1, millis);
+    }
+}
@@ -0,0 +1,150 @@
+package hello.jdbc.repository.ledger;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.domain.Member;
+import hello.jdbc.domain.Transfer;
+import hello.jdbc.repository.MemberRepositoryV5;
+import hello.jdbc.repository.ex.OptimisticLockConflictException;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static hello.jdbc.constants.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Slf4j
+public class LedgerMemberRepositoryTest {
+
+    private HikariDataSource dataSource;
+    private MemberRepositoryV5 memberRows;
+    private LedgerMemberRepository repository;
+    private JdbcTemplate template;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new HikariDataSource();
+        dataSource.setPoolName("testPool");
+        dataSource.setJdbcUrl(URL);
+        dataSource.setUsername(USERNAME);
+        dataSource.setPassword(PASSWORD);
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+        template = new JdbcTemplate(dataSource);
+        memberRows = new MemberRepositoryV5(dataSource);
+        repository = new LedgerMemberRepository(memberRows, dataSource, new DataSourceTransactionManager(dataSource));
+        repository.save(new Member("memberA", 1000));
+        repository.save(new Member("memberB", 1000));
+    }
+
+    @AfterEach
+    void tearDown() {
+        repository.delete("memberA");
+        repository.delete("memberB");
+        dataSource.close();
+    }
+
+    @Test
+    void writesAreLedgerAppends() {
+        repository.addMoney("memberA", 500);
+        assertThat(repository.transfer("memberA", "memberB", 1200)).isEqualTo(2);
+        assertThat(repository.transfer("memberA", "memberB", 301)).isEqualTo(0);
+        assertThat(repository.withdrawIfSufficient("memberB", 2200)).isEqualTo(1);
+
+        //member 행(스냅샷)은 그대로
+        assertThat(memberRows.findById("memberA")).isEqualTo(new Member("memberA", 1000, 0));
+        assertThat(repository.findById("memberA")).isEqualTo(new Member("memberA", 300, 2));
+        assertThat(repository.findById("memberB")).isEqualTo(new Member("memberB", 0, 2));
+        assertThat(ledgerCount()).isEqualTo(4);
+        assertThatThrownBy(() -> repository.findById("memberX"))
+                .isInstanceOf(EmptyResultDataAccessException.class);
+    }
+
+    @Test
+    void compactFoldsLedgerIntoSnapshot() {
+        repository.addMoney("memberA", 500);
+        repository.transfer("memberA", "memberB", 700);
+        Member before = repository.findById("memberA");
+
+        LedgerCompactor compactor = new LedgerCompactor(repository, Duration.ofMinutes(1));
+        assertThat(compactor.run()).isEqualTo(3);
+        assertThat(compactor.run()).isZero();
+
+        //잔액, version 은 그대로, 스냅샷으로 옮겨짐
+        assertThat(repository.findById("memberA")).isEqualTo(before);
+        assertThat(memberRows.findById("memberA")).isEqualTo(new Member("memberA", 800, 2));
+        assertThat(memberRows.findById("memberB")).isEqualTo(new Member("memberB", 1700, 1));
+        //원장은 이력으로 남는다.
+        assertThat(ledgerCount()).isEqualTo(3);
+    }
+
+    @Test
+    void optimisticUpdate() {
+        Member member = repository.findById("memberA");
+        repository.addMoney("memberA", 100);
+
+        assertThatThrownBy(() -> repository.update("memberA", 0, member.getVersion()))
+                .isInstanceOf(OptimisticLockConflictException.class);
+        repository.compact("memberA");
+        repository.update("memberA", 0, member.getVersion() + 1);
+        assertThat(repository.findById("memberA")).isEqualTo(new Member("memberA", 0, 2));
+    }
+
+    @Test
+    void transferAllIsOneBatch() {
+        int[] resultSizes = repository.transferAll(List.of(
+                new Transfer("memberA", "memberB", 1000),
+                new Transfer("memberB", "memberA", 1500),
+                new Transfer("memberB", "memberA", 600),
+                new Transfer("memberA", "memberX", 1)));
+
+        assertThat(resultSizes).containsExactly(2, 2, 0, 0);
+        assertThat(repository.findById("memberA").getMoney()).isEqualTo(1500);
+        assertThat(repository.findById("memberB").getMoney()).isEqualTo(500);
+    }
+
+    /**
+     * 입금은 member 행을 잠그지 않으므로 동시에 해도 잃어버리지 않고, compact 와 섞여도 합계가 맞다.
+     */
+    @Test
+    void concurrentCreditsWithCompaction() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 50; i++) {
+                    repository.addMoney("memberA", 10);
+                }
+            }));
+        }
+        futures.add(executor.submit(() -> {
+            for (int i = 0; i < 10; i++) {
+                repository.compact("memberA");
+            }
+        }));
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        assertThat(repository.findById("memberA")).isEqualTo(new Member("memberA", 3000, 200));
+        repository.compact("memberA");
+        assertThat(memberRows.findById("memberA")).isEqualTo(new Member("memberA", 3000, 200));
+    }
+
+    private int ledgerCount() {
+        return template.queryForObject("select count(*) from transfer_ledger where member_id in ('memberA', 'memberB')", Integer.class);
+    }
+}
@@ -0,0 +1,167 @@
+package hello.jdbc.repository.memory;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.domain.Transfer;
+import hello.jdbc.repository.ex.OptimisticLockConflictException;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import static hello.jdbc.constants.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Slf4j
+public class StripedMemoryMemberRepositoryTest {
+
+    private StripedMemoryMemberRepository repository;
+    private TransactionTemplate txTemplate;
+
+    @BeforeEach
+    void setUp() {
+        repository = new StripedMemoryMemberRepository(16, 100);
+        txTemplate = new TransactionTemplate(new MemoryTransactionManager(repository));
+    }
+
+    @Test
+    void crud() {
+        Member member = new Member("memberV0", 10000);
+        repository.save(member);
+        assertThat(repository.findById("memberV0")).isEqualTo(member);
+
+        repository.update("memberV0", 20000);
+        assertThat(repository.findById("memberV0")).isEqualTo(new Member("memberV0", 20000, 1));
+
+        repository.delete("memberV0");
+        assertThatThrownBy(() -> repository.findById("memberV0"))
+                .isInstanceOf(EmptyResultDataAccessException.class);
+        assertThatThrownBy(() -> repository.saveAll(List.of(new Member("a", 0), new Member("a", 0))))
+                .isInstanceOf(DuplicateKeyException.class);
+    }
+
+    @Test
+    void transferAndOptimisticUpdate() {
+        repository.saveAll(List.of(new Member("memberA", 10000), new Member("memberB", 10000)));
+
+        assertThat(repository.transferAll(List.of(new Transfer("memberA", "memberB", 2000), new Transfer("memberA", "memberB", 9000))))
+                .containsExactly(2, 0);
+        assertThatThrownBy(() -> repository.update("memberA", 0, 0))
+                .isInstanceOf(OptimisticLockConflictException.class);
+        repository.update("memberA", 0, 1);
+        assertThat(repository.findById("memberA")).isEqualTo(new Member("memberA", 0, 2));
+        assertThat(repository.findById("memberB")).isEqualTo(new Member("memberB", 12000, 1));
+    }
+
+    /**
+     * resize, 뒤의 항목을 당기는 삭제 후에도 모두 찾을 수 있다.
+     */
+    @Test
+    void manyMembers() {
+        List<Member> members = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            members.add(new Member("m" + i, i));
+        }
+        repository.saveAll(members);
+        for (int i = 0; i < 10_000; i += 2) {
+            repository.delete("m" + i);
+        }
+
+        assertThat(repository.size()).isEqualTo(5_000);
+        for (int i = 0; i < 10_000; i++) {
+            assertThat(repository.findAllByIds(List.of("m" + i))).hasSize(i % 2);
+        }
+    }
+
+    @Test
+    void rollbackRestoresWithUndoLog() {
+        repository.save(new Member("memberA", 10000));
+        repository.save(new Member("memberB", 10000));
+
+        assertThatThrownBy(() -> txTemplate.executeWithoutResult(status -> {
+            repository.transfer("memberA", "memberB", 1000);
+            repository.delete("memberB");
+            repository.save(new Member("memberC", 500));
+            repository.update("memberA", 1);
+            throw new IllegalStateException("rollback");
+        })).isInstanceOf(IllegalStateException.class);
+
+        assertThat(repository.findById("memberA")).isEqualTo(new Member("memberA", 10000, 0));
+        assertThat(repository.findById("memberB")).isEqualTo(new Member("memberB", 10000, 0));
+        assertThat(repository.findAllByIds(List.of("memberC"))).isEmpty();
+    }
+
+    @Test
+    void nestedRollbackToSavepoint() {
+        repository.save(new Member("memberA", 10000));
+        TransactionTemplate nested = new TransactionTemplate(txTemplate.getTransactionManager());
+        nested.setPropagationBehavior(TransactionDefinition.PROPAGATION_NESTED);
+
+        txTemplate.executeWithoutResult(status -> {
+            repository.addMoney("memberA", 100);
+            nested.executeWithoutResult(nestedStatus -> {
+                repository.addMoney("memberA", 1000);
+                nestedStatus.setRollbackOnly();
+            });
+        });
+
+        assertThat(repository.findById("memberA")).isEqualTo(new Member("memberA", 10100, 1));
+    }
+
+    /**
+     * 커밋/롤백은 다른 트랜잭션 매니저에서도 동작 (TransactionSynchronization)
+     */
+    @Test
+    void rollbackWithDataSourceTransactionManager() {
+        repository.save(new Member("memberA", 10000));
+        TransactionTemplate jdbcTxTemplate = new TransactionTemplate(
+                new DataSourceTransactionManager(new DriverManagerDataSource(URL, USERNAME, PASSWORD)));
+
+        jdbcTxTemplate.executeWithoutResult(status -> {
+            repository.addMoney("memberA", 100);
+            status.setRollbackOnly();
+        });
+
+        assertThat(repository.findById("memberA").getMoney()).isEqualTo(10000);
+    }
+
+    /**
+     * 트랜잭션이 끝날 때까지 다른 쓰레드는 같은 stripe 를 쓰지 못한다.
+     */
+    @Test
+    void writeLockHeldUntilCommit() throws Exception {
+        repository.save(new Member("memberA", 10000));
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<Void> tx = CompletableFuture.runAsync(() -> txTemplate.executeWithoutResult(status -> {
+            repository.findByIdsForUpdate(List.of("memberA"));
+            locked.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            repository.addMoney("memberA", 100);
+        }));
+        locked.await();
+
+        assertThatThrownBy(() -> repository.addMoney("memberA", 1))
+                .isInstanceOf(CannotAcquireLockException.class);
+        release.countDown();
+        tx.get();
+        assertThat(repository.addMoney("memberA", 1)).isEqualTo(1);
+        assertThat(repository.findById("memberA").getMoney()).isEqualTo(10101);
+    }
+}
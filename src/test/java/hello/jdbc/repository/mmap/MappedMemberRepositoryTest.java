@@ -0,0 +1,198 @@
+package hello.jdbc.repository.mmap;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.domain.Transfer;
+import hello.jdbc.repository.ex.OptimisticLockConflictException;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.EmptyResultDataAccessException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Slf4j
+public class MappedMemberRepositoryTest {
+
+    @TempDir
+    Path directory;
+
+    private MappedMemberRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        repository = new MappedMemberRepository(directory, 64, true, MappedMemberRepository.DEFAULT_CHECKPOINT_BYTES);
+    }
+
+    @AfterEach
+    void tearDown() {
+        repository.close();
+    }
+
+    @Test
+    void crud() {
+        //save
+        Member member = new Member("memberV0", 10000);
+        repository.save(member);
+
+        //findById
+        Member findMember = repository.findById(member.getMemberId());
+        log.info("findMember={}", findMember);
+        assertThat(findMember).isEqualTo(member);
+
+        //update: money: 10000 -> 20000
+        repository.update(member.getMemberId(), 20000);
+        Member updatedMember = repository.findById(member.getMemberId());
+        assertThat(updatedMember.getMoney()).isEqualTo(20000);
+        assertThat(updatedMember.getVersion()).isEqualTo(1);
+
+        //delete
+        repository.delete(member.getMemberId());
+        assertThatThrownBy(() -> repository.findById(member.getMemberId()))
+                .isInstanceOf(EmptyResultDataAccessException.class);
+        assertThat(repository.size()).isZero();
+    }
+
+    @Test
+    void duplicateKey() {
+        repository.save(new Member("memberA", 10000));
+
+        assertThatThrownBy(() -> repository.save(new Member("memberA", 20000)))
+                .isInstanceOf(DuplicateKeyException.class);
+        assertThat(repository.insertIfAbsent(new Member("memberA", 20000))).isFalse();
+        //saveAll 은 하나라도 있으면 아무것도 저장하지 않는다.
+        assertThatThrownBy(() -> repository.saveAll(List.of(new Member("memberB", 0), new Member("memberA", 0))))
+                .isInstanceOf(DuplicateKeyException.class);
+        assertThat(repository.findAllByIds(List.of("memberA", "memberB"))).containsOnlyKeys("memberA");
+    }
+
+    @Test
+    void transfer() {
+        repository.saveAll(List.of(new Member("memberA", 10000), new Member("memberB", 10000)));
+
+        assertThat(repository.transfer("memberA", "memberB", 2000)).isEqualTo(2);
+        //잔액 부족이면 아무것도 바뀌지 않는다.
+        assertThat(repository.transfer("memberA", "memberB", 9000)).isEqualTo(0);
+        assertThat(repository.transfer("memberA", "memberX", 1000)).isEqualTo(0);
+
+        assertThat(repository.findById("memberA")).isEqualTo(new Member("memberA", 8000, 1));
+        assertThat(repository.findById("memberB")).isEqualTo(new Member("memberB", 12000, 1));
+    }
+
+    @Test
+    void transferAllSeesEarlierTransfersInBatch() {
+        repository.saveAll(List.of(new Member("memberA", 1000), new Member("memberB", 0)));
+
+        int[] resultSizes = repository.transferAll(List.of(
+                new Transfer("memberA", "memberB", 1000),
+                new Transfer("memberB", "memberA", 600),
+                new Transfer("memberB", "memberA", 600)));
+
+        assertThat(resultSizes).containsExactly(2, 2, 0);
+        assertThat(repository.findById("memberA").getMoney()).isEqualTo(600);
+        assertThat(repository.findById("memberB").getMoney()).isEqualTo(400);
+    }
+
+    @Test
+    void optimisticUpdate() {
+        repository.save(new Member("memberA", 10000));
+        Member member = repository.findById("memberA");
+        repository.addMoney("memberA", 100);
+
+        assertThatThrownBy(() -> repository.update("memberA", 0, member.getVersion()))
+                .isInstanceOf(OptimisticLockConflictException.class);
+        repository.update("memberA", 0, member.getVersion() + 1);
+        assertThat(repository.findById("memberA").getMoney()).isEqualTo(0);
+    }
+
+    @Test
+    void storeFull() {
+        List<Member> members = new ArrayList<>();
+        for (int i = 0; i < 48; i++) {
+            members.add(new Member("m" + i, i));
+        }
+        repository.saveAll(members, 10);
+
+        assertThatThrownBy(() -> repository.save(new Member("m48", 0)))
+                .isInstanceOf(DataIntegrityViolationException.class);
+        //삭제된 slot 은 다시 쓴다.
+        repository.delete("m0");
+        repository.save(new Member("m48", 48));
+        assertThat(repository.findById("m47").getMoney()).isEqualTo(47);
+        assertThat(repository.findById("m48").getMoney()).isEqualTo(48);
+    }
+
+    /**
+     * 저장/삭제를 반복해도 DELETED slot 이 쌓이지 않는다. (없는 id 조회가 테이블 전체를 돌지 않도록)
+     */
+    @Test
+    void deleteChurnRebuildsTable() {
+        repository.save(new Member("memberA", 10000));
+        for (int i = 0; i < 1000; i++) {
+            repository.save(new Member("c" + i, i));
+            repository.delete("c" + i);
+            assertThat(repository.deletedSlots()).isLessThanOrEqualTo(64 / 8);
+        }
+
+        assertThat(repository.size()).isEqualTo(1);
+        assertThat(repository.findById("memberA")).isEqualTo(new Member("memberA", 10000, 0));
+        assertThat(repository.findAllByIds(List.of("c999"))).isEmpty();
+        repository.close();
+
+        repository = new MappedMemberRepository(directory);
+        assertThat(repository.size()).isEqualTo(1);
+        assertThat(repository.findById("memberA").getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    void reopen() {
+        repository.save(new Member("memberA", 10000));
+        repository.addMoney("memberA", 500);
+        repository.close();
+
+        repository = new MappedMemberRepository(directory);
+        assertThat(repository.findById("memberA")).isEqualTo(new Member("memberA", 10500, 1));
+    }
+
+    /**
+     * 체크포인트 이후의 member.dat 변경이 디스크에 없어도 WAL 로 복구, 잘린 마지막 WAL 기록은 버린다.
+     */
+    @Test
+    void recoverFromWal() throws IOException {
+        repository.save(new Member("memberA", 10000));
+        repository.save(new Member("memberB", 10000));
+        repository.checkpoint();
+        Path checkpointData = directory.resolve("checkpoint.dat");
+        Files.copy(directory.resolve(MappedMemberRepository.DATA_FILE), checkpointData);
+
+        repository.transfer("memberA", "memberB", 3000);
+        repository.delete("memberB");
+        repository.save(new Member("memberC", 700));
+        Path crashDirectory = Files.createDirectory(directory.resolve("crash"));
+        Files.copy(checkpointData, crashDirectory.resolve(MappedMemberRepository.DATA_FILE));
+        Files.copy(directory.resolve(MappedMemberRepository.WAL_FILE), crashDirectory.resolve(MappedMemberRepository.WAL_FILE),
+                StandardCopyOption.REPLACE_EXISTING);
+        //쓰다 만 기록
+        Files.write(crashDirectory.resolve(MappedMemberRepository.WAL_FILE), new byte[]{0, 0, 0, 40, 1, 2, 3},
+                StandardOpenOption.APPEND);
+
+        try (MappedMemberRepository recovered = new MappedMemberRepository(crashDirectory)) {
+            assertThat(recovered.findById("memberA")).isEqualTo(new Member("memberA", 7000, 1));
+            assertThat(recovered.findAllByIds(List.of("memberB"))).isEmpty();
+            assertThat(recovered.findById("memberC").getMoney()).isEqualTo(700);
+            assertThat(recovered.size()).isEqualTo(2);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package hello.jdbc.repository.mvstore;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.MemberRepositoryV5;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+import static hello.jdbc.constants.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * MvStoreMemberRepository (MVStore 직접) vs MemberRepositoryV5 (H2 TCP, SQL)
+ * 단일 쓰레드 findById / update / transfer 평균 지연시간
+ * ./gradlew benchmark
+ */
+@Slf4j
+@Tag("benchmark")
+public class MvStoreMemberRepositoryBenchmarkTest {
+    private static final int MEMBER_COUNT = 1000;
+    private static final int WARMUP = 2_000;
+    private static final int OPERATIONS = 10_000;
+
+    @TempDir
+    Path directory;
+
+    private HikariDataSource dataSource;
+    private JdbcTemplate template;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new HikariDataSource();
+        dataSource.setPoolName("benchmarkPool");
+        dataSource.setJdbcUrl(URL);
+        dataSource.setUsername(USERNAME);
+        dataSource.setPassword(PASSWORD);
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+        template = new JdbcTemplate(dataSource);
+        template.update("delete from member where member_id like 'bench%'");
+    }
+
+    @AfterEach
+    void tearDown() {
+        template.update("delete from member where member_id like 'bench%'");
+        dataSource.close();
+    }
+
+    @Test
+    void mvStoreVsH2() {
+        run("h2", new MemberRepositoryV5(dataSource));
+        try (MvStoreMemberRepository mvStore = new MvStoreMemberRepository(directory.resolve("member.mv.db").toString())) {
+            run("mvstore", mvStore);
+        }
+    }
+
+    private void run(String engine, MemberRepository repository) {
+        List<Member> members = new ArrayList<>(MEMBER_COUNT);
+        for (int i = 0; i < MEMBER_COUNT; i++) {
+            members.add(new Member(benchId(i), 1_000_000));
+        }
+        repository.saveAll(members);
+
+        long findNanos = measure(i -> repository.findById(benchId(i % MEMBER_COUNT)));
+        long updateNanos = measure(i -> repository.update(benchId(i % MEMBER_COUNT), 1_000_000));
+        long transferNanos = measure(i -> repository.transfer(benchId(i % MEMBER_COUNT), benchId((i + 1) % MEMBER_COUNT), 1));
+        log.info("engine={} findById={}ns update={}ns transfer={}ns", engine, findNanos, updateNanos, transferNanos);
+
+        //transfer 는 합계를 바꾸지 않는다.
+        long total = repository.findAllByIds(members.stream().map(Member::getMemberId).toList()).values().stream()
+                .mapToLong(Member::getMoney).sum();
+        assertThat(total).isEqualTo(1_000_000L * MEMBER_COUNT);
+    }
+
+    /**
+     * 1건 평균 나노초
+     */
+    private long measure(IntConsumer operation) {
+        for (int i = 0; i < WARMUP; i++) {
+            operation.accept(i);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < OPERATIONS; i++) {
+            operation.accept(i);
+        }
+        return (System.nanoTime() - start) / OPERATIONS;
+    }
+
+    private String benchId(int i) {
+        return String.format("bench%05d", i);
+    }
+}
@@ -0,0 +1,146 @@
+package hello.jdbc.repository.mvstore;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.domain.Transfer;
+import hello.jdbc.repository.ex.OptimisticLockConflictException;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.EmptyResultDataAccessException;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Slf4j
+public class MvStoreMemberRepositoryTest {
+
+    @TempDir
+    Path directory;
+
+    private MvStoreMemberRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        repository = new MvStoreMemberRepository(null);
+    }
+
+    @AfterEach
+    void tearDown() {
+        repository.close();
+    }
+
+    @Test
+    void crud() {
+        //save
+        Member member = new Member("memberV0", 10000);
+        repository.save(member);
+
+        //findById
+        Member findMember = repository.findById(member.getMemberId());
+        log.info("findMember={}", findMember);
+        assertThat(findMember).isEqualTo(member);
+
+        //update: money: 10000 -> 20000
+        repository.update(member.getMemberId(), 20000);
+        assertThat(repository.findById(member.getMemberId())).isEqualTo(new Member("memberV0", 20000, 1));
+
+        //delete
+        repository.delete(member.getMemberId());
+        assertThatThrownBy(() -> repository.findById(member.getMemberId()))
+                .isInstanceOf(EmptyResultDataAccessException.class);
+        //없는 회원
+        repository.update(member.getMemberId(), 0);
+        assertThat(repository.addMoney(member.getMemberId(), 100)).isZero();
+    }
+
+    @Test
+    void duplicateKeyRollsBackSaveAll() {
+        repository.save(new Member("memberA", 10000));
+
+        assertThatThrownBy(() -> repository.save(new Member("memberA", 20000)))
+                .isInstanceOf(DuplicateKeyException.class);
+        assertThat(repository.insertIfAbsent(new Member("memberA", 20000))).isFalse();
+        assertThatThrownBy(() -> repository.saveAll(List.of(new Member("memberB", 0), new Member("memberA", 0))))
+                .isInstanceOf(DuplicateKeyException.class);
+        assertThat(repository.findAllByIds(List.of("memberA", "memberB"))).containsOnlyKeys("memberA");
+    }
+
+    @Test
+    void transfer() {
+        repository.saveAll(List.of(new Member("memberA", 10000), new Member("memberB", 10000)));
+
+        assertThat(repository.transfer("memberA", "memberB", 2000)).isEqualTo(2);
+        assertThat(repository.transfer("memberA", "memberB", 9000)).isEqualTo(0);
+        assertThat(repository.transferAll(List.of(new Transfer("memberB", "memberA", 12000), new Transfer("memberB", "memberA", 1))))
+                .containsExactly(2, 0);
+
+        assertThat(repository.findById("memberA")).isEqualTo(new Member("memberA", 20000, 2));
+        assertThat(repository.findById("memberB")).isEqualTo(new Member("memberB", 0, 2));
+    }
+
+    @Test
+    void optimisticUpdate() {
+        repository.save(new Member("memberA", 10000));
+        Member member = repository.findById("memberA");
+        repository.addMoney("memberA", 100);
+
+        assertThatThrownBy(() -> repository.update("memberA", 0, member.getVersion()))
+                .isInstanceOf(OptimisticLockConflictException.class);
+        assertThat(repository.withdrawIfSufficient("memberA", 10101)).isZero();
+        assertThat(repository.withdrawIfSufficient("memberA", 10100)).isEqualTo(1);
+    }
+
+    /**
+     * 서로 반대 방향 이체가 동시에 실행되어도 합계가 유지된다. (member_id 순서로 잠금)
+     */
+    @Test
+    void concurrentTransfers() throws Exception {
+        repository.saveAll(List.of(new Member("memberA", 100_000), new Member("memberB", 100_000)));
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            boolean forward = t % 2 == 0;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 200; i++) {
+                    if (forward) {
+                        repository.transfer("memberA", "memberB", 10);
+                    } else {
+                        repository.transfer("memberB", "memberA", 10);
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        Member memberA = repository.findById("memberA");
+        Member memberB = repository.findById("memberB");
+        assertThat(memberA.getMoney() + memberB.getMoney()).isEqualTo(200_000);
+        assertThat(memberA.getVersion()).isEqualTo(8 * 200);
+    }
+
+    @Test
+    void reopen() {
+        String fileName = directory.resolve("member.mv.db").toString();
+        try (MvStoreMemberRepository fileRepository = new MvStoreMemberRepository(fileName)) {
+            fileRepository.save(new Member("memberA", 10000));
+            fileRepository.addMoney("memberA", 500);
+        }
+
+        try (MvStoreMemberRepository fileRepository = new MvStoreMemberRepository(fileName)) {
+            assertThat(fileRepository.findById("memberA")).isEqualTo(new Member("memberA", 10500, 1));
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package hello.jdbc.repository.writebehind;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class WriteBehindLogTest {
+    private static final int CAPACITY = 4096;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void forceCoversEarlierUnforcedRecords() throws IOException {
+        Path file = dir.resolve("write-behind.log");
+        List<WriteBehindLog.Range> forcedRanges = new ArrayList<>();
+        try (WriteBehindLog changeLog = new WriteBehindLog(file, CAPACITY)) {
+            //A 가 append 하고 force 하기 전에 B 가 append, force 후 반환
+            WriteBehindLog.Range a = changeLog.append(1, WriteBehindLog.ADD, "memberA", 100);
+            WriteBehindLog.Range b = changeLog.append(2, WriteBehindLog.ADD, "memberB", 200);
+            changeLog.force(b);
+            changeLog.forced(b);
+            forcedRanges.add(b);
+
+            assertThat(b.start()).isEqualTo(a.start());
+            assertThat(changeLog.append(3, WriteBehindLog.ADD, "memberA", 300).start()).isEqualTo(b.end());
+
+            //A 가 force 하기 전에 죽음 -> 디스크에는 force 한 범위만 남는다.
+            Files.write(dir.resolve("crashed.log"), durableImage(Files.readAllBytes(file), forcedRanges));
+        }
+
+        List<WriteBehindLog.Entry> replayed = new ArrayList<>();
+        try (WriteBehindLog recovered = new WriteBehindLog(dir.resolve("crashed.log"), CAPACITY)) {
+            recovered.replay(replayed::add);
+        }
+        assertThat(replayed).containsExactly(
+                new WriteBehindLog.Entry(1, WriteBehindLog.ADD, "memberA", 100),
+                new WriteBehindLog.Entry(2, WriteBehindLog.ADD, "memberB", 200));
+    }
+
+    @Test
+    void resetRestartsWatermark() {
+        try (WriteBehindLog changeLog = new WriteBehindLog(dir.resolve("write-behind.log"), CAPACITY)) {
+            WriteBehindLog.Range stale = changeLog.append(1, WriteBehindLog.ADD, "memberA", 100);
+            changeLog.reset();
+            //reset 전에 append 한 범위의 force 완료는 새 기록의 watermark 를 올리지 않는다.
+            changeLog.force(stale);
+            changeLog.forced(stale);
+
+            assertThat(changeLog.append(2, WriteBehindLog.ADD, "memberA", 200).start()).isZero();
+        }
+    }
+
+    private static byte[] durableImage(byte[] written, List<WriteBehindLog.Range> forcedRanges) {
+        byte[] image = new byte[written.length];
+        for (WriteBehindLog.Range range : forcedRanges) {
+            System.arraycopy(written, range.start(), image, range.start(), range.end() - range.start());
+        }
+        return image;
+    }
+}
@@ -0,0 +1,280 @@
+package hello.jdbc.repository.writebehind;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV5;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static hello.jdbc.constants.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+public class WriteBehindMemberRepositoryTest {
+    private static final String LOG_ID = "test";
+
+    @TempDir
+    Path dir;
+
+    private HikariDataSource dataSource;
+    private MemberRepositoryV5 memberRows;
+    private JdbcTemplate template;
+    private WriteBehindMemberRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new HikariDataSource();
+        dataSource.setPoolName("testPool");
+        dataSource.setJdbcUrl(URL);
+        dataSource.setUsername(USERNAME);
+        dataSource.setPassword(PASSWORD);
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+        template = new JdbcTemplate(dataSource);
+        template.update("delete from write_behind_applied where log_id=?", LOG_ID);
+        memberRows = new MemberRepositoryV5(dataSource);
+        memberRows.save(new Member("memberA", 1000));
+        memberRows.save(new Member("memberB", 1000));
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (repository != null) {
+            repository.close();
+        }
+        memberRows.delete("memberA");
+        memberRows.delete("memberB");
+        template.update("delete from write_behind_applied where log_id=?", LOG_ID);
+        dataSource.close();
+    }
+
+    @Test
+    void coalescesUntilFlush() {
+        repository = open(WriteBehindSettings.defaults());
+        repository.addMoney("memberA", 100);
+        repository.addMoney("memberA", 200);
+        repository.addMoney("memberB", 4000);
+        repository.addMoney("memberB", -300);
+
+        //DB 는 그대로, 조회는 미반영 변경 포함
+        assertThat(memberRows.findById("memberA")).isEqualTo(new Member("memberA", 1000, 0));
+        assertThat(repository.findById("memberA")).isEqualTo(new Member("memberA", 1300, 2));
+        assertThat(repository.findAllByIds(List.of("memberA", "memberB")).get("memberB"))
+                .isEqualTo(new Member("memberB", 4700, 2));
+        assertThat(repository.getPendingMembers()).isEqualTo(2);
+
+        assertThat(repository.flush()).isEqualTo(2);
+        assertThat(memberRows.findById("memberA")).isEqualTo(new Member("memberA", 1300, 2));
+        assertThat(memberRows.findById("memberB")).isEqualTo(new Member("memberB", 4700, 2));
+        assertThat(repository.getFlushedChanges()).isEqualTo(4);
+        assertThat(repository.getFlushedMembers()).isEqualTo(2);
+        assertThat(repository.getPendingMembers()).isZero();
+        assertThat(repository.getLagMillis()).isZero();
+    }
+
+    @Test
+    void replaysOnlyUnappliedRecords() {
+        //seq 1, 2 는 반영된 뒤 죽고, 3 은 로그에만 남은 상태
+        try (WriteBehindLog changeLog = new WriteBehindLog(dir.resolve("member.wbl"), 4096)) {
+            changeLog.append(1, WriteBehindLog.ADD, "memberA", 100);
+            changeLog.append(2, WriteBehindLog.SET, "memberB", 3000);
+            changeLog.append(3, WriteBehindLog.ADD, "memberA", 50);
+        }
+        template.update("update member set money=1100, version=1 where member_id='memberA'");
+        template.update("update member set money=3000, version=1 where member_id='memberB'");
+        template.update("insert into write_behind_applied values (?, 'memberA', 1), (?, 'memberB', 2)", LOG_ID, LOG_ID);
+
+        repository = open(WriteBehindSettings.defaults());
+
+        assertThat(memberRows.findById("memberA")).isEqualTo(new Member("memberA", 1150, 2));
+        assertThat(memberRows.findById("memberB")).isEqualTo(new Member("memberB", 3000, 1));
+        //다시 열어도 두 번 반영하지 않는다.
+        repository.close();
+        repository = open(WriteBehindSettings.defaults());
+        assertThat(memberRows.findById("memberA").getMoney()).isEqualTo(1150);
+        //seq 는 이어서
+        repository.addMoney("memberA", 1);
+        repository.flush();
+        assertThat(template.queryForObject("select applied_seq from write_behind_applied where log_id=? and member_id='memberA'",
+                Long.class, LOG_ID)).isEqualTo(4);
+    }
+
+    @Test
+    void synchronousOperationsFlushFirst() {
+        repository = open(WriteBehindSettings.defaults());
+        repository.addMoney("memberA", 500);
+
+        assertThat(repository.withdrawIfSufficient("memberA", 1500)).isEqualTo(1);
+        assertThat(repository.findById("memberA")).isEqualTo(new Member("memberA", 0, 2));
+        //update 도 write-behind
+        repository.update("memberB", 10);
+        assertThat(memberRows.findById("memberB")).isEqualTo(new Member("memberB", 1000, 0));
+        assertThat(repository.findById("memberB")).isEqualTo(new Member("memberB", 10, 1));
+        assertThat(repository.transfer("memberB", "memberA", 10)).isEqualTo(2);
+        assertThat(memberRows.findById("memberA").getMoney()).isEqualTo(10);
+        assertThat(memberRows.findById("memberB").getMoney()).isEqualTo(0);
+    }
+
+    /**
+     * 잠가서 읽은 뒤 들어온 입금을 update 가 덮어쓰지 않는다. (update 를 읽은 잔액과의 차이로 기록)
+     */
+    @Test
+    void updateAfterLockedReadKeepsLaterCredit() {
+        repository = open(WriteBehindSettings.defaults());
+        TransactionTemplate txTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+        txTemplate.executeWithoutResult(status -> {
+            Member locked = repository.findByIdsForUpdate(List.of("memberA")).get("memberA");
+            //잠근 뒤 다른 요청의 입금 (로그에만 기록)
+            repository.addMoney("memberA", 100);
+            repository.update("memberA", locked.getMoney() - 300);
+            assertThat(repository.findById("memberA")).isEqualTo(new Member("memberA", 800, 2));
+        });
+
+        repository.flush();
+        assertThat(memberRows.findById("memberA")).isEqualTo(new Member("memberA", 800, 2));
+    }
+
+    /**
+     * 호출한 쪽 트랜잭션이 잠근 회원도 그 커넥션에서 flush -> 자기 행 락을 기다리지 않는다.
+     */
+    @Test
+    void flushInCallerTransactionDoesNotWaitOnOwnLock() {
+        repository = open(WriteBehindSettings.defaults());
+        TransactionTemplate txTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+        txTemplate.executeWithoutResult(status -> {
+            repository.findByIdsForUpdate(List.of("memberA"));
+            repository.addMoney("memberA", 100);
+            //전체 flush 는 잠근 회원을 건너뛴다.
+            assertThat(repository.flush()).isZero();
+            assertThat(repository.withdrawIfSufficient("memberA", 1100)).isEqualTo(1);
+            assertThat(repository.findById("memberA")).isEqualTo(new Member("memberA", 0, 2));
+            //커밋 전 - 다른 커넥션에서는 반영 전 DB 값 + 반영 중인 변경
+            assertThat(CompletableFuture.supplyAsync(() -> memberRows.findById("memberA")).join())
+                    .isEqualTo(new Member("memberA", 1000, 0));
+            assertThat(CompletableFuture.supplyAsync(() -> repository.findById("memberA")).join())
+                    .isEqualTo(new Member("memberA", 1100, 1));
+        });
+
+        assertThat(repository.getPendingMembers()).isZero();
+        assertThat(memberRows.findById("memberA")).isEqualTo(new Member("memberA", 0, 2));
+    }
+
+    /**
+     * 호출한 쪽 트랜잭션이 롤백되면 그 커넥션에서 반영한 변경은 다시 pending 으로
+     */
+    @Test
+    void callerRollbackRestoresFlushedChanges() {
+        repository = open(WriteBehindSettings.defaults());
+        TransactionTemplate txTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        repository.addMoney("memberA", 100);
+
+        txTemplate.executeWithoutResult(status -> {
+            assertThat(repository.findByIdsForUpdate(List.of("memberA")).get("memberA").getMoney()).isEqualTo(1100);
+            //다른 커넥션에서도 한 번만 더해서 보인다.
+            assertThat(CompletableFuture.supplyAsync(() -> repository.findById("memberA")).join().getMoney()).isEqualTo(1100);
+            repository.addMoney("memberA", 10);
+            status.setRollbackOnly();
+        });
+
+        assertThat(repository.getPendingMembers()).isEqualTo(1);
+        assertThat(repository.findById("memberA")).isEqualTo(new Member("memberA", 1110, 2));
+        repository.flush();
+        assertThat(memberRows.findById("memberA")).isEqualTo(new Member("memberA", 1110, 2));
+    }
+
+    /**
+     * back-pressure flush 가 실패해도 이미 로그에 기록한 변경은 성공으로 반환 (실패로 알리면 재시도에서 두 번 반영)
+     */
+    @Test
+    void backPressureFlushFailureIsNotReported() {
+        repository = open(new WriteBehindSettings(Duration.ofHours(1), Duration.ofHours(1), 1, 4096));
+        TransactionTemplate txTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+        txTemplate.executeWithoutResult(status -> {
+            memberRows.findByIdsForUpdate(List.of("memberA"));
+            assertThat(repository.addMoney("memberA", 100)).isEqualTo(1);
+        });
+
+        assertThat(repository.getBackPressureFlushes()).isEqualTo(1);
+        assertThat(repository.getPendingMembers()).isEqualTo(1);
+        repository.flush();
+        assertThat(memberRows.findById("memberA")).isEqualTo(new Member("memberA", 1100, 1));
+    }
+
+    @Test
+    void backPressureFlushesOnWriterThread() {
+        repository = open(new WriteBehindSettings(Duration.ofHours(1), Duration.ofHours(1), 2, 4096));
+        repository.addMoney("memberA", 1);
+        assertThat(repository.getBackPressureFlushes()).isZero();
+        repository.addMoney("memberB", 1);
+
+        assertThat(repository.getBackPressureFlushes()).isEqualTo(1);
+        assertThat(repository.getPendingMembers()).isZero();
+        assertThat(memberRows.findById("memberB").getMoney()).isEqualTo(1001);
+    }
+
+    @Test
+    void fullLogIsFlushedAndReused() {
+        repository = open(new WriteBehindSettings(Duration.ofHours(1), Duration.ofHours(1), 100, 1024));
+        //기록 하나 36 byte -> 1024 byte 로그를 여러 번 다시 쓴다.
+        for (int i = 0; i < 200; i++) {
+            repository.addMoney(i % 2 == 0 ? "memberA" : "memberB", 1);
+        }
+        repository.flush();
+
+        assertThat(repository.getBackPressureFlushes()).isGreaterThan(1);
+        assertThat(memberRows.findById("memberA").getMoney()).isEqualTo(1100);
+        assertThat(memberRows.findById("memberB").getMoney()).isEqualTo(1100);
+    }
+
+    @Test
+    void concurrentCreditsWithBackgroundFlush() throws Exception {
+        repository = open(new WriteBehindSettings(Duration.ofMillis(10), Duration.ofSeconds(1), 1000, 64 * 1024));
+        repository.start();
+        int threads = 8;
+        int credits = 250;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < credits; i++) {
+                    repository.addMoney("memberA", 1);
+                    assertThat(repository.findById("memberA").getMoney()).isGreaterThan(1000);
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        repository.flush();
+
+        assertThat(memberRows.findById("memberA").getMoney()).isEqualTo(1000 + threads * credits);
+        assertThat(memberRows.findById("memberA").getVersion()).isEqualTo(threads * credits);
+        log.info("flushCount={}, flushedMembers={}, maxLagMillis={}",
+                repository.getFlushCount(), repository.getFlushedMembers(), repository.getMaxLagMillis());
+    }
+
+    private WriteBehindMemberRepository open(WriteBehindSettings settings) {
+        return new WriteBehindMemberRepository(memberRows, dataSource, new DataSourceTransactionManager(dataSource),
+                dir.resolve("member.wbl"), LOG_ID, settings);
+    }
+}
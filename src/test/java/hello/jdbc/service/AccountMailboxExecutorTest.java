@@ -0,0 +1,116 @@
+package hello.jdbc.service;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.domain.Transfer;
+import hello.jdbc.domain.TransferResult;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.MemberRepositoryV5;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+@SpringBootTest
+public class AccountMailboxExecutorTest {
+
+    public static final String MEMBER_HOT = "hot";
+    public static final String MEMBER_A = "memberA";
+    public static final String MEMBER_B = "memberB";
+    public static final String MEMBER_EX = "ex";
+
+    @Autowired
+    private MemberServiceV4 memberService;
+
+    @Autowired
+    private MemberRepository memberRepository;
+
+    @TestConfiguration
+    static class TestConfig {
+        private final DataSource dataSource;
+        private final PlatformTransactionManager transactionManager;
+
+        public TestConfig(DataSource dataSource, PlatformTransactionManager transactionManager) {
+            this.dataSource = dataSource;
+            this.transactionManager = transactionManager;
+        }
+
+        @Bean
+        public MemberRepository memberRepository() {
+            return new MemberRepositoryV5(dataSource);
+        }
+
+        @Bean
+        public MemberServiceV4 memberService() {
+            return new MemberServiceV4(memberRepository(), transactionManager);
+        }
+    }
+
+    @Test
+    @DisplayName("mailbox - 같은 key 의 이체는 순서대로, 끝나면 mailbox 회수")
+    void submitTest() {
+        //given - "ex" < "hot" < "memberA" < "memberB"
+        memberRepository.save(new Member(MEMBER_HOT, 10000));
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_B, 10000));
+        memberRepository.save(new Member(MEMBER_EX, 10000));
+
+        List<CompletableFuture<TransferResult>> futures = new ArrayList<>();
+        AccountMailboxExecutor executor = new AccountMailboxExecutor(memberService, 4);
+
+        //when
+        for (int i = 0; i < 50; i++) {
+            futures.add(executor.submit(new Transfer(MEMBER_A, MEMBER_HOT, 100)));
+            futures.add(executor.submit(new Transfer(MEMBER_HOT, MEMBER_B, 50)));
+        }
+        futures.add(executor.submit(new Transfer(MEMBER_HOT, MEMBER_EX, 100))); //이체중 예외
+        futures.forEach(CompletableFuture::join);
+        executor.close();
+
+        //then
+        assertThat(executor.getMailboxCount()).isZero();
+        assertThat(executor.queueDepths()).isEmpty();
+        assertThat(executor.getMaxQueueDepth()).isGreaterThan(1);
+        assertThat(executor.getReclaimedCount()).isGreaterThanOrEqualTo(2);
+        assertThat(futures.subList(0, 100)).allMatch(future -> future.join().isSuccess());
+        assertThat(futures.get(100).join().isSuccess()).isFalse();
+        assertThat(memberRepository.findById(MEMBER_HOT).getMoney()).isEqualTo(12500);
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(5000);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(12500);
+        assertThat(memberRepository.findById(MEMBER_EX).getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    @DisplayName("종료 후 이체 - 실패로 완료, mailbox 가 남지 않는다")
+    void submitAfterCloseTest() {
+        AccountMailboxExecutor executor = new AccountMailboxExecutor(memberService, 1);
+        executor.close();
+
+        CompletableFuture<TransferResult> first = executor.submit(new Transfer(MEMBER_A, MEMBER_B, 1000));
+        CompletableFuture<TransferResult> second = executor.submit(new Transfer(MEMBER_A, MEMBER_B, 1000));
+
+        assertThat(first).isCompletedExceptionally();
+        assertThat(second).isCompletedExceptionally();
+        assertThat(executor.getMailboxCount()).isZero();
+    }
+
+    @AfterEach
+    void tearDown() {
+        memberRepository.delete(MEMBER_HOT);
+        memberRepository.delete(MEMBER_A);
+        memberRepository.delete(MEMBER_B);
+        memberRepository.delete(MEMBER_EX);
+    }
+}
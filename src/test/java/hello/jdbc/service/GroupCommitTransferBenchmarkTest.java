@@ -0,0 +1,140 @@
+package hello.jdbc.service;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.domain.Transfer;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.MemberRepositoryV5;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 동시 요청에서 건마다 커밋(accountTransfer) vs 그룹 커밋(GroupCommitTransferService)
+ * 쓰레드마다 자기 회원 쌍으로 이체하므로 락 경합은 없고 커밋 비용만 비교된다.
+ * ./gradlew benchmark
+ */
+@Slf4j
+@Tag("benchmark")
+@SpringBootTest
+public class GroupCommitTransferBenchmarkTest {
+    private static final int THREADS = 32;
+    private static final int TRANSFERS_PER_THREAD = 300;
+    private static final int INITIAL_MONEY = 1_000_000;
+
+    @Autowired
+    private MemberServiceV4 memberService;
+
+    @Autowired
+    private MemberRepository memberRepository;
+
+    @TestConfiguration
+    static class TestConfig {
+        private final DataSource dataSource;
+        private final PlatformTransactionManager transactionManager;
+
+        public TestConfig(DataSource dataSource, PlatformTransactionManager transactionManager) {
+            this.dataSource = dataSource;
+            this.transactionManager = transactionManager;
+        }
+
+        @Bean
+        public MemberRepository memberRepository() {
+            return new MemberRepositoryV5(dataSource);
+        }
+
+        @Bean
+        public MemberServiceV4 memberService() {
+            return new MemberServiceV4(memberRepository(), transactionManager);
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        for (int t = 0; t < THREADS; t++) {
+            memberRepository.save(new Member(fromId(t), INITIAL_MONEY));
+            memberRepository.save(new Member(toId(t), INITIAL_MONEY));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        for (int t = 0; t < THREADS; t++) {
+            memberRepository.delete(fromId(t));
+            memberRepository.delete(toId(t));
+        }
+    }
+
+    @Test
+    void groupCommitThroughput() throws Exception {
+        run("accountTransfer", t -> memberService.accountTransfer(fromId(t), toId(t), 1));
+        try (GroupCommitTransferService groupCommit = new GroupCommitTransferService(memberService)) {
+            run("groupCommit", t -> groupCommit.submit(new Transfer(fromId(t), toId(t), 1)).join());
+            log.info("groupCommit avgBatchSize={}", groupCommit.getTransferCount() / Math.max(1, groupCommit.getBatchCount()));
+        }
+
+        for (int t = 0; t < THREADS; t++) {
+            assertThat(memberRepository.findById(fromId(t)).getMoney()).isEqualTo(INITIAL_MONEY - 2 * TRANSFERS_PER_THREAD);
+        }
+    }
+
+    private void run(String name, TransferCall transfer) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<long[]>> futures = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    long[] latencies = new long[TRANSFERS_PER_THREAD];
+                    for (int i = 0; i < TRANSFERS_PER_THREAD; i++) {
+                        long callStart = System.nanoTime();
+                        transfer.run(thread);
+                        latencies[i] = System.nanoTime() - callStart;
+                    }
+                    return latencies;
+                }));
+            }
+            long[] all = new long[THREADS * TRANSFERS_PER_THREAD];
+            for (int t = 0; t < THREADS; t++) {
+                System.arraycopy(futures.get(t).get(), 0, all, t * TRANSFERS_PER_THREAD, TRANSFERS_PER_THREAD);
+            }
+            long elapsedNanos = System.nanoTime() - start;
+            Arrays.sort(all);
+            log.info("{} throughput={}/s, p50={}us, p99={}us", name,
+                    all.length * 1_000_000_000L / elapsedNanos,
+                    all[all.length / 2] / 1000,
+                    all[all.length * 99 / 100] / 1000);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static String fromId(int thread) {
+        return "gcF" + thread;
+    }
+
+    private static String toId(int thread) {
+        return "gcT" + thread;
+    }
+
+    interface TransferCall {
+        void run(int thread);
+    }
+}
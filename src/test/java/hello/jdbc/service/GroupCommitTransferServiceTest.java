@@ -0,0 +1,108 @@
+package hello.jdbc.service;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.domain.Transfer;
+import hello.jdbc.domain.TransferResult;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.MemberRepositoryV5;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Slf4j
+@SpringBootTest
+public class GroupCommitTransferServiceTest {
+
+    public static final String MEMBER_A = "from";
+    public static final String MEMBER_B = "to";
+    public static final String MEMBER_EX = "ex";
+
+    @Autowired
+    private MemberServiceV4 memberService;
+
+    @Autowired
+    private MemberRepository memberRepository;
+
+    @TestConfiguration
+    static class TestConfig {
+        private final DataSource dataSource;
+        private final PlatformTransactionManager transactionManager;
+
+        public TestConfig(DataSource dataSource, PlatformTransactionManager transactionManager) {
+            this.dataSource = dataSource;
+            this.transactionManager = transactionManager;
+        }
+
+        @Bean
+        public MemberRepository memberRepository() {
+            return new MemberRepositoryV5(dataSource);
+        }
+
+        @Bean
+        public MemberServiceV4 memberService() {
+            return new MemberServiceV4(memberRepository(), transactionManager);
+        }
+    }
+
+    @Test
+    @DisplayName("그룹 커밋 - 요청별 결과, 실패한 건만 롤백")
+    void submitTest() {
+        //given
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_B, 10000));
+        memberRepository.save(new Member(MEMBER_EX, 10000));
+
+        try (GroupCommitTransferService groupCommit =
+                     new GroupCommitTransferService(memberService, 4, Duration.ofMillis(50))) {
+            //when
+            List<CompletableFuture<TransferResult>> futures = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                String toId = i == 3 ? MEMBER_EX : MEMBER_B;
+                futures.add(groupCommit.submit(new Transfer(MEMBER_A, toId, 100)));
+            }
+
+            //then
+            for (int i = 0; i < futures.size(); i++) {
+                assertThat(futures.get(i).join().isSuccess()).isEqualTo(i != 3);
+            }
+            assertThat(groupCommit.getTransferCount()).isEqualTo(10);
+            assertThat(groupCommit.getBatchCount()).isBetween(3L, 9L);
+        }
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(9100);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(10900);
+        assertThat(memberRepository.findById(MEMBER_EX).getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    @DisplayName("그룹 커밋 - 종료 후 요청은 실패")
+    void submitAfterCloseTest() {
+        GroupCommitTransferService groupCommit = new GroupCommitTransferService(memberService);
+        groupCommit.close();
+
+        CompletableFuture<TransferResult> future = groupCommit.submit(new Transfer(MEMBER_A, MEMBER_B, 100));
+
+        assertThatThrownBy(future::join).hasCauseInstanceOf(IllegalStateException.class);
+    }
+
+    @AfterEach
+    void tearDown() {
+        memberRepository.delete(MEMBER_A);
+        memberRepository.delete(MEMBER_B);
+        memberRepository.delete(MEMBER_EX);
+    }
+}
@@ -0,0 +1,110 @@
+package hello.jdbc.service;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.MemberRepositoryV4_2;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.jdbc.support.SQLErrorCodeSQLExceptionTranslator;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+@SpringBootTest
+public class LockRetryTransferServiceTest {
+
+    public static final String MEMBER_A = "memberA";
+    public static final String MEMBER_B = "memberB";
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private MemberServiceV4 memberService;
+
+    @Autowired
+    private MemberRepository memberRepository;
+
+    @TestConfiguration
+    static class TestConfig {
+        private final DataSource dataSource;
+        private final PlatformTransactionManager transactionManager;
+
+        public TestConfig(DataSource dataSource, PlatformTransactionManager transactionManager) {
+            this.dataSource = dataSource;
+            this.transactionManager = transactionManager;
+        }
+
+        @Bean
+        public MemberRepository memberRepository() {
+            return new MemberRepositoryV4_2(dataSource);
+        }
+
+        @Bean
+        public MemberServiceV4 memberService() {
+            return new MemberServiceV4(memberRepository(), transactionManager);
+        }
+    }
+
+    @Test
+    @DisplayName("H2 교착상태, 락 대기 시간 초과 에러 코드 변환")
+    void translateLockErrors() {
+        SQLErrorCodeSQLExceptionTranslator translator = new SQLErrorCodeSQLExceptionTranslator(dataSource);
+
+        assertThat(translator.translate("transfer", null, new SQLException("deadlock", "40001", 40001)))
+                .isInstanceOf(CannotAcquireLockException.class);
+        assertThat(translator.translate("transfer", null, new SQLException("lock timeout", "HYT00", 50200)))
+                .isInstanceOf(CannotAcquireLockException.class);
+    }
+
+    @Test
+    @DisplayName("A->B, B->A 동시 이체 - 락 순서 고정 + 재시도")
+    void oppositeTransfersTest() throws Exception {
+        //given
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_B, 10000));
+        LockRetryTransferService transferService = new LockRetryTransferService(memberService);
+
+        //when
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> forward = executor.submit(() -> repeat(transferService, MEMBER_A, MEMBER_B));
+            Future<?> backward = executor.submit(() -> repeat(transferService, MEMBER_B, MEMBER_A));
+            forward.get();
+            backward.get();
+        } finally {
+            executor.shutdown();
+        }
+
+        //then
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(10000);
+        assertThat(transferService.getRetryPolicy().getExhaustedCount()).isZero();
+    }
+
+    private void repeat(LockRetryTransferService transferService, String fromId, String toId) {
+        for (int i = 0; i < 100; i++) {
+            transferService.accountTransfer(fromId, toId, 100);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        memberRepository.delete(MEMBER_A);
+        memberRepository.delete(MEMBER_B);
+    }
+}
@@ -0,0 +1,82 @@
+package hello.jdbc.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.CannotAcquireLockException;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class LockStripesTest {
+
+    @Test
+    void sameStripeLockedOnce() {
+        LockStripes lockStripes = new LockStripes(1, Duration.ofMillis(100));
+
+        String result = lockStripes.callWithLocks("memberA", "memberB", () -> "done");
+
+        assertThat(result).isEqualTo("done");
+        assertThat(lockStripes.getAcquiredCount()).isEqualTo(1);
+    }
+
+    @Test
+    void timeout() throws Exception {
+        LockStripes lockStripes = new LockStripes(16, Duration.ofMillis(50));
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> holder = executor.submit(() -> lockStripes.runWithLocks("memberA", "memberB", () -> {
+                locked.countDown();
+                await(release);
+            }));
+            locked.await();
+
+            assertThatThrownBy(() -> lockStripes.runWithLocks("memberB", "memberC", () -> {
+            })).isInstanceOf(CannotAcquireLockException.class);
+            assertThat(lockStripes.getContendedCount()).isEqualTo(1);
+            assertThat(lockStripes.getTimeoutCount()).isEqualTo(1);
+
+            release.countDown();
+            holder.get();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void canonicalOrder() throws Exception {
+        //반대 순서로 잡아도 stripe 번호 순서로 잡으므로 교착상태 없이 끝난다.
+        LockStripes lockStripes = new LockStripes(16, Duration.ofSeconds(5));
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> forward = executor.submit(() -> repeat(lockStripes, "memberA", "memberB"));
+            Future<?> backward = executor.submit(() -> repeat(lockStripes, "memberB", "memberA"));
+            forward.get(10, TimeUnit.SECONDS);
+            backward.get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(lockStripes.getTimeoutCount()).isZero();
+    }
+
+    private void repeat(LockStripes lockStripes, String memberId1, String memberId2) {
+        for (int i = 0; i < 10000; i++) {
+            lockStripes.runWithLocks(memberId1, memberId2, Thread::yield);
+        }
+    }
+
+    private void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
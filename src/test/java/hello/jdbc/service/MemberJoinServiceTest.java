@@ -0,0 +1,60 @@
+package hello.jdbc.service;
+
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.MemberRepositoryV4_2;
+import hello.jdbc.repository.id.HiLoIdAllocator;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static hello.jdbc.constants.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+public class MemberJoinServiceTest {
+
+    private MemberRepository repository;
+    private MemberJoinService joinService;
+    private HiLoIdAllocator idAllocator;
+    private final List<String> joinedIds = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(URL, USERNAME, PASSWORD);
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+        repository = new MemberRepositoryV4_2(dataSource);
+        idAllocator = new HiLoIdAllocator(dataSource);
+        joinService = new MemberJoinService(repository, idAllocator);
+    }
+
+    @AfterEach
+    void tearDown() {
+        joinedIds.forEach(repository::delete);
+        idAllocator.close();
+    }
+
+    @Test
+    void duplicateIdJoinTest() {
+        joinedIds.add(joinService.join("joinId"));
+        joinedIds.add(joinService.join("joinId"));
+
+        assertThat(joinedIds.get(0)).isEqualTo("joinId");
+        assertThat(joinedIds.get(1)).startsWith("joinId").isNotEqualTo("joinId");
+    }
+
+    @Test
+    void allocatedIdJoinTest() {
+        joinedIds.add(joinService.join());
+        joinedIds.addAll(joinService.joinAll(3));
+
+        assertThat(joinedIds).doesNotHaveDuplicates().hasSize(4);
+        assertThat(repository.findAllByIds(joinedIds)).hasSize(4);
+    }
+}
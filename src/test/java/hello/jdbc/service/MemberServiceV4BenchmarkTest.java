@@ -0,0 +1,105 @@
+package hello.jdbc.service;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.MemberRepositoryV5;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 이체 방식별 지연시간 (H2 tcp 서버 왕복 포함)
+ * accountTransfer: findByIdsForUpdate 1 + update 2
+ * atomicAccountTransfer: 조건부 update 2
+ * singleStatementAccountTransfer: update 1
+ * ./gradlew benchmark
+ */
+@Slf4j
+@Tag("benchmark")
+@SpringBootTest
+public class MemberServiceV4BenchmarkTest {
+    private static final String MEMBER_A = "benchA";
+    private static final String MEMBER_B = "benchB";
+    private static final int WARMUP = 500;
+    private static final int TRANSFERS = 5000;
+
+    @Autowired
+    private MemberServiceV4 memberService;
+
+    @Autowired
+    private MemberRepository memberRepository;
+
+    @TestConfiguration
+    static class TestConfig {
+        private final DataSource dataSource;
+        private final PlatformTransactionManager transactionManager;
+
+        public TestConfig(DataSource dataSource, PlatformTransactionManager transactionManager) {
+            this.dataSource = dataSource;
+            this.transactionManager = transactionManager;
+        }
+
+        @Bean
+        public MemberRepository memberRepository() {
+            return new MemberRepositoryV5(dataSource);
+        }
+
+        @Bean
+        public MemberServiceV4 memberService() {
+            return new MemberServiceV4(memberRepository(), transactionManager);
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        memberRepository.save(new Member(MEMBER_A, 1_000_000_000));
+        memberRepository.save(new Member(MEMBER_B, 1_000_000_000));
+    }
+
+    @AfterEach
+    void tearDown() {
+        memberRepository.delete(MEMBER_A);
+        memberRepository.delete(MEMBER_B);
+    }
+
+    @Test
+    void transferLatency() {
+        TransferCall readModifyWrite = () -> memberService.accountTransfer(MEMBER_A, MEMBER_B, 1);
+        TransferCall atomic = () -> memberService.atomicAccountTransfer(MEMBER_A, MEMBER_B, 1);
+        TransferCall singleStatement = () -> memberService.singleStatementAccountTransfer(MEMBER_A, MEMBER_B, 1);
+
+        log.info("accountTransfer avg={}us", measure(readModifyWrite));
+        log.info("atomicAccountTransfer avg={}us", measure(atomic));
+        log.info("singleStatementAccountTransfer avg={}us", measure(singleStatement));
+
+        int transferred = 3 * (WARMUP + TRANSFERS);
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(1_000_000_000 - transferred);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(1_000_000_000 + transferred);
+    }
+
+    private long measure(TransferCall transfer) {
+        for (int i = 0; i < WARMUP; i++) {
+            transfer.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < TRANSFERS; i++) {
+            transfer.run();
+        }
+        return (System.nanoTime() - start) / TRANSFERS / 1000;
+    }
+
+    interface TransferCall {
+        void run();
+    }
+}
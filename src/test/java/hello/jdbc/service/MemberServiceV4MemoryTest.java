@@ -0,0 +1,122 @@
+package hello.jdbc.service;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.domain.Transfer;
+import hello.jdbc.domain.TransferResult;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.memory.MemoryTransactionManager;
+import hello.jdbc.repository.memory.StripedMemoryMemberRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * MemberServiceV4 를 그대로 두고 저장소만 StripedMemoryMemberRepository 로 (H2 없이)
+ * 롤백은 undo log, savepoint 는 MemoryTransactionManager
+ */
+@Slf4j
+@SpringBootTest
+public class MemberServiceV4MemoryTest {
+
+    public static final String MEMBER_A = "from";
+    public static final String MEMBER_B = "to";
+    public static final String MEMBER_EX = "ex";
+
+    @Autowired
+    private MemberServiceV4 memberService;
+
+    @Autowired
+    private MemberRepository memberRepository;
+
+    @TestConfiguration
+    static class TestConfig {
+
+        @Bean
+        public StripedMemoryMemberRepository memberRepository() {
+            return new StripedMemoryMemberRepository();
+        }
+
+        @Bean
+        public MemoryTransactionManager transactionManager() {
+            return new MemoryTransactionManager(memberRepository());
+        }
+
+        @Bean
+        public MemberServiceV4 memberService() {
+            return new MemberServiceV4(memberRepository(), transactionManager());
+        }
+    }
+
+    @Test
+    @DisplayName("정상 이체")
+    void accountTransferTest() {
+        //given
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_B, 10000));
+
+        //when
+        memberService.accountTransfer(MEMBER_A, MEMBER_B, 2000);
+
+        //then
+        assertThat(memberRepository.findById(MEMBER_A)).isEqualTo(new Member(MEMBER_A, 8000, 1));
+        assertThat(memberRepository.findById(MEMBER_B)).isEqualTo(new Member(MEMBER_B, 12000, 1));
+    }
+
+    @Test
+    @DisplayName("이체중 예외 발생 - undo log 로 롤백")
+    void accountTransferFailTest() {
+        //given
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_EX, 10000));
+
+        //when
+        assertThatThrownBy(() -> memberService.accountTransfer(MEMBER_A, MEMBER_EX, 2000))
+                .isInstanceOf(IllegalStateException.class);
+
+        //then
+        assertThat(memberRepository.findById(MEMBER_A)).isEqualTo(new Member(MEMBER_A, 10000, 0));
+        assertThat(memberRepository.findById(MEMBER_EX)).isEqualTo(new Member(MEMBER_EX, 10000, 0));
+    }
+
+    @Test
+    @DisplayName("대량 이체 - 실패한 건만 savepoint 로 롤백")
+    void transferAllTest() {
+        //given
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_B, 10000));
+        memberRepository.save(new Member(MEMBER_EX, 10000));
+        List<Transfer> transfers = List.of(
+                new Transfer(MEMBER_A, MEMBER_B, 1000),
+                new Transfer(MEMBER_A, MEMBER_EX, 1000), //이체중 예외
+                new Transfer(MEMBER_B, MEMBER_A, 500),
+                new Transfer(MEMBER_A, MEMBER_B, 20000), //잔액 부족
+                new Transfer(MEMBER_A, MEMBER_B, 0)
+        );
+
+        //when
+        List<TransferResult> results = memberService.transferAll(transfers);
+
+        //then
+        assertThat(results).extracting(TransferResult::isSuccess).containsExactly(true, false, true, false, false);
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(9500);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(10500);
+        assertThat(memberRepository.findById(MEMBER_EX).getMoney()).isEqualTo(10000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        memberRepository.delete(MEMBER_A);
+        memberRepository.delete(MEMBER_B);
+        memberRepository.delete(MEMBER_EX);
+    }
+}
@@ -0,0 +1,101 @@
+package hello.jdbc.service;
+
+import hello.jdbc.config.MemberRepositoryConfig;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.mvstore.MvStoreMemberRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * MemberServiceV4 를 그대로 두고 member.repository.engine=mvstore 로
+ * MVStore 트랜잭션이 스프링 트랜잭션(DataSourceTransactionManager)과 함께 커밋/롤백
+ */
+@Slf4j
+@SpringBootTest(properties = MemberRepositoryConfig.ENGINE + "=mvstore")
+public class MemberServiceV4MvStoreTest {
+
+    public static final String MEMBER_A = "from";
+    public static final String MEMBER_B = "to";
+    public static final String MEMBER_EX = "ex";
+
+    @Autowired
+    private MemberServiceV4 memberService;
+
+    @Autowired
+    private MemberRepository memberRepository;
+
+    @TestConfiguration
+    static class TestConfig {
+
+        @Bean
+        public MemberServiceV4 memberService(MemberRepository memberRepository, PlatformTransactionManager transactionManager) {
+            return new MemberServiceV4(memberRepository, transactionManager);
+        }
+    }
+
+    @Test
+    @DisplayName("정상 이체")
+    void accountTransferTest() {
+        //given
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_B, 10000));
+
+        //when
+        memberService.accountTransfer(MEMBER_A, MEMBER_B, 2000);
+
+        //then
+        assertThat(memberRepository).isInstanceOf(MvStoreMemberRepository.class);
+        assertThat(memberRepository.findById(MEMBER_A)).isEqualTo(new Member(MEMBER_A, 8000, 1));
+        assertThat(memberRepository.findById(MEMBER_B)).isEqualTo(new Member(MEMBER_B, 12000, 1));
+    }
+
+    @Test
+    @DisplayName("이체중 예외 발생 - 먼저 실행된 차감도 롤백")
+    void accountTransferFailTest() {
+        //given
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_EX, 10000));
+
+        //when
+        assertThatThrownBy(() -> memberService.accountTransfer(MEMBER_A, MEMBER_EX, 2000))
+                .isInstanceOf(IllegalStateException.class);
+
+        //then
+        assertThat(memberRepository.findById(MEMBER_A)).isEqualTo(new Member(MEMBER_A, 10000, 0));
+        assertThat(memberRepository.findById(MEMBER_EX)).isEqualTo(new Member(MEMBER_EX, 10000, 0));
+    }
+
+    @Test
+    @DisplayName("이체중 예외 발생 - 조회 없이 조건부 update")
+    void atomicAccountTransferFailTest() {
+        //given
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_EX, 10000));
+
+        //when
+        assertThatThrownBy(() -> memberService.atomicAccountTransfer(MEMBER_A, MEMBER_EX, 2000))
+                .isInstanceOf(IllegalStateException.class);
+
+        //then
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+        assertThat(memberRepository.findById(MEMBER_EX).getMoney()).isEqualTo(10000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        memberRepository.delete(MEMBER_A);
+        memberRepository.delete(MEMBER_B);
+        memberRepository.delete(MEMBER_EX);
+    }
+}
@@ -1,6 +1,8 @@
 package hello.jdbc.service;
 
 import hello.jdbc.domain.Member;
+import hello.jdbc.domain.Transfer;
+import hello.jdbc.domain.TransferResult;
 import hello.jdbc.repository.MemberRepository;
 import hello.jdbc.repository.MemberRepositoryV5;
 import lombok.extern.slf4j.Slf4j;
@@ -13,8 +15,10 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.context.annotation.Bean;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import javax.sql.DataSource;
+import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -42,9 +46,11 @@ public class MemberServiceV4Test {
     @TestConfiguration
     static class TestConfig {
         private final DataSource dataSource;
+        private final PlatformTransactionManager transactionManager;
 
-        public TestConfig(DataSource dataSource) {
+        public TestConfig(DataSource dataSource, PlatformTransactionManager transactionManager) {
             this.dataSource = dataSource;
+            this.transactionManager = transactionManager;
         }
 
         @Bean
@@ -56,7 +62,7 @@ public class MemberServiceV4Test {
 
         @Bean
         public MemberServiceV4 memberService() {
-            return new MemberServiceV4(memberRepository());
+            return new MemberServiceV4(memberRepository(), transactionManager);
         }
     }
 
@@ -111,6 +117,147 @@ public class MemberServiceV4Test {
         assertThat(actualExMember.getMoney()).isEqualTo(10000);
     }
 
+    @Test
+    @DisplayName("정상 이체 - 조회 없이 조건부 update")
+    void atomicAccountTransferTest() {
+        //given
+        Member memberA = memberRepository.save(new Member(MEMBER_A, 10000));
+        Member memberB = memberRepository.save(new Member(MEMBER_B, 10000));
+
+        //when
+        memberService.atomicAccountTransfer(memberA.getMemberId(), memberB.getMemberId(), 2000);
+
+        //then
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(8000);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(12000);
+    }
+
+    @Test
+    @DisplayName("잔액 부족 - 조회 없이 조건부 update")
+    void atomicAccountTransferInsufficientTest() {
+        //given
+        Member memberA = memberRepository.save(new Member(MEMBER_A, 1000));
+        Member memberB = memberRepository.save(new Member(MEMBER_B, 10000));
+
+        //when
+        assertThatThrownBy(() -> memberService.atomicAccountTransfer(memberA.getMemberId(), memberB.getMemberId(), 2000))
+                .isInstanceOf(IllegalStateException.class);
+
+        //then
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(1000);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    @DisplayName("이체중 예외 발생 - 조회 없이 조건부 update")
+    void atomicAccountTransferFailTest() {
+        //given
+        Member memberA = memberRepository.save(new Member(MEMBER_A, 10000));
+        Member memberEx = memberRepository.save(new Member(MEMBER_EX, 10000));
+
+        //when
+        assertThatThrownBy(() -> memberService.atomicAccountTransfer(memberA.getMemberId(), memberEx.getMemberId(), 2000))
+                .isInstanceOf(IllegalStateException.class);
+
+        //then - 먼저 실행된 차감도 롤백
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+        assertThat(memberRepository.findById(MEMBER_EX).getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    @DisplayName("정상 이체 - update 한 문장")
+    void singleStatementAccountTransferTest() {
+        //given
+        Member memberA = memberRepository.save(new Member(MEMBER_A, 10000));
+        Member memberB = memberRepository.save(new Member(MEMBER_B, 10000));
+
+        //when
+        memberService.singleStatementAccountTransfer(memberA.getMemberId(), memberB.getMemberId(), 2000);
+
+        //then
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(8000);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(12000);
+    }
+
+    @Test
+    @DisplayName("잔액 부족 - update 한 문장")
+    void singleStatementAccountTransferInsufficientTest() {
+        //given
+        Member memberA = memberRepository.save(new Member(MEMBER_A, 1000));
+        Member memberB = memberRepository.save(new Member(MEMBER_B, 10000));
+
+        //when - 아무것도 바뀌지 않아 0행 -> 예외
+        assertThatThrownBy(() -> memberService.singleStatementAccountTransfer(memberA.getMemberId(), memberB.getMemberId(), 2000))
+                .isInstanceOf(IllegalStateException.class);
+
+        //then
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(1000);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    @DisplayName("정상 이체 - 낙관적 락")
+    void optimisticAccountTransferTest() {
+        //given
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_B, 10000));
+
+        //when
+        memberService.optimisticAccountTransfer(MEMBER_A, MEMBER_B, 2000);
+
+        //then
+        assertThat(memberRepository.findById(MEMBER_A)).isEqualTo(new Member(MEMBER_A, 8000, 1));
+        assertThat(memberRepository.findById(MEMBER_B)).isEqualTo(new Member(MEMBER_B, 12000, 1));
+    }
+
+    @Test
+    @DisplayName("대량 이체 - 실패한 건만 롤백")
+    void transferAllTest() {
+        //given
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_B, 10000));
+        memberRepository.save(new Member(MEMBER_EX, 10000));
+        List<Transfer> transfers = List.of(
+                new Transfer(MEMBER_A, MEMBER_B, 1000),
+                new Transfer(MEMBER_A, MEMBER_EX, 1000), //이체중 예외
+                new Transfer(MEMBER_B, MEMBER_A, 500),
+                new Transfer(MEMBER_A, MEMBER_B, 20000), //잔액 부족
+                new Transfer(MEMBER_A, MEMBER_B, 0)
+        );
+
+        //when
+        List<TransferResult> results = memberService.transferAll(transfers);
+
+        //then
+        assertThat(results).extracting(TransferResult::getTransfer).containsExactlyElementsOf(transfers);
+        assertThat(results).extracting(TransferResult::isSuccess).containsExactly(true, false, true, false, false);
+        assertThat(results.get(1).getFailureReason()).isEqualTo("이체중 예외 발생");
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(9500);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(10500);
+        assertThat(memberRepository.findById(MEMBER_EX).getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    @DisplayName("대량 이체 - 청크마다 트랜잭션")
+    void transferAllChunkTest() {
+        //given
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_B, 10000));
+        List<Transfer> transfers = List.of(
+                new Transfer(MEMBER_A, MEMBER_B, 1000),
+                new Transfer(MEMBER_B, MEMBER_A, 3000),
+                new Transfer(MEMBER_A, MEMBER_B, 1000)
+        );
+
+        //when
+        List<TransferResult> results = memberService.transferAll(transfers, 2);
+
+        //then
+        assertThat(results).allMatch(TransferResult::isSuccess);
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(11000);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(9000);
+    }
+
     @AfterEach
     void tearDown() {
         memberRepository.delete(MEMBER_A);
@@ -0,0 +1,131 @@
+package hello.jdbc.service;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.MemberRepositoryV5;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 회원 2명에 동시 이체가 몰릴 때 (경합)
+ * accountTransfer: select for update 로 두 행을 잠그고 update - 행 락을 기다린다. (비관적, 기준)
+ * atomicAccountTransfer: 조회 없이 조건부 update - 역시 행 락을 기다린다.
+ * OptimisticTransferService: version 비교 update - 충돌하면 롤백 후 jitter backoff 로 재시도
+ * ./gradlew benchmark
+ */
+@Slf4j
+@Tag("benchmark")
+@SpringBootTest
+public class OptimisticLockBenchmarkTest {
+    private static final String MEMBER_A = "benchA";
+    private static final String MEMBER_B = "benchB";
+    private static final int INITIAL_MONEY = 1_000_000;
+    private static final int THREADS = 8;
+    private static final int TRANSFERS_PER_THREAD = 200;
+
+    @Autowired
+    private MemberServiceV4 memberService;
+
+    @Autowired
+    private MemberRepository memberRepository;
+
+    @TestConfiguration
+    static class TestConfig {
+        private final DataSource dataSource;
+        private final PlatformTransactionManager transactionManager;
+
+        public TestConfig(DataSource dataSource, PlatformTransactionManager transactionManager) {
+            this.dataSource = dataSource;
+            this.transactionManager = transactionManager;
+        }
+
+        @Bean
+        public MemberRepository memberRepository() {
+            return new MemberRepositoryV5(dataSource);
+        }
+
+        @Bean
+        public MemberServiceV4 memberService() {
+            return new MemberServiceV4(memberRepository(), transactionManager);
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        memberRepository.save(new Member(MEMBER_A, INITIAL_MONEY));
+        memberRepository.save(new Member(MEMBER_B, INITIAL_MONEY));
+    }
+
+    @AfterEach
+    void tearDown() {
+        memberRepository.delete(MEMBER_A);
+        memberRepository.delete(MEMBER_B);
+    }
+
+    @Test
+    void contention() throws Exception {
+        int failed = run("pessimistic", () -> memberService.accountTransfer(MEMBER_A, MEMBER_B, 1));
+        failed += run("atomic", () -> memberService.atomicAccountTransfer(MEMBER_A, MEMBER_B, 1));
+
+        OptimisticTransferService optimistic = new OptimisticTransferService(memberService);
+        failed += run("optimistic", () -> optimistic.accountTransfer(MEMBER_A, MEMBER_B, 1));
+        log.info("optimistic retries={}, exhausted={}",
+                optimistic.getRetryPolicy().getRetryCount(), optimistic.getRetryPolicy().getExhaustedCount());
+
+        //실패한 이체(재시도를 다 써버린 이체 포함)는 롤백되었으므로 빼고 계산
+        long transferred = 3L * THREADS * TRANSFERS_PER_THREAD - failed;
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(INITIAL_MONEY - transferred);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(INITIAL_MONEY + transferred);
+    }
+
+    /**
+     * 실패한 이체 건수 반환
+     */
+    private int run(String name, Runnable transfer) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Integer>> futures = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int t = 0; t < THREADS; t++) {
+                futures.add(executor.submit(() -> {
+                    int failed = 0;
+                    for (int i = 0; i < TRANSFERS_PER_THREAD; i++) {
+                        try {
+                            transfer.run();
+                        } catch (RuntimeException e) {
+                            failed++;
+                        }
+                    }
+                    return failed;
+                }));
+            }
+            int failed = 0;
+            for (Future<Integer> future : futures) {
+                failed += future.get();
+            }
+            long elapsedNanos = System.nanoTime() - start;
+            log.info("{} throughput={}/s, failed={}", name,
+                    THREADS * TRANSFERS_PER_THREAD * 1_000_000_000L / elapsedNanos, failed);
+            return failed;
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
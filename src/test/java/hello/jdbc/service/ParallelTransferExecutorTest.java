@@ -0,0 +1,122 @@
+package hello.jdbc.service;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.domain.Member;
+import hello.jdbc.domain.Transfer;
+import hello.jdbc.domain.TransferResult;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.MemberRepositoryV5;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+@SpringBootTest
+public class ParallelTransferExecutorTest {
+
+    public static final String MEMBER_A = "memberA";
+    public static final String MEMBER_B = "memberB";
+    public static final String MEMBER_C = "memberC";
+    public static final String MEMBER_D = "memberD";
+    public static final String MEMBER_EX = "ex";
+
+    @Autowired
+    private ParallelTransferExecutor executor;
+
+    @Autowired
+    private MemberRepository memberRepository;
+
+    @TestConfiguration
+    static class TestConfig {
+        private final DataSource dataSource;
+        private final PlatformTransactionManager transactionManager;
+
+        public TestConfig(DataSource dataSource, PlatformTransactionManager transactionManager) {
+            this.dataSource = dataSource;
+            this.transactionManager = transactionManager;
+        }
+
+        @Bean
+        public MemberRepository memberRepository() {
+            return new MemberRepositoryV5(dataSource);
+        }
+
+        @Bean
+        public MemberServiceV4 memberService() {
+            return new MemberServiceV4(memberRepository(), transactionManager);
+        }
+
+        @Bean
+        public ParallelTransferExecutor parallelTransferExecutor(MemberServiceV4 memberService) {
+            return new ParallelTransferExecutor(memberService, (HikariDataSource) dataSource);
+        }
+    }
+
+    @Test
+    @DisplayName("wave - 같은 wave 의 이체는 회원이 겹치지 않는다")
+    void wavesTest() {
+        List<Transfer> transfers = List.of(
+                new Transfer(MEMBER_A, MEMBER_B, 100),
+                new Transfer(MEMBER_C, MEMBER_D, 100),
+                new Transfer(MEMBER_B, MEMBER_C, 100),
+                new Transfer(MEMBER_A, MEMBER_D, 100),
+                new Transfer(MEMBER_EX, "memberE", 100)
+        );
+
+        List<List<Integer>> waves = ParallelTransferExecutor.waves(transfers);
+
+        assertThat(waves).containsExactly(
+                List.of(0, 1, 4),
+                List.of(2, 3)
+        );
+    }
+
+    @Test
+    @DisplayName("병렬 이체 - 순차 실행과 같은 결과, 실패한 건만 롤백")
+    void transferAllTest() {
+        //given
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_B, 10000));
+        memberRepository.save(new Member(MEMBER_C, 10000));
+        memberRepository.save(new Member(MEMBER_D, 10000));
+        memberRepository.save(new Member(MEMBER_EX, 10000));
+        List<Transfer> transfers = List.of(
+                new Transfer(MEMBER_A, MEMBER_B, 1000),
+                new Transfer(MEMBER_C, MEMBER_D, 2000),
+                new Transfer(MEMBER_B, MEMBER_C, 3000),
+                new Transfer(MEMBER_D, MEMBER_EX, 500), //이체중 예외
+                new Transfer(MEMBER_D, MEMBER_A, 4000)
+        );
+
+        //when
+        List<TransferResult> results = executor.transferAll(transfers);
+
+        //then
+        assertThat(results).extracting(TransferResult::isSuccess).containsExactly(true, true, true, false, true);
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(13000);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(8000);
+        assertThat(memberRepository.findById(MEMBER_C).getMoney()).isEqualTo(11000);
+        assertThat(memberRepository.findById(MEMBER_D).getMoney()).isEqualTo(8000);
+        assertThat(memberRepository.findById(MEMBER_EX).getMoney()).isEqualTo(10000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        memberRepository.delete(MEMBER_A);
+        memberRepository.delete(MEMBER_B);
+        memberRepository.delete(MEMBER_C);
+        memberRepository.delete(MEMBER_D);
+        memberRepository.delete(MEMBER_EX);
+    }
+}
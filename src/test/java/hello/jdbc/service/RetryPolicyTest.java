@@ -0,0 +1,59 @@
+package hello.jdbc.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.ConcurrencyFailureException;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class RetryPolicyTest {
+
+    private final RetryPolicy retryPolicy = new RetryPolicy(3, Duration.ofMillis(1), Duration.ofMillis(5),
+            List.of(ConcurrencyFailureException.class));
+
+    @Test
+    void retryUntilSuccess() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        String result = retryPolicy.call(() -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new ConcurrencyFailureException("conflict");
+            }
+            return "ok";
+        });
+
+        assertThat(result).isEqualTo("ok");
+        assertThat(retryPolicy.getRetryCount()).isEqualTo(2);
+        assertThat(retryPolicy.getExhaustedCount()).isZero();
+    }
+
+    @Test
+    void exhausted() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThatThrownBy(() -> retryPolicy.run(() -> {
+            attempts.incrementAndGet();
+            throw new ConcurrencyFailureException("conflict");
+        })).isInstanceOf(ConcurrencyFailureException.class);
+
+        assertThat(attempts.get()).isEqualTo(3);
+        assertThat(retryPolicy.getExhaustedCount()).isEqualTo(1);
+    }
+
+    @Test
+    void notRetryable() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThatThrownBy(() -> retryPolicy.run(() -> {
+            attempts.incrementAndGet();
+            throw new IllegalStateException("이체중 예외 발생");
+        })).isInstanceOf(IllegalStateException.class);
+
+        assertThat(attempts.get()).isEqualTo(1);
+        assertThat(retryPolicy.getRetryCount()).isZero();
+    }
+}
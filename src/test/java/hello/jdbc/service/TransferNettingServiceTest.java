@@ -0,0 +1,130 @@
+package hello.jdbc.service;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.domain.NettingResult;
+import hello.jdbc.domain.Transfer;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.MemberRepositoryV5;
+import hello.jdbc.repository.TransferAuditRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Slf4j
+@SpringBootTest
+public class TransferNettingServiceTest {
+
+    public static final String MEMBER_A = "payerA";
+    public static final String MEMBER_B = "payerB";
+    public static final String MEMBER_C = "merchant";
+
+    @Autowired
+    private TransferNettingService nettingService;
+
+    @Autowired
+    private MemberRepository memberRepository;
+
+    @Autowired
+    private TransferAuditRepository auditRepository;
+
+    private String batchId;
+
+    @TestConfiguration
+    static class TestConfig {
+        private final DataSource dataSource;
+        private final PlatformTransactionManager transactionManager;
+
+        public TestConfig(DataSource dataSource, PlatformTransactionManager transactionManager) {
+            this.dataSource = dataSource;
+            this.transactionManager = transactionManager;
+        }
+
+        @Bean
+        public MemberRepository memberRepository() {
+            return new MemberRepositoryV5(dataSource);
+        }
+
+        @Bean
+        public TransferAuditRepository transferAuditRepository() {
+            return new TransferAuditRepository(dataSource);
+        }
+
+        @Bean
+        public TransferNettingService transferNettingService() {
+            return new TransferNettingService(memberRepository(), transferAuditRepository(), transactionManager);
+        }
+    }
+
+    @Test
+    @DisplayName("상계 이체 - 회원별 순변동만 반영, 원래 이체 내역은 감사 테이블에")
+    void netTransferTest() {
+        //given
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_B, 1000));
+        memberRepository.save(new Member(MEMBER_C, 0));
+        List<Transfer> transfers = List.of(
+                new Transfer(MEMBER_A, MEMBER_C, 3000),
+                new Transfer(MEMBER_B, MEMBER_C, 1000),
+                new Transfer(MEMBER_C, MEMBER_B, 500),
+                new Transfer(MEMBER_B, MEMBER_C, 500), //상계 전 잔액으로는 부족하지만 묶음 안에서 먼저 입금받음
+                new Transfer(MEMBER_A, MEMBER_C, 2000)
+        );
+
+        //when
+        NettingResult result = nettingService.netTransfer(transfers);
+        batchId = result.getBatchId();
+
+        //then
+        assertThat(result.getTransferCount()).isEqualTo(5);
+        assertThat(result.getUpdatedMemberCount()).isEqualTo(3);
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(5000);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(0);
+        assertThat(memberRepository.findById(MEMBER_C).getMoney()).isEqualTo(6000);
+        assertThat(auditRepository.findByBatchId(batchId)).containsExactlyElementsOf(transfers);
+    }
+
+    @Test
+    @DisplayName("상계 이체 - 한 회원이라도 잔액 부족이면 전체 롤백")
+    void netTransferInsufficientTest() {
+        //given
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_B, 1000));
+        memberRepository.save(new Member(MEMBER_C, 0));
+        List<Transfer> transfers = List.of(
+                new Transfer(MEMBER_A, MEMBER_C, 3000),
+                new Transfer(MEMBER_B, MEMBER_C, 1500)
+        );
+
+        //when
+        assertThatThrownBy(() -> nettingService.netTransfer(transfers))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining(MEMBER_B);
+
+        //then
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(1000);
+        assertThat(memberRepository.findById(MEMBER_C).getMoney()).isEqualTo(0);
+    }
+
+    @AfterEach
+    void tearDown() {
+        memberRepository.delete(MEMBER_A);
+        memberRepository.delete(MEMBER_B);
+        memberRepository.delete(MEMBER_C);
+        if (batchId != null) {
+            auditRepository.deleteByBatchId(batchId);
+        }
+    }
+}